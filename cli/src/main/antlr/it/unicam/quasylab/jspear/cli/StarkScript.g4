@@ -11,6 +11,7 @@ scriptCommand:
     | listCommand
     | cwdCommand
     | loadCommand
+    | attachCommand
     | quitCommand
     | perturbationsCommand
     | distancesCommand
@@ -80,6 +81,8 @@ quitCommand: 'quit';
 
 loadCommand: 'load' target=STRING;
 
+attachCommand: 'attach' target=STRING;
+
 changeDirectoryCommand:
     'cd' target=STRING
 ;
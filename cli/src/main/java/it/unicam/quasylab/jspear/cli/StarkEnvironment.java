@@ -59,6 +59,15 @@ public class StarkEnvironment {
         }
     }
 
+    public void attachSequence(File file) throws StarkCommandExecutionException {
+        checkSpecification();
+        try {
+            this.specification.attachSequence(file.toPath());
+        } catch (IOException | RuntimeException e) {
+            throw new StarkCommandExecutionException(e);
+        }
+    }
+
     public String[] getFormulas() throws StarkCommandExecutionException {
         if (specification != null) {
             return specification.getFormulas();
@@ -137,6 +137,11 @@ public class StarkInterpreter {
             return load(getFileName(ctx.target.getText()));
         }
 
+        @Override
+        public StarkCommandExecutionResult visitAttachCommand(StarkScriptParser.AttachCommandContext ctx) {
+            return attach(getFileName(ctx.target.getText()));
+        }
+
         @Override
         public StarkCommandExecutionResult visitQuitCommand(StarkScriptParser.QuitCommandContext ctx) {
             return quit();
@@ -426,6 +431,16 @@ public class StarkInterpreter {
         }
     }
 
+    private StarkCommandExecutionResult attach(String fileName) {
+        File file = new File(workingDirectory, fileName);
+        try {
+            this.starkEnvironment.attachSequence(file);
+            return new StarkCommandExecutionResult(StarkMessages.attachMessage(file.getAbsolutePath()),true);
+        } catch (StarkCommandExecutionException e) {
+            return new StarkCommandExecutionResult(e.getMessage(),e.getReasons(),false);
+        }
+    }
+
     private String getFileName(String target) {
         return target.substring(1,target.length()-1);
     }
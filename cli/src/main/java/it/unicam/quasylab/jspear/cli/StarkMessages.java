@@ -32,6 +32,7 @@ public class StarkMessages {
     private static final String LIST_MESSAGE = "Content:";
     private static final String ILLEGAL_ACCESS = "An error occurred while accessing to %s";
     private static final String LOAD_MESSAGE = "Specification %s has been successfully loaded.";
+    private static final String ATTACH_MESSAGE = "Evolution sequence attached to %s.";
     private static final String QUIT_MESSAGE = "See you next time!";
     private static final String FORMULAS_MESSAGE = "Formulas:";
     private static final String PENALTIES_MESSAGE = "Penalties:";
@@ -72,6 +73,10 @@ public class StarkMessages {
         return String.format(LOAD_MESSAGE, fileName);
     }
 
+    public static String attachMessage(String fileName) {
+        return String.format(ATTACH_MESSAGE, fileName);
+    }
+
     public static String quitMessage() {
         return QUIT_MESSAGE;
     }
@@ -0,0 +1,160 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import it.unicam.quasylab.jspear.ds.ColumnarDataState;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateSchema;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.util.function.BiFunction;
+
+/**
+ * A batch system advances a batch of system states by one step in a single call. Models can implement this
+ * interface to simulate their samples with tight loops over primitive data, instead of advancing one
+ * sample at a time via {@link SystemState#sampleNext(RandomGenerator)}. A system state provides its batch
+ * system via {@link SystemState#getBatchSystem()}, and evolution sequences use it, when available, to
+ * generate their steps.
+ */
+@FunctionalInterface
+public interface BatchSystem {
+
+    /**
+     * Batch system that advances each state of a batch via {@link SystemState#sampleNext(RandomGenerator)}.
+     */
+    BatchSystem SAMPLE_NEXT = of((rg, s) -> s.sampleNext(rg));
+
+    /**
+     * Replaces each state <code>states[i]</code>, with <code>from &lt;= i &lt; to</code>, with one state sampled among
+     * the ones reachable from it in one step. The state in position <code>i</code> is sampled with the random
+     * generator <code>streams[i]</code>.
+     *
+     * @param streams random generators used to sample random values, one for each state.
+     * @param states states to advance.
+     * @param from index of the first state of the batch.
+     * @param to index following the last state of the batch.
+     */
+    void sampleNext(RandomGenerator[] streams, SystemState[] states, int from, int to);
+
+    /**
+     * Returns the batch system that advances each state of a batch with the given function.
+     *
+     * @param function function used to sample the next state of a single state.
+     * @return the batch system that advances each state of a batch with <code>function</code>.
+     */
+    static BatchSystem of(BiFunction<RandomGenerator, SystemState, SystemState> function) {
+        return (streams, states, from, to) -> {
+            for (int i = from; i < to; i++) {
+                states[i] = function.apply(streams[i], states[i]);
+            }
+        };
+    }
+
+    /**
+     * Returns the batch system that advances the data states of a batch via the given columnar update.
+     * Values of the data states in a batch are copied into new columns, one for each variable, the update is
+     * applied to the columns, and each state is then replaced by the one whose data state is a
+     * {@link ColumnarDataState} backed by the corresponding row of the updated columns, where values are clamped
+     * in their data ranges and the step is increased by one. When the batch consists of consecutive rows of the
+     * same columns, as in the steps stored in a {@link ColumnarSampleSet}, columns are copied with a single
+     * array copy for each variable. Other components of the states, like controllers, are not changed.
+     *
+     * @param update update applied to the columns of a batch.
+     * @return the batch system that advances the data states of a batch via <code>update</code>.
+     */
+    static BatchSystem columnar(ColumnarUpdate update) {
+        return (streams, states, from, to) -> {
+            int size = to - from;
+            if (size == 0) {
+                return;
+            }
+            int variables = states[from].getDataState().size();
+            double[][] columns = new double[variables][size];
+            if (isContiguous(states, from, to)) {
+                ((ColumnarDataState) states[from].getDataState()).copyRows(size, columns);
+            } else {
+                for (int k = 0; k < size; k++) {
+                    DataState ds = states[from + k].getDataState();
+                    for (int v = 0; v < variables; v++) {
+                        columns[v][k] = ds.get(v);
+                    }
+                }
+            }
+            update.apply(streams, from, columns, size);
+            for (int k = 0; k < size; k++) {
+                DataState ds = states[from + k].getDataState();
+                DataStateSchema schema = ds.getSchema();
+                if (schema.needsClamping()) {
+                    for (int v = 0; v < variables; v++) {
+                        columns[v][k] = schema.clamp(v, columns[v][k]);
+                    }
+                }
+                ColumnarDataState next = ColumnarDataState.of(ds, columns, k);
+                next.setStep(ds.getStep() + 1);
+                states[from + k] = states[from + k].setDataState(next);
+            }
+        };
+    }
+
+    /**
+     * Returns <code>true</code> if the data states of the given states are consecutive rows of the same columns.
+     *
+     * @param states an array of states.
+     * @param from index of the first state.
+     * @param to index following the last state.
+     * @return <code>true</code> if the data states of <code>states[from]</code>, ..., <code>states[to-1]</code> are
+     * consecutive rows of the same columns.
+     */
+    private static boolean isContiguous(SystemState[] states, int from, int to) {
+        if (!(states[from].getDataState() instanceof ColumnarDataState first)) {
+            return false;
+        }
+        for (int k = from + 1; k < to; k++) {
+            if (!first.precedes(states[k].getDataState(), k - from)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An update of the values of a batch of data states stored as columns.
+     */
+    @FunctionalInterface
+    interface ColumnarUpdate {
+
+        /**
+         * Updates, in place, the values of a batch of data states. Column <code>v</code> contains the values of
+         * variable <code>v</code>, and row <code>k</code> is the data state that is sampled with the random generator
+         * <code>streams[offset+k]</code>.
+         *
+         * @param streams random generators used to sample random values.
+         * @param offset index of the random generator of the first row.
+         * @param columns columns of the batch, one for each variable.
+         * @param size number of rows in the batch.
+         */
+        void apply(RandomGenerator[] streams, int offset, double[][] columns, int size);
+
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.util.Arrays;
+import java.util.function.ToDoubleBiFunction;
+import java.util.stream.IntStream;
+
+/**
+ * The engine used to evaluate bootstrap confidence intervals of distances between sample sets.
+ * Replicates are computed in parallel, each one with its own random stream split from the given generator,
+ * so the results only depend on that generator. Since the compared data are sorted, each replicate is obtained
+ * by sampling how many times each value is drawn, and by expanding these counts in a scratch buffer that is
+ * already sorted. Buffers are allocated once for each block of replicates and reused.
+ */
+final class Bootstrap {
+
+    /**
+     * Number of blocks of replicates assigned to each available processor.
+     */
+    private static final int BLOCKS_PER_PROCESSOR = 4;
+
+    private Bootstrap() {}
+
+    /**
+     * Returns the <code>m</code> bootstrap replicates of the distance between the two given data sets.
+     * Each replicate resamples, with replacement, both data sets and evaluates the given distance on the
+     * sorted resamples. The arrays passed to <code>distance</code> are scratch buffers that are overwritten
+     * by the following replicates.
+     *
+     * @param rg a random generator.
+     * @param thisData sorted array of real values.
+     * @param otherData sorted array of real values.
+     * @param distance function used to compute the distance between sorted data sets.
+     * @param m number of replicates.
+     * @return the <code>m</code> bootstrap replicates of the distance between the two data sets.
+     */
+    static double[] replicates(RandomGenerator rg, double[] thisData, double[] otherData, ToDoubleBiFunction<double[], double[]> distance, int m) {
+        if (m <= 0) {
+            throw new IllegalArgumentException("The number of bootstrap replicates must be positive!");
+        }
+        RandomGenerator[] streams = DefaultRandomGenerator.split(rg, m);
+        double[] result = new double[m];
+        int blocks = Math.min(m, Runtime.getRuntime().availableProcessors() * BLOCKS_PER_PROCESSOR);
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            int[] thisCounts = new int[thisData.length];
+            int[] otherCounts = new int[otherData.length];
+            double[] thisResample = new double[thisData.length];
+            double[] otherResample = new double[otherData.length];
+            for (int i = (int) ((long) m * b / blocks); i < (int) ((long) m * (b + 1) / blocks); i++) {
+                resample(streams[i], thisData, thisCounts, thisResample);
+                resample(streams[i], otherData, otherCounts, otherResample);
+                result[i] = distance.applyAsDouble(thisResample, otherResample);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Stores in <code>target</code> a sorted resample of the given sorted data. The number of occurrences
+     * of each element is sampled in <code>counts</code>, which is left cleared when the method returns.
+     */
+    private static void resample(RandomGenerator rg, double[] data, int[] counts, double[] target) {
+        for (int j = 0; j < data.length; j++) {
+            counts[rg.nextInt(data.length)]++;
+        }
+        int k = 0;
+        for (int j = 0; j < data.length; j++) {
+            for (int c = counts[j]; c > 0; c--) {
+                target[k++] = data[j];
+            }
+            counts[j] = 0;
+        }
+    }
+
+    /**
+     * Returns the normal confidence interval of the given replicates, namely their mean plus or minus
+     * <code>z</code> times their standard error. The interval is clipped to <code>[0,1]</code>.
+     *
+     * @param replicates bootstrap replicates.
+     * @param z the desired quantile of the standard-normal distribution.
+     * @return the normal confidence interval of the given replicates.
+     */
+    static double[] normalInterval(double[] replicates, double z) {
+        int m = replicates.length;
+        double sum = 0.0;
+        for (double w : replicates) {
+            sum += w;
+        }
+        double mean = sum / m;
+        double standardError = Math.sqrt(Arrays.stream(replicates).map(w -> Math.pow(w - mean, 2)).sum() / (m - 1));
+        return new double[] { Math.max(0, mean - z * standardError), Math.min(mean + z * standardError, 1) };
+    }
+
+    /**
+     * Returns the percentile confidence interval of the given replicates at level <code>1-alpha</code>,
+     * namely their empirical <code>alpha/2</code> and <code>1-alpha/2</code> quantiles.
+     *
+     * @param replicates bootstrap replicates.
+     * @param alpha significance level, in <code>(0,1)</code>.
+     * @return the percentile confidence interval of the given replicates.
+     */
+    static double[] percentileInterval(double[] replicates, double alpha) {
+        if (!(alpha > 0) || !(alpha < 1)) {
+            throw new IllegalArgumentException("The significance level must be in (0,1)!");
+        }
+        double[] sorted = replicates.clone();
+        Arrays.sort(sorted);
+        return new double[] { quantile(sorted, alpha / 2), quantile(sorted, 1 - alpha / 2) };
+    }
+
+    /**
+     * Returns the empirical quantile of level <code>q</code> of the given sorted values, by using the
+     * nearest-rank method.
+     */
+    private static double quantile(double[] sorted, double q) {
+        int rank = (int) Math.ceil(q * sorted.length);
+        return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+    }
+
+}
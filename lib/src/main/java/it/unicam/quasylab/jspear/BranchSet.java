@@ -0,0 +1,177 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import it.unicam.quasylab.jspear.perturbation.Perturbation;
+
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * A set of branches of a base evolution sequence, namely of the sequences obtained by applying the same perturbation
+ * to the base sequence at different steps. Branches are generated in lockstep: all the live branches are advanced
+ * together, one step at a time, and the branches are advanced in parallel. Each branch is opened with the last step
+ * that is needed, and it is never generated beyond it. Branches are retired as soon as they are not needed anymore,
+ * so that the set only keeps the branches that are still being evaluated. When a {@link PerturbedSequenceCache} is
+ * given, branches are obtained from it, hence they are shared with the other evaluations using the same cache.
+ * The operations of this class are thread safe.
+ */
+public final class BranchSet {
+
+    private final EvolutionSequence base;
+    private final Perturbation perturbation;
+    private final int scale;
+    private final PerturbedSequenceCache cache;
+    private final TreeMap<Integer, Branch> branches = new TreeMap<>();
+
+    /**
+     * Creates an empty set of branches of the given sequence.
+     *
+     * @param base the evolution sequence that is perturbed.
+     * @param perturbation the perturbation applied to the base sequence.
+     * @param scale multiplication factor for the number of samples to be used in the branches.
+     */
+    public BranchSet(EvolutionSequence base, Perturbation perturbation, int scale) {
+        this(base, perturbation, scale, null);
+    }
+
+    /**
+     * Creates an empty set of branches of the given sequence, whose branches are obtained from the given cache.
+     *
+     * @param base the evolution sequence that is perturbed.
+     * @param perturbation the perturbation applied to the base sequence.
+     * @param scale multiplication factor for the number of samples to be used in the branches.
+     * @param cache the cache of perturbed sequences providing the branches, or <code>null</code> if branches are
+     *              generated by the base sequence.
+     */
+    public BranchSet(EvolutionSequence base, Perturbation perturbation, int scale, PerturbedSequenceCache cache) {
+        this.base = base;
+        this.perturbation = perturbation;
+        this.scale = scale;
+        this.cache = cache;
+    }
+
+    /**
+     * Opens the branches obtained by perturbing the base sequence at each step in the interval
+     * <code>[from, to)</code>. The branch perturbed at step <code>i</code> is generated up to step
+     * <code>i+horizon</code> at most. Branches that are already open are not affected.
+     *
+     * @param from first perturbed step.
+     * @param to the step following the last perturbed one.
+     * @param horizon number of steps generated after the perturbed one.
+     * @throws IllegalArgumentException if <code>from</code> or <code>horizon</code> is negative.
+     */
+    public void open(int from, int to, int horizon) {
+        if ((from<0)||(horizon<0)) {
+            throw new IllegalArgumentException("Illegal branch interval!");
+        }
+        for (int i = from; i < to; i++) {
+            open(i, horizon);
+        }
+    }
+
+    /**
+     * Opens the branch obtained by perturbing the base sequence at the given step, and returns it. The branch is
+     * generated up to step <code>perturbedStep+horizon</code> at most. If the branch is already open, it is returned.
+     *
+     * @param perturbedStep perturbed step.
+     * @param horizon number of steps generated after the perturbed one.
+     * @return the branch obtained by perturbing the base sequence at <code>perturbedStep</code>.
+     */
+    public synchronized EvolutionSequence open(int perturbedStep, int horizon) {
+        Branch branch = branches.get(perturbedStep);
+        if (branch == null) {
+            EvolutionSequence sequence = (cache == null ? base.apply(perturbation, perturbedStep, scale) : cache.apply(base, perturbation, perturbedStep, scale));
+            branch = new Branch(sequence, (int) Math.min(Integer.MAX_VALUE, (long) perturbedStep+horizon));
+            branches.put(perturbedStep, branch);
+        }
+        return branch.sequence();
+    }
+
+    /**
+     * Returns the branch obtained by perturbing the base sequence at the given step, opening it with no bound
+     * on its generation if it is not open.
+     *
+     * @param perturbedStep perturbed step.
+     * @return the branch obtained by perturbing the base sequence at <code>perturbedStep</code>.
+     */
+    public EvolutionSequence get(int perturbedStep) {
+        return open(perturbedStep, Integer.MAX_VALUE-perturbedStep);
+    }
+
+    /**
+     * Generates all the live branches up to the given step, or up to their last needed step if it comes first.
+     * Branches are advanced together, one step at a time, and each step is generated in parallel on all
+     * the branches that need it.
+     *
+     * @param step the step up to which branches are generated.
+     */
+    public void advanceTo(int step) {
+        List<Branch> live;
+        synchronized (this) {
+            live = List.copyOf(branches.headMap(step, true).values());
+        }
+        int first = live.stream().filter(b -> b.generated() < Math.min(step, b.limit())).mapToInt(Branch::generated).min().orElse(step);
+        for (int t = first + 1; t <= step; t++) {
+            int target = t;
+            live.parallelStream()
+                    .filter(b -> (b.generated() < target) && (target <= b.limit()))
+                    .forEach(b -> b.sequence().generateUpTo(target));
+        }
+    }
+
+    /**
+     * Retires the branch obtained by perturbing the base sequence at the given step. The branch is not advanced
+     * anymore, and it is opened again if it is requested later.
+     *
+     * @param perturbedStep perturbed step.
+     */
+    public synchronized void retire(int perturbedStep) {
+        branches.remove(perturbedStep);
+    }
+
+    /**
+     * Retires all the branches in this set.
+     */
+    public synchronized void retireAll() {
+        branches.clear();
+    }
+
+    /**
+     * Returns the number of live branches in this set.
+     *
+     * @return the number of live branches in this set.
+     */
+    public synchronized int size() {
+        return branches.size();
+    }
+
+    private record Branch(EvolutionSequence sequence, int limit) {
+
+        int generated() {
+            return sequence.length()-1;
+        }
+
+    }
+
+}
@@ -0,0 +1,227 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import it.unicam.quasylab.jspear.ds.ColumnarDataState;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A sample set whose data are stored as contiguous columns of primitive values,
+ * one for each variable. The system states in the set are row views over these columns,
+ * so that they can still be used by code expecting a {@link SystemState}, while the
+ * evaluation of penalty functions scans the columns directly with a single cursor
+ * for each chunk of rows. States added to the set are copied into the columns, whose capacity
+ * is doubled when they are full.
+ *
+ * @param <T> model domain.
+ */
+public class ColumnarSampleSet<T extends SystemState> extends SampleSet<T> {
+
+    /**
+     * Number of rows that are evaluated by a single cursor.
+     */
+    private static final int CHUNK_SIZE = 4096;
+
+    /**
+     * Capacity of the columns of a sample set that is extended when it is empty.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    private double[][] columns;
+    private ColumnarDataState[] views;
+    private DataState prototype;
+
+    private ColumnarSampleSet(List<T> rows, double[][] columns, ColumnarDataState[] views, DataState prototype) {
+        super(rows);
+        this.columns = columns;
+        this.views = views;
+        this.prototype = prototype;
+    }
+
+    /**
+     * Returns a columnar copy of the given sample set. Values of all the data states in <code>sampleSet</code>
+     * are copied into columns, and each system state is replaced by a row view over them.
+     *
+     * @param sampleSet a sample set.
+     * @return a columnar copy of <code>sampleSet</code>.
+     * @param <T> model domain.
+     * @throws IllegalArgumentException if the data states in <code>sampleSet</code> have different sizes.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends SystemState> ColumnarSampleSet<T> of(SampleSet<T> sampleSet) {
+        if (sampleSet instanceof ColumnarSampleSet<T> columnarSampleSet) {
+            return columnarSampleSet;
+        }
+        List<T> states = sampleSet.stream().toList();
+        int size = states.size();
+        int variables = (size == 0 ? 0 : states.get(0).getDataState().size());
+        double[][] columns = new double[variables][size];
+        ColumnarDataState[] views = new ColumnarDataState[size];
+        Object[] rows = new Object[size];
+        IntStream.range(0, size).parallel().forEach(r -> {
+            T state = states.get(r);
+            DataState ds = state.getDataState();
+            if (ds.size() != variables) {
+                throw new IllegalArgumentException("Data states of a columnar sample set must have the same size!");
+            }
+            for (int v = 0; v < variables; v++) {
+                columns[v][r] = ds.get(v);
+            }
+            views[r] = ColumnarDataState.of(ds, columns, r);
+            rows[r] = state.setDataState(views[r]);
+        });
+        List<T> rowList = new ArrayList<>(size);
+        for (Object row : rows) {
+            rowList.add((T) row);
+        }
+        DataState prototype = (size == 0 ? null : states.get(0).getDataState());
+        return new ColumnarSampleSet<>(rowList, columns, views, prototype);
+    }
+
+    /**
+     * Returns the number of variables stored in each row of this sample set.
+     *
+     * @return the number of variables stored in each row of this sample set.
+     */
+    public int getNumberOfVariables() {
+        return columns.length;
+    }
+
+    /**
+     * Returns the column containing the values of the given variable for all the rows of this sample set.
+     * The returned array is shared with this sample set and must not be modified.
+     *
+     * @param variable index of a variable.
+     * @return the column containing the values of <code>variable</code>.
+     */
+    public double[] getColumn(int variable) {
+        trimToSize();
+        return columns[variable];
+    }
+
+    /**
+     * Returns the sorted values of the given variable in this sample set. The column is scanned
+     * directly, without evaluating any expression over data states.
+     *
+     * @param variable index of a variable.
+     * @return the sorted values of <code>variable</code> in this sample set.
+     */
+    public double[] evalVariable(int variable) {
+        double[] result = Arrays.copyOf(columns[variable], size());
+        Arrays.parallelSort(result);
+        return result;
+    }
+
+    @Override
+    protected double[] computePenaltyFunction(DataStateExpression f) {
+        int size = size();
+        double[] result = new double[size];
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            ColumnarDataState cursor = ColumnarDataState.of(prototype, columns, 0);
+            int last = Math.min(size, (c + 1) * CHUNK_SIZE);
+            for (int r = c * CHUNK_SIZE; r < last; r++) {
+                result[r] = f.eval(moveTo(cursor, r));
+            }
+        });
+        Arrays.parallelSort(result);
+        return result;
+    }
+
+    /**
+     * Moves the given cursor to the given row, updating its time variables.
+     *
+     * @param cursor a cursor over the columns of this sample set.
+     * @param row index of a row.
+     * @return the cursor moved to <code>row</code>.
+     */
+    private ColumnarDataState moveTo(ColumnarDataState cursor, int row) {
+        cursor.moveTo(row);
+        cursor.setTime(views[row]);
+        return cursor;
+    }
+
+    /**
+     * Adds a new system state to this sample set. The values of its data state are copied into the columns,
+     * and the state is stored as a row view over them.
+     *
+     * @param state a system state.
+     * @throws IllegalArgumentException if the data state of <code>state</code> has a size different from the one
+     * of the data states in this sample set.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void add(T state) {
+        DataState ds = state.getDataState();
+        int row = size();
+        if (row == 0) {
+            columns = new double[ds.size()][INITIAL_CAPACITY];
+            views = new ColumnarDataState[INITIAL_CAPACITY];
+            prototype = ds;
+        } else if (ds.size() != columns.length) {
+            throw new IllegalArgumentException("Data states of a columnar sample set must have the same size!");
+        }
+        if (row == views.length) {
+            resize(Math.max(INITIAL_CAPACITY, 2 * row));
+        } else if ((columns.length > 0) && (row == columns[0].length)) {
+            resize(views.length);
+        }
+        for (int v = 0; v < columns.length; v++) {
+            columns[v][row] = ds.get(v);
+        }
+        views[row] = ColumnarDataState.of(ds, columns, row);
+        super.add((T) state.setDataState(views[row]));
+    }
+
+    /**
+     * Sets the capacity of the columns, and of the views over them, to the given value. Columns are replaced in
+     * place, so that existing views read the new ones.
+     *
+     * @param capacity number of rows that can be stored in the columns.
+     */
+    private void resize(int capacity) {
+        for (int v = 0; v < columns.length; v++) {
+            columns[v] = Arrays.copyOf(columns[v], capacity);
+        }
+        views = Arrays.copyOf(views, capacity);
+    }
+
+    /**
+     * Trims the columns to the number of rows in this sample set.
+     */
+    private void trimToSize() {
+        int size = size();
+        if ((columns.length > 0) && (columns[0].length != size)) {
+            for (int v = 0; v < columns.length; v++) {
+                columns[v] = Arrays.copyOf(columns[v], size);
+            }
+        }
+    }
+
+}
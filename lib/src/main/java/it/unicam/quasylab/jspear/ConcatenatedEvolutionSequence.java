@@ -0,0 +1,60 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.util.List;
+
+/**
+ * Represents the evolution sequence whose sample set at each step is the concatenation of the sample sets of two
+ * given sequences at the same step.
+ */
+class ConcatenatedEvolutionSequence extends EvolutionSequence {
+
+    private final EvolutionSequence first;
+    private final EvolutionSequence second;
+
+    /**
+     * Creates the concatenation of the two given sequences. The created sequence uses the monitor and the settings of
+     * the first sequence, and its steps are always generated one at a time.
+     *
+     * @param first the sequence providing the first samples of each step.
+     * @param second the sequence providing the last samples of each step.
+     * @param rg a random generator reserved by the first sequence to its branches.
+     * @param sequence the already concatenated steps.
+     */
+    ConcatenatedEvolutionSequence(EvolutionSequence first, EvolutionSequence second, RandomGenerator rg, List<SampleSet<SystemState>> sequence) {
+        super(first, rg, sequence);
+        this.first = first;
+        this.second = second;
+        setTrajectoryMajor(false);
+    }
+
+    @Override
+    protected SampleSet<SystemState> generateNextStep() {
+        int step = length();
+        return first.get(step).concat(second.get(step));
+    }
+
+}
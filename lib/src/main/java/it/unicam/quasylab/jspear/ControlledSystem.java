@@ -23,13 +23,15 @@
 package it.unicam.quasylab.jspear;
 
 import it.unicam.quasylab.jspear.controller.Controller;
-import it.unicam.quasylab.jspear.controller.EffectStep;
 import it.unicam.quasylab.jspear.ds.DataState;
 import it.unicam.quasylab.jspear.ds.DataStateBooleanExpression;
 import it.unicam.quasylab.jspear.ds.DataStateExpression;
 import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.ds.UpdateBuffer;
 import org.apache.commons.math3.random.RandomGenerator;
 
+import java.util.Optional;
+
 /**
  * Represents a system in the evolution sequence model,
  * namely a system that consists of
@@ -39,6 +41,8 @@ import org.apache.commons.math3.random.RandomGenerator;
  */
 public class ControlledSystem implements SystemState {
 
+    private static final Optional<BatchSystem> BATCH_SYSTEM = Optional.of(BatchSystem.SAMPLE_NEXT);
+
     private final Controller controller;
     private final DataStateFunction environment;
     private final DataState state;
@@ -62,11 +66,19 @@ public class ControlledSystem implements SystemState {
 
     @Override
     public SystemState sampleNext(RandomGenerator rg) {
-        EffectStep<Controller> step = controller.next(rg, state);
+        UpdateBuffer updates = UpdateBuffer.acquire();
+        Controller next;
+        DataState updated;
+        try {
+            next = controller.next(rg, state, updates);
+            updated = state.apply(updates);
+        } finally {
+            updates.release();
+        }
         int c_step = state.getStep();
-        DataState newState = environment.apply(rg, state.apply(step.effect()));
+        DataState newState = environment.applyInPlace(rg, updated);
         newState.setStep(c_step+1);
-        return new ControlledSystem(step.next(), environment, newState);
+        return new ControlledSystem(next, environment, newState);
     }
 
     @Override
@@ -85,4 +97,9 @@ public class ControlledSystem implements SystemState {
         return new ControlledSystem(controller, environment, dataState);
     }
 
+    @Override
+    public Optional<BatchSystem> getBatchSystem() {
+        return BATCH_SYSTEM;
+    }
+
 }
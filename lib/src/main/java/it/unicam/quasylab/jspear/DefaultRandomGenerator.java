@@ -23,25 +23,126 @@
 package it.unicam.quasylab.jspear;
 
 import org.apache.commons.math3.random.AbstractRandomGenerator;
+import org.apache.commons.math3.random.RandomGenerator;
 
-import java.util.Random;
 import java.util.SplittableRandom;
 
 /**
  * We use this class to implement a computationally efficient random generator.
- */
-/**
- * We use this class to implement a computationally efficient random generator.
+ * Generators can be split to obtain independent streams, one for each sample,
+ * so that parallel simulations do not share (and contend) a single generator
+ * and their results do not depend on the level of parallelism.
  */
 public class DefaultRandomGenerator extends AbstractRandomGenerator {
 
-    private SplittableRandom random = new SplittableRandom();
+    private SplittableRandom random;
+
+    /**
+     * Creates a new random generator.
+     */
+    public DefaultRandomGenerator() {
+        this(new SplittableRandom());
+    }
+
+    /**
+     * Creates a new random generator with the given seed.
+     *
+     * @param seed initial seed.
+     */
+    public DefaultRandomGenerator(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    private DefaultRandomGenerator(SplittableRandom random) {
+        this.random = random;
+    }
 
     @Override
-    public void setSeed(long seed) {
+    public synchronized void setSeed(long seed) {
         this.random = new SplittableRandom(seed);
     }
 
+    /**
+     * Returns a new random generator that is split from this one.
+     * The returned generator and this one produce independent streams of values.
+     *
+     * @return a new random generator split from this one.
+     */
+    public synchronized DefaultRandomGenerator split() {
+        return new DefaultRandomGenerator(random.split());
+    }
+
+    /**
+     * Returns an array of <code>n</code> random generators split from this one.
+     * The generators are split sequentially, hence the returned streams only depend
+     * on the state of this generator.
+     *
+     * @param n number of generators.
+     * @return an array of <code>n</code> random generators split from this one.
+     */
+    public synchronized RandomGenerator[] split(int n) {
+        RandomGenerator[] result = new RandomGenerator[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = new DefaultRandomGenerator(random.split());
+        }
+        return result;
+    }
+
+    /**
+     * Returns an array of <code>n</code> independent random generators derived from the given one.
+     * If <code>rg</code> is a {@link DefaultRandomGenerator} the returned generators are split from it,
+     * otherwise they are split from a generator seeded with a value sampled from <code>rg</code>.
+     *
+     * @param rg a random generator.
+     * @param n number of generators.
+     * @return an array of <code>n</code> independent random generators derived from <code>rg</code>.
+     */
+    public static RandomGenerator[] split(RandomGenerator rg, int n) {
+        if (rg instanceof DefaultRandomGenerator drg) {
+            return drg.split(n);
+        }
+        long seed;
+        synchronized (rg) {
+            seed = rg.nextLong();
+        }
+        return new DefaultRandomGenerator(seed).split(n);
+    }
+
+    /**
+     * Returns the random generator with the given index among the ones derived from the given seed. Generators
+     * derived from the same seed with different indices produce independent streams, while the same stream is
+     * obtained for the same seed and index, hence derived streams do not depend on the order in which they are
+     * requested.
+     *
+     * @param seed a seed.
+     * @param index index of the derived generator.
+     * @return the random generator with index <code>index</code> derived from <code>seed</code>.
+     */
+    public static DefaultRandomGenerator derive(long seed, long index) {
+        return new DefaultRandomGenerator(deriveSeed(seed, index));
+    }
+
+    /**
+     * Returns the seed with the given index among the ones derived from the given seed. This is the seed of the
+     * generator returned by {@link #derive(long, long)}, and it can be used to derive further generators.
+     *
+     * @param seed a seed.
+     * @param index index of the derived seed.
+     * @return the seed with index <code>index</code> derived from <code>seed</code>.
+     */
+    public static long deriveSeed(long seed, long index) {
+        return mix(seed + mix(index));
+    }
+
+    /**
+     * Returns the 64-bit finaliser of MurmurHash3 (variant 13 by Stafford) applied to the given value.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
     @Override
     public double nextDouble() {
         return random.nextDouble();
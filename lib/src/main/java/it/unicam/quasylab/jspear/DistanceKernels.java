@@ -0,0 +1,314 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Kernels used to compute the Wasserstein lifting of ground distances between sorted samples. The built-in
+ * ground distances are evaluated with plain loops over the arrays, that do not box values nor invoke lambdas,
+ * while any other ground distance is evaluated by
+ * applying the given operator to each pair of values. The built-in ground distances are recognised by identity,
+ * hence they must be passed as the constants of this class to be evaluated by the kernels and to allow the
+ * progressive comparison of distances with thresholds.
+ */
+public final class DistanceKernels {
+
+    /**
+     * The ground distance <code>|v2-v1|</code>.
+     */
+    public static final DoubleBinaryOperator ABSOLUTE = (v1, v2) -> Math.abs(v2-v1);
+
+    /**
+     * The asymmetric ground distance <code>max(0,v2-v1)</code>.
+     */
+    public static final DoubleBinaryOperator LEQ = (v1, v2) -> Math.max(0.0, v2-v1);
+
+    /**
+     * The asymmetric ground distance <code>max(0,v1-v2)</code>.
+     */
+    public static final DoubleBinaryOperator GEQ = (v1, v2) -> Math.max(0.0, v1-v2);
+
+    /**
+     * Minimal number of pairs that are evaluated in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 15;
+
+    /**
+     * Number of pairs evaluated by a single task.
+     */
+    private static final int CHUNK_SIZE = 1 << 13;
+
+    /**
+     * Kinds of ground distances evaluated by the kernels.
+     */
+    private static final int GENERIC_KIND = 0;
+    private static final int ABSOLUTE_KIND = 1;
+    private static final int LEQ_KIND = 2;
+    private static final int GEQ_KIND = 3;
+
+    private DistanceKernels() {}
+
+    /**
+     * Returns the Wasserstein lifting of the given ground distance between the sampled distributions
+     * <code>thisData</code> and <code>otherData</code>. When the length of <code>otherData</code> is a multiple
+     * <code>k</code> of the length of <code>thisData</code>, the value <code>thisData[i]</code> is paired with the values
+     * <code>otherData[i*k+j]</code>, for <code>0&lt;=j&lt;k</code>. Otherwise, the quantile functions of the two
+     * distributions are merged, as in {@link #merge(DoubleBinaryOperator, double[], double[])}.
+     *
+     * @param distance ground distance on reals.
+     * @param thisData an array of sorted real values.
+     * @param otherData an array of sorted real values.
+     * @return the Wasserstein lifting of <code>distance</code> between <code>thisData</code> and <code>otherData</code>.
+     * @throws IllegalArgumentException if one of the arrays is empty.
+     */
+    static double wasserstein(DoubleBinaryOperator distance, double[] thisData, double[] otherData) {
+        if ((thisData.length == 0) || (otherData.length == 0)) {
+            throw new IllegalArgumentException("Empty data sets!");
+        }
+        if (otherData.length % thisData.length != 0) {
+            return merge(distance, thisData, otherData);
+        }
+        int k = otherData.length / thisData.length;
+        if (otherData.length < PARALLEL_THRESHOLD) {
+            return sum(distance, thisData, otherData, k, 0, thisData.length) / otherData.length;
+        }
+        int rows = Math.max(1, CHUNK_SIZE / k);
+        int chunks = (thisData.length + rows - 1) / rows;
+        return IntStream.range(0, chunks).parallel()
+                .mapToDouble(c -> sum(distance, thisData, otherData, k, c * rows, Math.min(thisData.length, (c + 1) * rows)))
+                .sum() / otherData.length;
+    }
+
+    /**
+     * Returns the Wasserstein lifting of the given ground distance between the sampled distributions
+     * <code>thisData</code> and <code>otherData</code> of arbitrary sizes. The two quantile functions are
+     * scanned together: each interval of quantile levels where both functions are constant pairs one value of
+     * each array, and its width is the weight of the pair. Levels are counted in units of <code>1/(n*m)</code>,
+     * so that no rounding occurs in the merge, which takes <code>O(n+m)</code> steps.
+     *
+     * @param distance ground distance on reals.
+     * @param thisData an array of sorted real values.
+     * @param otherData an array of sorted real values.
+     * @return the Wasserstein lifting of <code>distance</code> between <code>thisData</code> and <code>otherData</code>.
+     */
+    static double merge(DoubleBinaryOperator distance, double[] thisData, double[] otherData) {
+        long n = thisData.length;
+        long m = otherData.length;
+        double sum = 0.0;
+        long level = 0;
+        int i = 0;
+        int j = 0;
+        while ((i < n) && (j < m)) {
+            long thisNext = (i + 1) * m;
+            long otherNext = (j + 1) * n;
+            long next = Math.min(thisNext, otherNext);
+            sum += (next - level) * distance.applyAsDouble(thisData[i], otherData[j]);
+            level = next;
+            if (thisNext == next) {
+                i++;
+            }
+            if (otherNext == next) {
+                j++;
+            }
+        }
+        return sum / (n * m);
+    }
+
+    /**
+     * Returns the Wasserstein lifting of the given ground distance between two weighted sampled distributions.
+     * Values in each array are sorted, and each value has the corresponding weight. Weights are normalised, so that
+     * they need not sum up to 1.
+     *
+     * @param distance ground distance on reals.
+     * @param thisData an array of sorted real values.
+     * @param thisWeights the weights of the values in <code>thisData</code>.
+     * @param otherData an array of sorted real values.
+     * @param otherWeights the weights of the values in <code>otherData</code>.
+     * @return the Wasserstein lifting of <code>distance</code> between the two weighted distributions.
+     * @throws IllegalArgumentException if the arrays of values and weights have different lengths, or if a weight is
+     * negative, or if the total weight of a distribution is not positive.
+     */
+    static double merge(DoubleBinaryOperator distance, double[] thisData, double[] thisWeights, double[] otherData, double[] otherWeights) {
+        double thisTotal = totalWeight(thisData, thisWeights);
+        double otherTotal = totalWeight(otherData, otherWeights);
+        double sum = 0.0;
+        double level = 0.0;
+        double thisLevel = thisWeights[0] / thisTotal;
+        double otherLevel = otherWeights[0] / otherTotal;
+        int i = 0;
+        int j = 0;
+        while ((i < thisData.length) && (j < otherData.length)) {
+            double next = Math.min(thisLevel, otherLevel);
+            if (next > level) {
+                sum += (next - level) * distance.applyAsDouble(thisData[i], otherData[j]);
+                level = next;
+            }
+            if (thisLevel <= next) {
+                i++;
+                thisLevel = (i < thisData.length ? thisLevel + thisWeights[i] / thisTotal : Double.POSITIVE_INFINITY);
+            }
+            if (otherLevel <= next) {
+                j++;
+                otherLevel = (j < otherData.length ? otherLevel + otherWeights[j] / otherTotal : Double.POSITIVE_INFINITY);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns true if bounds on the Wasserstein lifting of the given ground distance can be computed from partial
+     * data by {@link #bounds(DoubleBinaryOperator, double[], int, double[], int)}.
+     *
+     * @param distance ground distance on reals.
+     * @return true if bounds on the lifting of <code>distance</code> can be computed from partial data.
+     */
+    static boolean hasBounds(DoubleBinaryOperator distance) {
+        return (distance == ABSOLUTE) || (distance == LEQ) || (distance == GEQ);
+    }
+
+    /**
+     * Returns the lower and upper bounds of the Wasserstein lifting of the given ground distance between two
+     * distributions on <code>[0,1]</code> of which only some values are known. The lifting is the integral over
+     * <code>[0,1]</code> of a function of the difference of the two cumulative distribution functions: the absolute
+     * value for {@link #ABSOLUTE}, the positive part for {@link #LEQ} and the negative part for {@link #GEQ}.
+     * At each point, the unknown values may either precede or follow the point, which bounds each distribution function
+     * in an interval of width equal to its fraction of unknown values. The bounds are obtained by integrating the least
+     * and the largest differences compatible with these intervals, and they are computed in <code>O(n+m)</code> steps.
+     *
+     * @param distance one of the ground distances {@link #ABSOLUTE}, {@link #LEQ} and {@link #GEQ}.
+     * @param thisData the known values of the first distribution, sorted and in <code>[0,1]</code>.
+     * @param thisSize number of values of the first distribution.
+     * @param otherData the known values of the second distribution, sorted and in <code>[0,1]</code>.
+     * @param otherSize number of values of the second distribution.
+     * @return the array containing the lower and the upper bound of the Wasserstein lifting of <code>distance</code>.
+     */
+    static double[] bounds(DoubleBinaryOperator distance, double[] thisData, int thisSize, double[] otherData, int otherSize) {
+        double thisUnknown = thisSize - thisData.length;
+        double otherUnknown = otherSize - otherData.length;
+        double lower = 0.0;
+        double upper = 0.0;
+        double point = 0.0;
+        int i = 0;
+        int j = 0;
+        while (point < 1.0) {
+            while ((i < thisData.length) && (thisData[i] <= point)) {
+                i++;
+            }
+            while ((j < otherData.length) && (otherData[j] <= point)) {
+                j++;
+            }
+            double next = Math.min(i < thisData.length ? thisData[i] : 1.0, j < otherData.length ? otherData[j] : 1.0);
+            double thisLow = i / (double) thisSize;
+            double thisHigh = (i + thisUnknown) / thisSize;
+            double otherLow = j / (double) otherSize;
+            double otherHigh = (j + otherUnknown) / otherSize;
+            double width = next - point;
+            if (distance == LEQ) {
+                lower += width * Math.max(0.0, thisLow - otherHigh);
+                upper += width * Math.max(0.0, thisHigh - otherLow);
+            } else if (distance == GEQ) {
+                lower += width * Math.max(0.0, otherLow - thisHigh);
+                upper += width * Math.max(0.0, otherHigh - thisLow);
+            } else {
+                lower += width * Math.max(0.0, Math.max(thisLow - otherHigh, otherLow - thisHigh));
+                upper += width * Math.max(thisHigh - otherLow, otherHigh - thisLow);
+            }
+            point = next;
+        }
+        return new double[] { lower, upper };
+    }
+
+    private static double totalWeight(double[] data, double[] weights) {
+        if (data.length != weights.length) {
+            throw new IllegalArgumentException("Values and weights must have the same length!");
+        }
+        double total = 0.0;
+        for (double w : weights) {
+            if (w < 0) {
+                throw new IllegalArgumentException("Weights must be non-negative!");
+            }
+            total += w;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("The total weight must be positive!");
+        }
+        return total;
+    }
+
+    /**
+     * Returns the sum of the ground distances between the pairs of values in rows <code>from</code> to <code>to</code>.
+     * Both the sum of each row and the sum of the rows are computed with compensated summation, like
+     * {@link java.util.stream.DoubleStream#sum()}, hence each sum is a sequential chain of additions.
+     */
+    private static double sum(DoubleBinaryOperator distance, double[] thisData, double[] otherData, int k, int from, int to) {
+        int kind = kindOf(distance);
+        double sum = 0.0;
+        double compensation = 0.0;
+        for (int i = from; i < to; i++) {
+            double v = thisData[i];
+            int base = i * k;
+            double rowSum = 0.0;
+            double rowCompensation = 0.0;
+            for (int j = 0; j < k; j++) {
+                double y = term(kind, distance, v, otherData[base + j]) - rowCompensation;
+                double t = rowSum + y;
+                rowCompensation = (t - rowSum) - y;
+                rowSum = t;
+            }
+            double y = (rowSum - rowCompensation) - compensation;
+            double t = sum + y;
+            compensation = (t - sum) - y;
+            sum = t;
+        }
+        return sum - compensation;
+    }
+
+    private static int kindOf(DoubleBinaryOperator distance) {
+        if (distance == ABSOLUTE) {
+            return ABSOLUTE_KIND;
+        }
+        if (distance == LEQ) {
+            return LEQ_KIND;
+        }
+        if (distance == GEQ) {
+            return GEQ_KIND;
+        }
+        return GENERIC_KIND;
+    }
+
+    /**
+     * Returns the ground distance between <code>v1</code> and <code>v2</code>. The built-in ground distances are
+     * evaluated inline, and the given operator is only applied to the values for the other ones.
+     */
+    private static double term(int kind, DoubleBinaryOperator distance, double v1, double v2) {
+        return switch (kind) {
+            case ABSOLUTE_KIND -> Math.abs(v2 - v1);
+            case LEQ_KIND -> Math.max(0.0, v2 - v1);
+            case GEQ_KIND -> Math.max(0.0, v1 - v2);
+            default -> distance.applyAsDouble(v1, v2);
+        };
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import java.util.Arrays;
+
+/**
+ * An index over the sorted evaluations of a penalty function on a sample set. Together with the sorted values,
+ * the index stores their prefix sums, so that the empirical distribution function and the asymmetric
+ * Wasserstein distances between the distribution and one of its {@link PenaltyShift}s are computed in
+ * <code>O(log n)</code> time, by binary search, without sampling the shifted distribution.
+ */
+public final class EcdfIndex {
+
+    private final double[] values;
+
+    private final double[] prefix;
+
+    /**
+     * Creates the index of the given sorted values. The array is not copied, hence it must not be modified.
+     *
+     * @param values sorted values.
+     * @throws IllegalArgumentException if <code>values</code> is empty.
+     */
+    EcdfIndex(double[] values) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("Empty data sets!");
+        }
+        this.values = values;
+        this.prefix = new double[values.length + 1];
+        double sum = 0.0;
+        double compensation = 0.0;
+        for (int i = 0; i < values.length; i++) {
+            double y = values[i] - compensation;
+            double t = sum + y;
+            compensation = (t - sum) - y;
+            sum = t;
+            prefix[i + 1] = sum;
+        }
+    }
+
+    /**
+     * Returns the index of the given values.
+     *
+     * @param values an array of values.
+     * @return the index of <code>values</code>.
+     * @throws IllegalArgumentException if <code>values</code> is empty.
+     */
+    public static EcdfIndex of(double[] values) {
+        double[] sorted = Arrays.copyOf(values, values.length);
+        Arrays.sort(sorted);
+        return new EcdfIndex(sorted);
+    }
+
+    /**
+     * Returns the number of indexed values.
+     *
+     * @return the number of indexed values.
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Returns the fraction of indexed values that are less than or equal to <code>x</code>.
+     *
+     * @param x a value.
+     * @return the empirical distribution function of the indexed values evaluated at <code>x</code>.
+     */
+    public double cdf(double x) {
+        return countLessOrEqual(x) / (double) values.length;
+    }
+
+    /**
+     * Returns the Wasserstein lifting of the ground distance <code>max(0, v2-v1)</code> between the indexed
+     * distribution and its transformation by the given shift. This is the value computed by
+     * {@link SampleSet#distanceLeq(it.unicam.quasylab.jspear.ds.DataStateExpression, SampleSet)} between a sample set
+     * and the sample set obtained by shifting its penalties.
+     *
+     * @param shift a penalty shift.
+     * @return the asymmetric Wasserstein distance from the indexed distribution to its shift.
+     */
+    public double distanceLeq(PenaltyShift shift) {
+        int n = values.length;
+        int first = countLessOrEqual(shift.lowerBound() - shift.delta());
+        int last = Math.max(first, countLess(shift.upperBound() - shift.delta()));
+        double sum = 0.0;
+        int below = Math.min(first, countLess(shift.lowerBound()));
+        if (below > 0) {
+            sum += below * shift.lowerBound() - prefix[below];
+        }
+        sum += (last - first) * Math.max(0.0, shift.delta());
+        int above = Math.max(last, countLess(shift.upperBound()));
+        if (above > last) {
+            sum += (above - last) * shift.upperBound() - (prefix[above] - prefix[last]);
+        }
+        return sum / n;
+    }
+
+    /**
+     * Returns the Wasserstein lifting of the ground distance <code>max(0, v1-v2)</code> between the indexed
+     * distribution and its transformation by the given shift. This is the value computed by
+     * {@link SampleSet#distanceGeq(it.unicam.quasylab.jspear.ds.DataStateExpression, SampleSet)} between a sample set
+     * and the sample set obtained by shifting its penalties.
+     *
+     * @param shift a penalty shift.
+     * @return the asymmetric Wasserstein distance from the indexed distribution to its shift.
+     */
+    public double distanceGeq(PenaltyShift shift) {
+        int n = values.length;
+        int first = countLessOrEqual(shift.lowerBound() - shift.delta());
+        int last = Math.max(first, countLess(shift.upperBound() - shift.delta()));
+        double sum = 0.0;
+        int below = Math.min(first, countLessOrEqual(shift.lowerBound()));
+        if (first > below) {
+            sum += (prefix[first] - prefix[below]) - (first - below) * shift.lowerBound();
+        }
+        sum += (last - first) * Math.max(0.0, -shift.delta());
+        int above = Math.max(last, countLessOrEqual(shift.upperBound()));
+        if (n > above) {
+            sum += (prefix[n] - prefix[above]) - (n - above) * shift.upperBound();
+        }
+        return sum / n;
+    }
+
+    /**
+     * Returns the number of indexed values that are less than or equal to <code>x</code>.
+     */
+    private int countLessOrEqual(double x) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the number of indexed values that are strictly less than <code>x</code>.
+     */
+    private int countLess(double x) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+}
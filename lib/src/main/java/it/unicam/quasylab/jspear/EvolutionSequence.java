@@ -23,16 +23,30 @@
 package it.unicam.quasylab.jspear;
 
 import it.unicam.quasylab.jspear.distance.DistanceExpression;
+import it.unicam.quasylab.jspear.ds.ChunkedDataState;
+import it.unicam.quasylab.jspear.ds.DataState;
 import it.unicam.quasylab.jspear.ds.DataStateExpression;
 import it.unicam.quasylab.jspear.ds.DataStateFunction;
 import it.unicam.quasylab.jspear.ds.DataStateBooleanExpression;
 import it.unicam.quasylab.jspear.perturbation.Perturbation;
+import it.unicam.quasylab.jspear.udistl.UDisTLFormula;
 import nl.tue.Monitoring.PerceivedSystemState;
 import org.apache.commons.math3.random.RandomGenerator;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
 /**
  * This class represent a collection of sequences of data sampled from a model described in terms
@@ -40,10 +54,57 @@ import java.util.function.Function;
  */
 public class EvolutionSequence {
 
+    /**
+     * Number of trajectories simulated by a single task when the sequence is generated trajectory by trajectory.
+     */
+    private static final int TRAJECTORY_CHUNK_SIZE = 64;
+
+    /**
+     * Maximal number of states advanced by a single call of a {@link BatchSystem}.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * Kinds of the random streams derived from the seed of a sequence: the ones reserved to its branches, namely
+     * to the sequences created from it, and the ones used to advance its samples.
+     */
+    private static final int PERTURBATION_BRANCH = 0;
+    private static final int SAMPLE_BRANCH = 1;
+    private static final int CONCATENATION_BRANCH = 2;
+    private static final int COPY_BRANCH = 3;
+    private static final int STEP_STREAMS = 4;
+    private static final int TRAJECTORY_STREAMS = 5;
+    private static final int BRANCH_KINDS = 6;
+
+    /**
+     * Executor used to generate steps ahead of the ones that are requested.
+     */
+    private static final Executor PREFETCHER = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "evolution-sequence-prefetcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     protected       SampleSet<SystemState>              lastGenerated;
-    private final   ArrayList<SampleSet<SystemState>>   sequence;
+    private final   StepBuffer                          sequence;
     private final   RandomGenerator                     rg;
+    private final   long                                seed;
+    private         Function<RandomGenerator, SystemState> generator;
     private final   SimulationMonitor                   monitor;
+    private         boolean                             columnar = false;
+    private         boolean                             trajectoryMajor = false;
+    private         boolean                             chunked = false;
+    private         int                                 retention = Integer.MAX_VALUE;
+    private volatile int                                firstRetainedStep = 0;
+    private         EvolutionSequenceStore              store;
+    private         Function<DataState, SystemState>    restore;
+    private volatile int                                storedSteps = 0;
+    private         boolean                             appending = false;
+    private volatile int                                lookahead = 0;
+    private         List<DataStateExpression>           sketchedPenalties = new CopyOnWriteArrayList<>();
+    private final   ReentrantLock                       generationLock = new ReentrantLock(true);
+    private final   AtomicInteger                       prefetchTarget = new AtomicInteger(-1);
+    private final   AtomicBoolean                       prefetching = new AtomicBoolean(false);
 
     /**
      * Creates an evolution sequence originating from the given generator.
@@ -55,9 +116,11 @@ public class EvolutionSequence {
      */
     public EvolutionSequence(SimulationMonitor monitor, RandomGenerator rg, Function<RandomGenerator, SystemState> generator, int size) {
         this.lastGenerated = SampleSet.generate(rg, generator, size);
-        this.sequence = new ArrayList<>();
+        this.sequence = new StepBuffer(List.of());
         this.rg = rg;
+        this.seed = rg.nextLong();
         this.monitor = monitor;
+        this.generator = generator;
         this.sequence.add(lastGenerated);
     }
 
@@ -76,23 +139,97 @@ public class EvolutionSequence {
      * Creates an evolution sequence whose first elements are contained in the given sequence.
      */
     protected EvolutionSequence(SimulationMonitor monitor, RandomGenerator rg, List<SampleSet<SystemState>> sequence) {
-        this.sequence = new ArrayList<>(sequence);
+        this.sequence = new StepBuffer(sequence);
         if (!sequence.isEmpty()) {
-            this.lastGenerated = this.sequence.get(this.sequence.size()-1);
+            this.lastGenerated = sequence.get(sequence.size()-1);
+        }
+        for (int i=0; i<sequence.size(); i++) {
+            if (sequence.get(i) == null) {
+                this.firstRetainedStep = i+1;
+            }
         }
         this.rg = rg;
+        this.seed = rg.nextLong();
         this.monitor = monitor;
     }
 
     /**
-     * Creates an evolution sequence that shares the first <code>steps</code> with the given one.
+     * Creates an evolution sequence whose first elements are contained in the given sequence, and that
+     * uses the same monitor and settings of the given evolution sequence. The created sequence uses the given
+     * random stream, which is expected to be one of the streams that the given sequence reserves to its branches,
+     * so that the samplings of the two sequences do not depend on the order in which their steps are generated.
+     *
+     * @param base evolution sequence providing monitor and settings.
+     * @param rg random generator of the created sequence.
+     * @param sequence first elements of the created sequence.
+     */
+    protected EvolutionSequence(EvolutionSequence base, RandomGenerator rg, List<SampleSet<SystemState>> sequence) {
+        this(base.monitor, rg, sequence);
+        this.columnar = base.columnar;
+        this.trajectoryMajor = base.trajectoryMajor;
+        this.chunked = base.chunked;
+        this.retention = base.retention;
+        this.lookahead = base.lookahead;
+        this.sketchedPenalties = base.sketchedPenalties;
+        this.firstRetainedStep = Math.min(base.firstRetainedStep, sequence.size());
+        this.store = base.store;
+        this.restore = base.restore;
+        this.storedSteps = Math.min(base.storedSteps, sequence.size());
+    }
+
+    /**
+     * Creates an evolution sequence whose first steps are the ones contained in the given store. Stored steps
+     * are loaded only when they are accessed, while the sequence is generated from the last stored step on.
+     * Generated steps are appended to the store.
+     *
+     * @param monitor monitor used to control generation of evolution sequence;
+     * @param rg random generator;
+     * @param store the store containing the first steps of the sequence;
+     * @param restore function used to build the system states of the stored steps from their data states.
+     * @throws IOException if an I/O error occurs while loading the last stored step.
+     * @throws IllegalArgumentException if <code>store</code> is empty.
+     */
+    public EvolutionSequence(SimulationMonitor monitor, RandomGenerator rg, EvolutionSequenceStore store, Function<DataState, SystemState> restore) throws IOException {
+        this(monitor, rg, List.of());
+        int steps = store.getNumberOfSteps();
+        if (steps == 0) {
+            throw new IllegalArgumentException("The store does not contain any step!");
+        }
+        for (int i=0; i<steps; i++) {
+            this.sequence.add(null);
+        }
+        this.store = store;
+        this.restore = restore;
+        this.storedSteps = steps;
+        this.appending = true;
+        this.lastGenerated = store.load(steps-1, restore);
+        this.sequence.set(steps-1, lastGenerated);
+    }
+
+    /**
+     * Creates an evolution sequence whose first steps are the ones contained in the given store.
+     *
+     * @param rg random generator;
+     * @param store the store containing the first steps of the sequence;
+     * @param restore function used to build the system states of the stored steps from their data states.
+     * @throws IOException if an I/O error occurs while loading the last stored step.
+     * @throws IllegalArgumentException if <code>store</code> is empty.
+     */
+    public EvolutionSequence(RandomGenerator rg, EvolutionSequenceStore store, Function<DataState, SystemState> restore) throws IOException {
+        this(null, rg, store, restore);
+    }
+
+    /**
+     * Creates an evolution sequence that shares the first <code>steps</code> with the given one. The created
+     * sequence uses a random stream that the given sequence reserves to its copies, hence the samplings of the
+     * given sequence are not affected.
      *
      * @param originalSequence an evolution sequence.
      * @param steps number of steps to copy.
      * @throws IllegalArgumentException if <code>steps<0</code>.
      */
     protected EvolutionSequence(EvolutionSequence originalSequence, int steps) {
-        this(originalSequence.monitor, originalSequence.rg, originalSequence.select(steps));
+        this(originalSequence.monitor, originalSequence.branch(COPY_BRANCH, steps), originalSequence.select(steps));
     }
 
     /**
@@ -101,13 +238,31 @@ public class EvolutionSequence {
      * @param from first selected step
      * @param to last selected step
      * @return the list of sample sets of this sequence in the given range (extremes included)
+     * @throws IllegalStateException if some step in the given range has been evicted.
      */
     public List<SampleSet<SystemState>> select(int from, int to) {
         if (to<0) {
             return List.of();
         }
         generateUpTo(to);
-        return this.sequence.stream().skip(Math.max(0,from)).limit(Math.max(0,1+to-from)).toList();
+        schedulePrefetch(to);
+        checkRetained(Math.max(0,from));
+        return IntStream.rangeClosed(Math.max(0,from), to).mapToObj(this::getGenerated).toList();
+    }
+
+    /**
+     * Returns the first <code>n</code> slots of this sequence. Differently from {@link #select(int, int)},
+     * evicted steps are not an error and are reported as <code>null</code> slots.
+     *
+     * @param n number of selected steps.
+     * @return the first <code>n</code> slots of this sequence.
+     */
+    private List<SampleSet<SystemState>> prefix(int n) {
+        if (n<=0) {
+            return List.of();
+        }
+        generateUpTo(n-1);
+        return this.sequence.prefix(n);
     }
 
     /**
@@ -134,13 +289,55 @@ public class EvolutionSequence {
      *
      * @param i step index.
      * @return the sample set at the given step.
-     * @throws IndexOutOfBoundsException if <code>((i<0)||(i>=length()))</code>.
+     * @throws IndexOutOfBoundsException if <code>i<0</code>.
+     * @throws IllegalStateException if the step has been evicted.
      */
     public SampleSet<SystemState> get(int i) {
         if (getLastGeneratedStep()<i) {
             generateUpTo(i);
         }
-        return sequence.get(i);
+        schedulePrefetch(i);
+        checkRetained(i);
+        return getGenerated(i);
+    }
+
+    /**
+     * Returns the already generated sample set at the given step, loading it from the store if needed.
+     *
+     * @param i step index.
+     * @return the sample set at the given step.
+     */
+    private SampleSet<SystemState> getGenerated(int i) {
+        SampleSet<SystemState> result = sequence.get(i);
+        if (result == null) {
+            checkRetained(i);
+            try {
+                result = store.load(i, restore);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            generationLock.lock();
+            try {
+                if (i>=firstRetainedStep) {
+                    sequence.set(i, result);
+                }
+            } finally {
+                generationLock.unlock();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks that the given step has not been evicted from this sequence, or that it can be reloaded from its store.
+     *
+     * @param step a step index.
+     * @throws IllegalStateException if <code>step</code> has been evicted.
+     */
+    private void checkRetained(int step) {
+        if ((step<firstRetainedStep)&&((restore == null)||(step>=storedSteps))) {
+            throw new IllegalStateException("Step "+step+" has been evicted: only the last "+retention+" steps of the sequence are retained!");
+        }
     }
 
     /**
@@ -153,12 +350,35 @@ public class EvolutionSequence {
     }
 
     /**
-     * This method is used to generate the evolution sequence up to the given index.
+     * This method is used to generate the evolution sequence up to the given index. The generation lock
+     * is acquired for each generated step, so that readers waiting for a step can proceed as soon as it is
+     * available, even if the generation of further steps is in progress.
      *
      * @param n index of the last generated samplings.
      */
-    public synchronized void generateUpTo(int n) {
+    public void generateUpTo(int n) {
         while (getLastGeneratedStep()<n) {
+            generationLock.lock();
+            try {
+                if (getLastGeneratedStep()<n) {
+                    generateNext(n);
+                }
+            } finally {
+                generationLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Generates the next step of this sequence or, in trajectory-major mode, the next batch of steps up to
+     * the given index. This method must be invoked while holding the generation lock.
+     *
+     * @param n index of the last generated samplings.
+     */
+    private void generateNext(int n) {
+        if (trajectoryMajor) {
+            generateTrajectories(Math.min(n-getLastGeneratedStep(), retention));
+        } else {
             int lastGeneratedStep = getLastGeneratedStep();
             startSamplingsOfStep(lastGeneratedStep);
             doAdd( generateNextStep() );
@@ -167,43 +387,291 @@ public class EvolutionSequence {
     }
 
     /**
-     * This method is used to generate the evolution sequence up to certain conditions.
+     * Requests the asynchronous generation of this sequence up to the given index. The method returns immediately,
+     * and steps are generated by a background thread while the requesting thread is free to evaluate the
+     * already generated ones. Readers of a step that is being generated wait for its completion only.
      *
-     * @param conditions list of conditions to be checked.
+     * @param n index of the last generated samplings.
+     */
+    public void prefetch(int n) {
+        prefetchTarget.accumulateAndGet(n, Math::max);
+        if ((getLastGeneratedStep()<n)&&(prefetching.compareAndSet(false, true))) {
+            PREFETCHER.execute(this::runPrefetch);
+        }
+    }
+
+    /**
+     * Requests the generation of the steps following the given one, according to the lookahead of this sequence.
+     *
+     * @param step the last requested step.
+     */
+    private void schedulePrefetch(int step) {
+        int steps = lookahead;
+        if (steps>0) {
+            prefetch(step+steps);
+        }
+    }
+
+    /**
+     * Generates the steps requested via {@link #prefetch(int)}. Errors are not reported here, since they
+     * are raised again to the readers when they request the same steps.
+     */
+    private void runPrefetch() {
+        try {
+            int target;
+            while ((target = prefetchTarget.get())>getLastGeneratedStep()) {
+                generateUpTo(target);
+            }
+        } catch (RuntimeException e) {
+            prefetching.set(false);
+            return;
+        }
+        prefetching.set(false);
+        if ((prefetchTarget.get()>getLastGeneratedStep())&&(prefetching.compareAndSet(false, true))) {
+            PREFETCHER.execute(this::runPrefetch);
+        }
+    }
+
+    /**
+     * Sets the number of steps that are generated in background ahead of the last requested one, so that
+     * the generation of the next steps of this sequence overlaps with the evaluation of the current one.
+     * The default value is 0, namely steps are generated only when they are requested. The retention window of
+     * this sequence must cover the steps generated in advance together with the last requested one, otherwise
+     * prefetched steps could evict the ones being evaluated. The setting is inherited by the perturbations
+     * of this sequence.
+     *
+     * @param lookahead number of steps generated in advance.
+     * @throws IllegalArgumentException if <code>lookahead&lt;0</code> or if the retention window of this sequence
+     * is smaller than <code>lookahead+1</code>.
+     */
+    public void setLookahead(int lookahead) {
+        if (lookahead<0) {
+            throw new IllegalArgumentException("The lookahead must be non-negative!");
+        }
+        generationLock.lock();
+        try {
+            if (lookahead>=retention) {
+                throw new IllegalArgumentException("The retention window must be greater than the lookahead!");
+            }
+            this.lookahead = lookahead;
+        } finally {
+            generationLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of steps that are generated in background ahead of the last requested one.
+     *
+     * @return the number of steps that are generated in background ahead of the last requested one.
+     */
+    public int getLookahead() {
+        return lookahead;
+    }
+
+    /**
+     * Generates the given number of steps by simulating, for each sample in the last generated step,
+     * its whole trajectory. Trajectories are split in chunks that are simulated in parallel without any
+     * synchronization among steps, and their states are then collected into the sample sets of the generated steps.
+     * Each sample is advanced with a single random stream that is derived from the seed of this sequence, the
+     * first generated step and the index of the sample.
+     *
+     * @param steps number of steps to generate.
      */
-    public synchronized void generateUpToCond(ArrayList<DataStateBooleanExpression> conditions) {
-        while (!conditions.isEmpty()) {
+    private void generateTrajectories(int steps) {
+        List<SystemState> states = (chunked && !columnar ? chunk(lastGenerated) : lastGenerated).stream().toList();
+        int size = states.size();
+        List<BiFunction<RandomGenerator, SystemState, SystemState>> functions = new ArrayList<>(steps);
+        for (int t = 0; t < steps; t++) {
+            functions.add(nextStepFunction());
+        }
+        long streamSeed = streamSeed(TRAJECTORY_STREAMS, getLastGeneratedStep()+1);
+        SystemState[][] trajectories = new SystemState[steps][size];
+        int chunks = (size + TRAJECTORY_CHUNK_SIZE - 1) / TRAJECTORY_CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int last = Math.min(size, (c + 1) * TRAJECTORY_CHUNK_SIZE);
+            for (int i = c * TRAJECTORY_CHUNK_SIZE; i < last; i++) {
+                SystemState state = states.get(i);
+                RandomGenerator stream = DefaultRandomGenerator.derive(streamSeed, i);
+                for (int t = 0; t < steps; t++) {
+                    state = functions.get(t).apply(stream, state);
+                    trajectories[t][i] = state;
+                }
+            }
+        });
+        for (SystemState[] step : trajectories) {
             int lastGeneratedStep = getLastGeneratedStep();
             startSamplingsOfStep(lastGeneratedStep);
-            doAdd(generateNextStepCond(conditions.get(0)));
-            conditions.remove(0);
+            doAdd(new SampleSet<>(new ArrayList<>(Arrays.asList(step))));
             endSamplingsOfStep(lastGeneratedStep);
         }
     }
 
+    /**
+     * Returns the function used to sample the states of the next step that is generated from the
+     * ones of the previous step. This method is invoked once for each step, in order, when the sequence
+     * is generated trajectory by trajectory.
+     *
+     * @return the function used to sample the states of the next generated step.
+     */
+    protected BiFunction<RandomGenerator, SystemState, SystemState> nextStepFunction() {
+        return (r, s) -> s.sampleNext(r);
+    }
+
+    /**
+     * This method is used to generate the evolution sequence up to certain conditions.
+     *
+     * @param conditions list of conditions to be checked.
+     */
+    public void generateUpToCond(ArrayList<DataStateBooleanExpression> conditions) {
+        generationLock.lock();
+        try {
+            while (!conditions.isEmpty()) {
+                int lastGeneratedStep = getLastGeneratedStep();
+                startSamplingsOfStep(lastGeneratedStep);
+                doAdd(generateNextStepCond(conditions.get(0)));
+                conditions.remove(0);
+                endSamplingsOfStep(lastGeneratedStep);
+            }
+        } finally {
+            generationLock.unlock();
+        }
+    }
+
     /**
      * Adds a given sampled set as the last generated sample in the sequence.
      *
      * @param sampling a given set of samples.
      */
     protected void doAdd(SampleSet<SystemState> sampling) {
-        lastGenerated = sampling;
+        if (columnar) {
+            lastGenerated = ColumnarSampleSet.of(sampling);
+        } else {
+            lastGenerated = (chunked ? chunk(sampling) : sampling);
+        }
+        if (SampleSet.getApproximationError() > 0) {
+            for (DataStateExpression f : sketchedPenalties) {
+                lastGenerated.getSketch(f);
+            }
+        }
         sequence.add(lastGenerated);
+        if (appending) {
+            try {
+                store.append(lastGenerated);
+                storedSteps = sequence.size();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Stores the steps of this sequence in the given store, and appends to it all the steps generated from now on.
+     * Steps of the sequence that are already in the store are not written again.
+     *
+     * @param store a store.
+     * @throws IOException if an I/O error occurs.
+     * @throws IllegalStateException if the store contains more steps than this sequence, or if a step that must
+     * be stored has been evicted.
+     */
+    public void persistTo(EvolutionSequenceStore store) throws IOException {
+        persistTo(store, null);
+    }
+
+    /**
+     * Stores the steps of this sequence in the given store, and appends to it all the steps generated from now on.
+     * Steps evicted from this sequence after they have been stored are reloaded from the store when they are
+     * accessed, by using the given function to build their system states.
+     *
+     * @param store a store.
+     * @param restore function used to build the system states of the stored steps from their data states.
+     * @throws IOException if an I/O error occurs.
+     * @throws IllegalStateException if the store contains more steps than this sequence, or if a step that must
+     * be stored has been evicted.
+     */
+    public void persistTo(EvolutionSequenceStore store, Function<DataState, SystemState> restore) throws IOException {
+        generationLock.lock();
+        try {
+            if (store.getNumberOfSteps()>sequence.size()) {
+                throw new IllegalStateException("The store contains more steps than the evolution sequence!");
+            }
+            checkRetained(store.getNumberOfSteps());
+            for (int i=store.getNumberOfSteps(); i<sequence.size(); i++) {
+                store.append(getGenerated(i));
+            }
+            this.store = store;
+            this.restore = restore;
+            this.storedSteps = sequence.size();
+            this.appending = true;
+        } finally {
+            generationLock.unlock();
+        }
+    }
+
+    /**
+     * Drops the steps that fall outside the retention window, so that they can be garbage collected.
+     */
+    private void evict() {
+        int limit = sequence.size()-retention;
+        while (firstRetainedStep<limit) {
+            int step = firstRetainedStep;
+            firstRetainedStep = step+1;
+            sequence.set(step, null);
+        }
     }
 
     /**
      * Returns the sample of the distribution that it is reached in one step
-     * from the last distribution in this sequence.
+     * from the last distribution in this sequence. Each sample is advanced with its own
+     * random stream, derived from the seed of this sequence, the generated step and the index of the sample.
      *
      * @return the sample of the distribution that it is reached in one step
      * from the last distribution in this sequence.
      */
     protected SampleSet<SystemState> generateNextStep() {
-        return lastGenerated.apply(s -> s.sampleNext(rg));
+        return sampleNext(lastGenerated, streamSeed(STEP_STREAMS, getLastGeneratedStep()+1));
+    }
+
+    /**
+     * Returns the sample set obtained by advancing each state of the given one by one step. States are split
+     * in batches that are advanced in parallel, and each run of consecutive states of a batch sharing the same
+     * {@link BatchSystem} is advanced with a single call. States that do not provide a batch system are advanced
+     * via {@link SystemState#sampleNext(RandomGenerator)}. The state with index <code>i</code> is advanced with the
+     * random stream with index <code>i</code> derived from the given seed, which is created by the task advancing
+     * the batch of the state.
+     *
+     * @param current a sample set.
+     * @param streamSeed seed from which the random streams used to advance the states are derived.
+     * @return the sample set obtained by advancing each state of <code>current</code> by one step.
+     */
+    private static SampleSet<SystemState> sampleNext(SampleSet<SystemState> current, long streamSeed) {
+        SystemState[] states = current.stream().toArray(SystemState[]::new);
+        int size = states.length;
+        RandomGenerator[] streams = new RandomGenerator[size];
+        int batches = (size + BATCH_SIZE - 1) / BATCH_SIZE;
+        IntStream.range(0, batches).parallel().forEach(b -> {
+            int last = Math.min(size, (b + 1) * BATCH_SIZE);
+            int from = b * BATCH_SIZE;
+            for (int i = from; i < last; i++) {
+                streams[i] = DefaultRandomGenerator.derive(streamSeed, i);
+            }
+            while (from < last) {
+                BatchSystem batchSystem = states[from].getBatchSystem().orElse(BatchSystem.SAMPLE_NEXT);
+                int to = from + 1;
+                while ((to < last) && (states[to].getBatchSystem().orElse(BatchSystem.SAMPLE_NEXT) == batchSystem)) {
+                    to++;
+                }
+                batchSystem.sampleNext(streams, states, from, to);
+                from = to;
+            }
+        });
+        return new SampleSet<>(new ArrayList<>(Arrays.asList(states)));
     }
 
     public SampleSet<SystemState> generateNextStepCond(DataStateBooleanExpression condition) {
-        return lastGenerated.apply(s -> s.sampleNextCond(rg,condition));
+        long streamSeed = streamSeed(STEP_STREAMS, getLastGeneratedStep()+1);
+        RandomGenerator[] streams = IntStream.range(0, lastGenerated.size()).mapToObj(i -> DefaultRandomGenerator.derive(streamSeed, i)).toArray(RandomGenerator[]::new);
+        return lastGenerated.apply(streams, (r, s) -> s.sampleNextCond(r, condition));
     }
 
     /**
@@ -238,6 +706,167 @@ public class EvolutionSequence {
         return get(t).evalPenaltyFunction(f);
     }
 
+    /**
+     * Registers the given penalty function, so that, when distances are approximated via sketches, the sketch of
+     * its evaluations is built as soon as each step is generated, before the step is made available. Registered
+     * penalties are shared with the perturbations of this sequence.
+     *
+     * @param f a penalty function.
+     * @see SampleSet#setApproximationError(double)
+     */
+    public void registerPenalty(DataStateExpression f) {
+        if (!sketchedPenalties.contains(f)) {
+            sketchedPenalties.add(f);
+        }
+    }
+
+    /**
+     * Sets whether the steps generated from now on are stored as {@link ColumnarSampleSet}s.
+     * The setting is inherited by the perturbations of this sequence.
+     *
+     * @param columnar <code>true</code> if generated steps must be stored by columns.
+     */
+    public void setColumnar(boolean columnar) {
+        this.columnar = columnar;
+    }
+
+    /**
+     * Sets whether the steps of this sequence are generated trajectory by trajectory. In this mode, each parallel
+     * task simulates a chunk of samples up to the requested step, without waiting for the other samples at each step,
+     * and idle workers steal the remaining chunks. This is convenient when the cost of a step varies among
+     * samples, as for {@link TimedSystem}s, and many steps are generated at once. When a retention window is set,
+     * at most as many steps as the window are simulated at once. Generated samplings differ from the ones obtained
+     * step by step, since each sample uses a single random stream for all the simulated steps. The setting is inherited
+     * by the perturbations of this sequence.
+     *
+     * @param trajectoryMajor <code>true</code> if steps must be generated trajectory by trajectory.
+     */
+    public void setTrajectoryMajor(boolean trajectoryMajor) {
+        this.trajectoryMajor = trajectoryMajor;
+    }
+
+    /**
+     * Sets whether the data states of the samples generated from now on are stored as {@link ChunkedDataState}s.
+     * Chunked data states share, copy-on-write, the chunks of values that are not updated, hence in models with many
+     * variables where each step updates only few of them, the successive states of a trajectory and the replicas
+     * of a perturbed step share most of their storage. The setting has no effect on the steps stored by columns,
+     * and it is inherited by the perturbations of this sequence.
+     *
+     * @param chunked <code>true</code> if the data states of the generated samples must be stored in chunks.
+     */
+    public void setChunked(boolean chunked) {
+        this.chunked = chunked;
+    }
+
+    /**
+     * Returns <code>true</code> if the data states of the samples generated by this sequence are stored in chunks.
+     *
+     * @return <code>true</code> if the data states of the generated samples are stored as {@link ChunkedDataState}s.
+     */
+    public boolean isChunked() {
+        return chunked;
+    }
+
+    /**
+     * Returns the sample set obtained from the given one by storing the data state of each sample as a
+     * {@link ChunkedDataState}. The given sample set is returned when all its data states are already chunked.
+     *
+     * @param sampling a sample set.
+     * @return the sample set whose samples are the ones of <code>sampling</code> with chunked data states.
+     */
+    protected static SampleSet<SystemState> chunk(SampleSet<SystemState> sampling) {
+        if (sampling.stream().allMatch(s -> s.getDataState() instanceof ChunkedDataState)) {
+            return sampling;
+        }
+        return new SampleSet<>(sampling.stream().map(s -> (s.getDataState() instanceof ChunkedDataState ? s : s.setDataState(ChunkedDataState.of(s.getDataState())))).toList());
+    }
+
+    /**
+     * Returns <code>true</code> if the steps of this sequence are generated trajectory by trajectory.
+     *
+     * @return <code>true</code> if the steps of this sequence are generated trajectory by trajectory.
+     */
+    public boolean isTrajectoryMajor() {
+        return trajectoryMajor;
+    }
+
+    /**
+     * Returns <code>true</code> if the steps generated by this sequence are stored as {@link ColumnarSampleSet}s.
+     *
+     * @return <code>true</code> if the steps generated by this sequence are stored by columns.
+     */
+    public boolean isColumnar() {
+        return columnar;
+    }
+
+    /**
+     * Sets the number of most recent steps retained by this sequence. Older steps are evicted while
+     * the sequence is generated and any attempt to access them raises an {@link IllegalStateException},
+     * unless the sequence has been loaded from an {@link EvolutionSequenceStore} containing them.
+     * Evolution sequences retain all their steps by default. Steps already evicted are not restored
+     * when the window is enlarged. The window must also cover the steps generated in advance, namely it must be
+     * at least the lookahead of this sequence plus one. The setting is inherited by the perturbations of this sequence.
+     *
+     * @param window number of retained steps.
+     * @throws IllegalArgumentException if <code>window&lt;1</code> or if <code>window</code> is not greater than
+     * the lookahead of this sequence.
+     */
+    public void setRetention(int window) {
+        if (window<1) {
+            throw new IllegalArgumentException("The retention window must be positive!");
+        }
+        generationLock.lock();
+        try {
+            if (window<=lookahead) {
+                throw new IllegalArgumentException("The retention window must be greater than the lookahead!");
+            }
+            this.retention = window;
+            evict();
+        } finally {
+            generationLock.unlock();
+        }
+    }
+
+    /**
+     * Sets the retention window of this sequence to the number of steps needed to evaluate
+     * the given formula at the most recent step.
+     *
+     * @param formula a formula.
+     * @throws IllegalArgumentException if the formula has no finite time horizon.
+     */
+    public void setRetention(UDisTLFormula formula) {
+        setRetention(formula.getTimeHorizon().orElseThrow(() -> new IllegalArgumentException("The formula has no finite time horizon!"))+1);
+    }
+
+    /**
+     * Sets the retention window of this sequence to the number of steps needed to evaluate
+     * the given distance expression at the most recent step.
+     *
+     * @param expression a distance expression.
+     * @throws IllegalArgumentException if the expression has no finite time horizon.
+     */
+    public void setRetention(DistanceExpression expression) {
+        setRetention(expression.getTimeHorizon().orElseThrow(() -> new IllegalArgumentException("The distance expression has no finite time horizon!"))+1);
+    }
+
+    /**
+     * Returns the number of most recent steps retained by this sequence.
+     *
+     * @return the number of most recent steps retained by this sequence.
+     */
+    public int getRetention() {
+        return retention;
+    }
+
+    /**
+     * Returns the index of the first step of this sequence that has not been evicted.
+     *
+     * @return the index of the first step of this sequence that has not been evicted.
+     */
+    public int getFirstRetainedStep() {
+        return firstRetainedStep;
+    }
+
     /**
      * Returns the random generator used to sample steps of this evolution sequence.
      *
@@ -250,7 +879,9 @@ public class EvolutionSequence {
 
     /**
      * Returns the evolution sequence obtained from this evolution sequence by applying the given
-     * perturbation at the given step and by considering the given scale of samplings.
+     * perturbation at the given step and by considering the given scale of samplings. The returned sequence
+     * uses a random stream that this sequence reserves to the perturbations at <code>perturbedStep</code>, hence
+     * its samplings do not depend on the order in which perturbed sequences are created.
      *
      * @param perturbation perturbation applied to this sequence.
      * @param perturbedStep perturbed step.
@@ -262,7 +893,92 @@ public class EvolutionSequence {
         if (perturbedStep<0) {
             throw new IllegalArgumentException();
         }
-        return new PerturbedEvolutionSequence(this.monitor, this.rg, this.select(perturbedStep-1), this.get(perturbedStep), perturbation, scale);
+        return new PerturbedEvolutionSequence(this, branch(PERTURBATION_BRANCH, perturbedStep), this.prefix(perturbedStep), this.get(perturbedStep), perturbation, scale);
+    }
+
+    /**
+     * Returns the random stream reserved to the branch of this sequence of the given kind and with the given index.
+     * Streams are derived from the seed of this sequence, hence they do not depend on the order in which branches
+     * are created, and the same stream is returned for the same kind and index. Creating a branch does not affect
+     * the samplings of this sequence.
+     *
+     * @param kind kind of the branch.
+     * @param index index of the branch among the ones of the same kind.
+     * @return the random stream reserved to the given branch of this sequence.
+     */
+    private RandomGenerator branch(int kind, long index) {
+        return DefaultRandomGenerator.derive(seed, BRANCH_KINDS*index+kind);
+    }
+
+    /**
+     * Returns the seed from which the random streams of the given kind, used to advance the samples of this sequence
+     * from the given step, are derived.
+     *
+     * @param kind kind of the streams.
+     * @param step the first step generated with the streams.
+     * @return the seed from which the streams of the given kind used to generate <code>step</code> are derived.
+     */
+    private long streamSeed(int kind, int step) {
+        return DefaultRandomGenerator.deriveSeed(seed, ((long) BRANCH_KINDS)*step+kind);
+    }
+
+    /**
+     * Returns <code>true</code> if new samples can be drawn from the initial distribution of this sequence, namely
+     * if the sequence has been created from a generator of initial states or it is the concatenation of such a
+     * sequence with another one.
+     *
+     * @return <code>true</code> if new samples can be drawn from the initial distribution of this sequence.
+     */
+    public boolean isExtensible() {
+        return generator != null;
+    }
+
+    /**
+     * Returns a new evolution sequence whose initial samples are drawn from the initial distribution of this
+     * sequence. The created sequence is independent of this one, and uses a random stream that this sequence
+     * reserves to the samples of the given size. Hence, the samples drawn do not depend on the order in which
+     * sequences are sampled, and the same samples are drawn when the same size is requested again.
+     *
+     * @param size number of samplings at each time step.
+     * @return a new evolution sequence whose initial samples are drawn from the initial distribution of this sequence.
+     * @throws IllegalStateException if the initial distribution of this sequence is not available.
+     */
+    public EvolutionSequence sample(int size) {
+        if (generator == null) {
+            throw new IllegalStateException("The initial distribution of the sequence is not available!");
+        }
+        EvolutionSequence result = new EvolutionSequence(monitor, branch(SAMPLE_BRANCH, size), generator, size);
+        result.columnar = this.columnar;
+        result.chunked = this.chunked;
+        result.sketchedPenalties = this.sketchedPenalties;
+        return result;
+    }
+
+    /**
+     * Returns the evolution sequence whose sample set at each step contains the samples of this sequence followed
+     * by the ones of the given sequence. Steps are concatenated when they are requested, hence the samples of the
+     * two sequences are not generated again. The returned sequence is extensible when this sequence is. Steps
+     * evicted from either sequence are evicted from the returned one too, and they are not reloaded from the store
+     * of this sequence, which contains the samples of this sequence only.
+     *
+     * @param other an evolution sequence.
+     * @return the evolution sequence whose sample sets are the concatenation of the ones of this sequence and of
+     * <code>other</code>.
+     */
+    public EvolutionSequence concat(EvolutionSequence other) {
+        int first = Math.max(this.firstRetainedStep, other.firstRetainedStep);
+        List<SampleSet<SystemState>> steps = new ArrayList<>(first+1);
+        for (int i = 0; i < first; i++) {
+            steps.add(null);
+        }
+        steps.add(this.get(first).concat(other.get(first)));
+        EvolutionSequence result = new ConcatenatedEvolutionSequence(this, other, branch(CONCATENATION_BRANCH, other.seed), steps);
+        result.generator = this.generator;
+        result.firstRetainedStep = first;
+        result.store = null;
+        result.restore = null;
+        result.storedSteps = 0;
+        return result;
     }
 
     /**
@@ -0,0 +1,288 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import it.unicam.quasylab.jspear.ds.DataRange;
+import it.unicam.quasylab.jspear.ds.DataStateSchema;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.MappedDataState;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A binary file containing the steps of an evolution sequence. The file starts with a header
+ * containing the number of samples in each step, the number of variables and their ranges, and the
+ * number of stored steps. Steps follow the header one after the other, and each of them has the same size:
+ * the values of each variable for all the samples are stored contiguously, followed by the
+ * step and time variables of the data states. Steps are appended while they are generated and are
+ * read back by mapping them in memory, so that no value is copied when a step is reloaded.
+ */
+public class EvolutionSequenceStore implements Closeable {
+
+    private static final int MAGIC = 0x5354524B;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int STEPS_OFFSET = 16;
+    private static final int TIME_VARIABLES = 5;
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final FileChannel channel;
+    private final int size;
+    private final DataRange[] dataRanges;
+    private final DataStateSchema schema;
+    private final long dataOffset;
+    private final long stepBytes;
+    private volatile int steps;
+
+    private EvolutionSequenceStore(FileChannel channel, int size, DataRange[] dataRanges, int steps) {
+        this.channel = channel;
+        this.size = size;
+        this.dataRanges = dataRanges;
+        this.schema = DataStateSchema.of(dataRanges);
+        this.dataOffset = HEADER_SIZE + 16L * dataRanges.length;
+        this.stepBytes = 8L * (dataRanges.length + TIME_VARIABLES) * size;
+        this.steps = steps;
+        if (this.stepBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Steps of the evolution sequence are too large to be stored!");
+        }
+    }
+
+    /**
+     * Creates a new store in the given file for sequences whose steps have the same number of samples
+     * and the same data ranges of the given sample set. Existing content of the file is discarded.
+     *
+     * @param file the file where steps are stored.
+     * @param sampleSet a sample set.
+     * @return a new empty store.
+     * @throws IOException if an I/O error occurs.
+     * @throws IllegalArgumentException if <code>sampleSet</code> is empty.
+     */
+    public static EvolutionSequenceStore create(Path file, SampleSet<? extends SystemState> sampleSet) throws IOException {
+        if (sampleSet.size() == 0) {
+            throw new IllegalArgumentException("Empty sample sets cannot be stored!");
+        }
+        DataState state = sampleSet.stream().findFirst().orElseThrow().getDataState();
+        DataRange[] dataRanges = new DataRange[state.size()];
+        for (int i = 0; i < dataRanges.length; i++) {
+            dataRanges[i] = state.getDataRange(i);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 16 * dataRanges.length).order(ORDER);
+        header.putInt(MAGIC).putInt(VERSION).putInt(sampleSet.size()).putInt(dataRanges.length).putInt(0).putInt(0);
+        for (DataRange range : dataRanges) {
+            header.putDouble(range.minValue()).putDouble(range.maxValue());
+        }
+        write(channel, header.flip(), 0);
+        return new EvolutionSequenceStore(channel, sampleSet.size(), dataRanges, 0);
+    }
+
+    /**
+     * Opens the store contained in the given file. Further steps can be appended to the store.
+     *
+     * @param file a file created by {@link #create(Path, SampleSet)}.
+     * @return the store contained in the given file.
+     * @throws IOException if an I/O error occurs or if the file does not contain an evolution sequence.
+     */
+    public static EvolutionSequenceStore open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = read(channel, 0, HEADER_SIZE);
+            if ((header.getInt() != MAGIC) || (header.getInt() != VERSION)) {
+                throw new IOException(file + " does not contain an evolution sequence");
+            }
+            int size = header.getInt();
+            int variables = header.getInt();
+            int steps = header.getInt();
+            ByteBuffer ranges = read(channel, HEADER_SIZE, 16 * variables);
+            DataRange[] dataRanges = new DataRange[variables];
+            for (int i = 0; i < variables; i++) {
+                dataRanges[i] = new DataRange(ranges.getDouble(), ranges.getDouble());
+            }
+            EvolutionSequenceStore store = new EvolutionSequenceStore(channel, size, dataRanges, steps);
+            if (channel.size() < store.offsetOf(steps)) {
+                throw new IOException(file + " is truncated");
+            }
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ORDER);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private long offsetOf(int step) {
+        return dataOffset + step * stepBytes;
+    }
+
+    /**
+     * Returns the number of steps in this store.
+     *
+     * @return the number of steps in this store.
+     */
+    public int getNumberOfSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns the number of samples in each step of this store.
+     *
+     * @return the number of samples in each step of this store.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of variables of the data states in this store.
+     *
+     * @return the number of variables of the data states in this store.
+     */
+    public int getNumberOfVariables() {
+        return dataRanges.length;
+    }
+
+    /**
+     * Appends the given sample set as the last step of this store.
+     *
+     * @param sampleSet a sample set.
+     * @throws IOException if an I/O error occurs.
+     * @throws IllegalArgumentException if the size of <code>sampleSet</code> or the size of its data states
+     * are not the ones of this store.
+     */
+    public synchronized void append(SampleSet<? extends SystemState> sampleSet) throws IOException {
+        if (sampleSet.size() != size) {
+            throw new IllegalArgumentException("Incompatible size of data sets!");
+        }
+        int variables = dataRanges.length;
+        ByteBuffer buffer = ByteBuffer.allocate((int) stepBytes).order(ORDER);
+        DoubleBuffer values = buffer.asDoubleBuffer();
+        List<? extends SystemState> states = sampleSet.stream().toList();
+        for (int r = 0; r < size; r++) {
+            DataState ds = states.get(r).getDataState();
+            if (ds.size() != variables) {
+                throw new IllegalArgumentException("Incompatible size of data states!");
+            }
+            for (int v = 0; v < variables; v++) {
+                values.put(v * size + r, ds.get(v));
+            }
+            int base = variables * size;
+            values.put(base + r, ds.getStep());
+            values.put(base + size + r, ds.getTimeStep());
+            values.put(base + 2 * size + r, ds.getGranularity());
+            values.put(base + 3 * size + r, ds.getTimeReal());
+            values.put(base + 4 * size + r, ds.getTimeDelta());
+        }
+        write(channel, buffer, offsetOf(steps));
+        write(channel, ByteBuffer.allocate(4).order(ORDER).putInt(0, steps + 1), STEPS_OFFSET);
+        steps++;
+    }
+
+    /**
+     * Returns the sample set stored at the given step. Data states of the returned sample set are
+     * read-only views of the mapped file, and the system states are obtained from them by using the
+     * given function.
+     *
+     * @param step a step index.
+     * @param restore function used to build a system state from a data state.
+     * @return the sample set stored at the given step.
+     * @param <T> model domain.
+     * @throws IOException if an I/O error occurs.
+     * @throws IndexOutOfBoundsException if <code>step</code> is not in this store.
+     */
+    public <T extends SystemState> SampleSet<T> load(int step, Function<DataState, T> restore) throws IOException {
+        if ((step < 0) || (step >= steps)) {
+            throw new IndexOutOfBoundsException(step);
+        }
+        DoubleBuffer values = channel.map(FileChannel.MapMode.READ_ONLY, offsetOf(step), stepBytes).order(ORDER).asDoubleBuffer();
+        int base = dataRanges.length * size;
+        List<T> states = new ArrayList<>(size);
+        MappedDataState previous = null;
+        for (int r = 0; r < size; r++) {
+            MappedDataState ds = new MappedDataState(schema, values, size, r);
+            if ((previous != null) && sameTime(previous, values, base, r)) {
+                ds.setTime(previous);
+            } else {
+                ds.setStep((int) values.get(base + r));
+                ds.setTimeStep(values.get(base + size + r));
+                ds.setGranularity(values.get(base + 2 * size + r));
+                ds.setTimeReal(values.get(base + 3 * size + r));
+                ds.setTimeDelta(values.get(base + 4 * size + r));
+            }
+            states.add(restore.apply(ds));
+            previous = ds;
+        }
+        return new SampleSet<>(states);
+    }
+
+    /**
+     * Returns <code>true</code> if the time variables stored for the given row are the ones of the given data state.
+     * Time variables are usually the same for all the samples of a step, and in this case the loaded data
+     * states share them.
+     */
+    private boolean sameTime(DataState ds, DoubleBuffer values, int base, int row) {
+        return (ds.getStep() == (int) values.get(base + row))
+                && (ds.getTimeStep() == values.get(base + size + row))
+                && (ds.getGranularity() == values.get(base + 2 * size + row))
+                && (ds.getTimeReal() == values.get(base + 3 * size + row))
+                && (ds.getTimeDelta() == values.get(base + 4 * size + row));
+    }
+
+    /**
+     * Forces the stored steps to be written on the storage device and closes this store.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(true);
+            channel.close();
+        }
+    }
+
+}
@@ -27,6 +27,7 @@ import it.unicam.quasylab.jspear.controller.EffectStep;
 import it.unicam.quasylab.jspear.ds.DataState;
 import it.unicam.quasylab.jspear.ds.DataStateBooleanExpression;
 import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.ds.UpdateBuffer;
 import it.unicam.quasylab.jspear.feedback.Feedback;
 import org.apache.commons.math3.random.RandomGenerator;
 
@@ -66,11 +67,19 @@ public class FeedbackSystem implements SystemState {
     //}
 
     public SystemState sampleNext(RandomGenerator rg) {
-        EffectStep<Controller> step = controller.next(rg, state);
+        UpdateBuffer updates = UpdateBuffer.acquire();
+        Controller next;
+        DataState updated;
+        try {
+            next = controller.next(rg, state, updates);
+            updated = state.apply(updates);
+        } finally {
+            updates.release();
+        }
         int c_step = state.getStep();
-        DataState newState = environment.apply(rg, feedback.apply(rg,state.apply(step.effect())));
+        DataState newState = environment.applyInPlace(rg, feedback.applyInPlace(rg, updated));
         newState.setStep(c_step +1);
-        return new FeedbackSystem(step.next(), environment, newState, feedback.next());
+        return new FeedbackSystem(next, environment, newState, feedback.next());
     }
 
     @Override
@@ -0,0 +1,106 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A bounded cache of data computed from the evaluations of penalty functions over a sample set, like their
+ * sorted values or their sketches. Entries are kept in
+ * access order, and the least recently used one is evicted when the capacity is exceeded. The map is only
+ * allocated when the first entry is stored, and all the operations are synchronized, while evaluations are
+ * computed by the callers outside the lock.
+ */
+final class PenaltyCache<V> {
+
+    private LinkedHashMap<DataStateExpression, V> entries;
+
+    /**
+     * Returns the value cached for the given penalty function, or <code>null</code> if there is none.
+     *
+     * @param f a penalty function.
+     * @return the value cached for <code>f</code>.
+     */
+    synchronized V get(DataStateExpression f) {
+        return (entries == null ? null : entries.get(f));
+    }
+
+    /**
+     * Stores the given value for the given penalty function, unless a value is already cached for it, and
+     * evicts the least recently used entries exceeding the given capacity.
+     *
+     * @param f a penalty function.
+     * @param values the value computed from the evaluations of <code>f</code>.
+     * @param capacity maximal number of entries in the cache.
+     * @return the value cached for <code>f</code>.
+     */
+    synchronized V put(DataStateExpression f, V values, int capacity) {
+        if (capacity <= 0) {
+            return values;
+        }
+        if (entries == null) {
+            entries = new LinkedHashMap<>(16, 0.75f, true);
+        }
+        V cached = entries.putIfAbsent(f, values);
+        evict(capacity);
+        return (cached == null ? values : cached);
+    }
+
+    /**
+     * Stores the given value for the given penalty function, replacing the one already cached for it, if any, and
+     * evicts the least recently used entries exceeding the given capacity.
+     *
+     * @param f a penalty function.
+     * @param values the value computed from the evaluations of <code>f</code>.
+     * @param capacity maximal number of entries in the cache.
+     */
+    synchronized void replace(DataStateExpression f, V values, int capacity) {
+        if (capacity <= 0) {
+            return;
+        }
+        if (entries == null) {
+            entries = new LinkedHashMap<>(16, 0.75f, true);
+        }
+        entries.put(f, values);
+        evict(capacity);
+    }
+
+    private void evict(int capacity) {
+        Iterator<DataStateExpression> iterator = entries.keySet().iterator();
+        for (int i = entries.size(); i > capacity; i--) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Removes all the entries of this cache.
+     */
+    synchronized void clear() {
+        entries = null;
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+/**
+ * A monotone transformation of the values of a penalty function, which shifts a value by <code>delta</code>
+ * and then clamps it to the interval <code>[lowerBound, upperBound]</code>. Penalty shifts describe, at the level
+ * of penalties, deterministic transformations of data states like the ones that move a variable by a fixed offset
+ * or that saturate it. Since they preserve the order of values, distances from shifted distributions can be
+ * computed from an {@link EcdfIndex} without sampling the shifted distribution.
+ *
+ * @param delta the shift applied to values.
+ * @param lowerBound the least value after the shift.
+ * @param upperBound the largest value after the shift.
+ */
+public record PenaltyShift(double delta, double lowerBound, double upperBound) {
+
+    /**
+     * Creates a new penalty shift.
+     *
+     * @param delta the shift applied to values.
+     * @param lowerBound the least value after the shift.
+     * @param upperBound the largest value after the shift.
+     * @throws IllegalArgumentException if <code>lowerBound&gt;upperBound</code> or some parameter is NaN.
+     */
+    public PenaltyShift {
+        if (Double.isNaN(delta) || !(lowerBound <= upperBound)) {
+            throw new IllegalArgumentException("Illegal penalty shift!");
+        }
+    }
+
+    /**
+     * Returns the penalty shift that moves each value by <code>delta</code>.
+     *
+     * @param delta the shift applied to values.
+     * @return the penalty shift that moves each value by <code>delta</code>.
+     */
+    public static PenaltyShift shift(double delta) {
+        return new PenaltyShift(delta, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Returns the penalty shift that clamps each value to the interval <code>[lowerBound, upperBound]</code>.
+     *
+     * @param lowerBound the least value after the shift.
+     * @param upperBound the largest value after the shift.
+     * @return the penalty shift that clamps each value to the interval <code>[lowerBound, upperBound]</code>.
+     */
+    public static PenaltyShift clamp(double lowerBound, double upperBound) {
+        return new PenaltyShift(0.0, lowerBound, upperBound);
+    }
+
+    /**
+     * Returns the result of this shift on the given value.
+     *
+     * @param value a value.
+     * @return the result of this shift on <code>value</code>.
+     */
+    public double apply(double value) {
+        return Math.min(Math.max(value + delta, lowerBound), upperBound);
+    }
+
+}
@@ -30,6 +30,7 @@ import org.apache.commons.math3.random.RandomGenerator;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BiFunction;
 
 /**
  * Represents an evolution sequence under the effect of a given perturbation.
@@ -57,10 +58,41 @@ public class PerturbedEvolutionSequence extends EvolutionSequence {
         doAdd(doApply(perturbedStep.replica(scale)));
     }
 
+    /**
+     * Generates the perturbed version of a given evolution sequence, obtained by applying a given perturbation
+     * to a given data state. The created sequence uses the monitor and the settings of the given base sequence,
+     * and the given random generator.
+     *
+     * @param base the evolution sequence that is perturbed
+     * @param rg a random generator reserved by the base sequence to its branches
+     * @param sequence the steps of the base sequence preceding the perturbation
+     * @param perturbedStep initial data state to which the perturbation is applied
+     * @param p the perturbation
+     * @param scale multiplication factor for the number of samples to be used
+     *              in the simulation of the perturbed system.
+     */
+    protected PerturbedEvolutionSequence(EvolutionSequence base, RandomGenerator rg, List<SampleSet<SystemState>> sequence, SampleSet<SystemState> perturbedStep, Perturbation p, int scale) {
+        super(base, rg, sequence);
+        this.p = p;
+        doAdd(doApply((isChunked() && !isColumnar() ? chunk(perturbedStep) : perturbedStep).replica(scale)));
+    }
+
     @Override
     protected synchronized SampleSet<SystemState> generateNextStep() {
         this.p = this.p.step();
-        return doApply(super.generateNextStep());
+        return doApplyInPlace(super.generateNextStep());
+    }
+
+    @Override
+    protected synchronized BiFunction<RandomGenerator, SystemState, SystemState> nextStepFunction() {
+        this.p = this.p.step();
+        Optional<DataStateFunction> perturbationFunction = this.p.effect();
+        if (perturbationFunction.isPresent()) {
+            DataStateFunction function = perturbationFunction.get();
+            return (rg, s) -> s.sampleNext(rg).applyInPlace(rg, function);
+        } else {
+            return super.nextStepFunction();
+        }
     }
 
     @Override
@@ -84,4 +116,20 @@ public class PerturbedEvolutionSequence extends EvolutionSequence {
             return sample;
         }
     }
+
+    /**
+     * Applies this perturbation to a given sample set whose data states have just been sampled and are not
+     * shared, so that the effect of the perturbation is written directly into them.
+     *
+     * @param sample a given sample set whose data states can be modified
+     * @return the perturbation of <code>sample</code> via <code>this.p</code>.
+     */
+    protected synchronized SampleSet<SystemState> doApplyInPlace(SampleSet<SystemState> sample) {
+        Optional<DataStateFunction> perturbationFunction = this.p.effect();
+        if (perturbationFunction.isPresent()) {
+            return sample.apply(getRandomGenerator(), (rg, s) -> s.applyInPlace(rg, perturbationFunction.get()));
+        } else {
+            return sample;
+        }
+    }
 }
@@ -0,0 +1,226 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import it.unicam.quasylab.jspear.perturbation.Perturbation;
+
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A bounded cache of the evolution sequences obtained by perturbing other sequences. Sequences are identified by
+ * the base sequence, the perturbation, the perturbed step and the scale, where sequences and perturbations are
+ * compared by identity, so that each perturbed branch requested during a check is generated once.
+ * The cache keeps at most a given number of sequences, and evicts the least recently used ones when the states
+ * generated by the cached sequences after their perturbed steps exceed a given budget. Sequences are softly
+ * referenced, hence they can also be reclaimed by the garbage collector when memory is low.
+ * All the operations are thread safe, and sequences are created outside the lock. Each sequence is created once
+ * even when it is requested concurrently: the requests that find the sequence under creation wait for it.
+ */
+public final class PerturbedSequenceCache {
+
+    /**
+     * Default maximal number of cached sequences.
+     */
+    public static final int DEFAULT_CAPACITY = 32;
+
+    /**
+     * Default maximal number of states generated by the cached sequences.
+     */
+    public static final long DEFAULT_STATE_BUDGET = 1L << 22;
+
+    private final int capacity;
+    private final long stateBudget;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<Key, FutureTask<EvolutionSequence>> pending = new HashMap<>();
+
+    /**
+     * Creates an empty cache with the default capacity and budget of states.
+     */
+    public PerturbedSequenceCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_STATE_BUDGET);
+    }
+
+    /**
+     * Creates an empty cache with the given capacity and budget of states.
+     *
+     * @param capacity maximal number of cached sequences.
+     * @param stateBudget maximal number of states generated by the cached sequences after their perturbed steps.
+     * @throws IllegalArgumentException if <code>capacity</code> or <code>stateBudget</code> is not positive.
+     */
+    public PerturbedSequenceCache(int capacity, long stateBudget) {
+        if ((capacity <= 0)||(stateBudget <= 0)) {
+            throw new IllegalArgumentException("The capacity and the budget of a cache must be positive!");
+        }
+        this.capacity = capacity;
+        this.stateBudget = stateBudget;
+    }
+
+    /**
+     * Returns the evolution sequence obtained from <code>sequence</code> by applying the given perturbation at the
+     * given step and by considering the given scale of samplings. The sequence is created by
+     * {@link EvolutionSequence#apply(Perturbation, int, int)} only if it is neither cached nor under creation.
+     *
+     * @param sequence the base evolution sequence.
+     * @param perturbation perturbation applied to the base sequence.
+     * @param perturbedStep perturbed step.
+     * @param scale scale factor of perturbed sequence.
+     * @return the evolution sequence obtained from <code>sequence</code> by applying <code>perturbation</code> at
+     * step <code>perturbedStep</code>.
+     */
+    public EvolutionSequence apply(EvolutionSequence sequence, Perturbation perturbation, int perturbedStep, int scale) {
+        Key key = new Key(sequence, perturbation, perturbedStep, scale);
+        FutureTask<EvolutionSequence> task;
+        boolean owner = false;
+        synchronized (this) {
+            EvolutionSequence cached = lookup(key);
+            if (cached != null) {
+                return cached;
+            }
+            task = pending.get(key);
+            if (task == null) {
+                task = new FutureTask<>(() -> sequence.apply(perturbation, perturbedStep, scale));
+                pending.put(key, task);
+                owner = true;
+            }
+        }
+        if (!owner) {
+            return await(task);
+        }
+        task.run();
+        try {
+            EvolutionSequence perturbed = await(task);
+            long statesPerStep = (long) scale * sequence.get(perturbedStep).size();
+            synchronized (this) {
+                entries.put(key, new Entry(new SoftReference<>(perturbed), statesPerStep));
+                evict();
+            }
+            return perturbed;
+        } finally {
+            synchronized (this) {
+                pending.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of sequences in this cache.
+     *
+     * @return the number of sequences in this cache.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all the sequences from this cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static EvolutionSequence await(FutureTask<EvolutionSequence> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Evaluation interrupted!", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private synchronized EvolutionSequence lookup(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        EvolutionSequence sequence = entry.sequence().get();
+        if (sequence == null) {
+            entries.remove(key);
+        }
+        return sequence;
+    }
+
+    /**
+     * Removes the sequences reclaimed by the garbage collector and then the least recently used ones, until both
+     * the capacity and the budget of states are respected. The most recently used sequence is always kept.
+     */
+    private void evict() {
+        long states = 0;
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> entry = iterator.next();
+            long footprint = entry.getValue().footprint(entry.getKey().step());
+            if (footprint < 0) {
+                iterator.remove();
+            } else {
+                states += footprint;
+            }
+        }
+        iterator = entries.entrySet().iterator();
+        while ((entries.size() > 1)&&((entries.size() > capacity)||(states > stateBudget))) {
+            Map.Entry<Key, Entry> eldest = iterator.next();
+            states -= Math.max(0, eldest.getValue().footprint(eldest.getKey().step()));
+            iterator.remove();
+        }
+    }
+
+    private record Entry(SoftReference<EvolutionSequence> sequence, long statesPerStep) {
+
+        /**
+         * Returns the number of states generated by the sequence after the perturbed step, or -1 if the sequence
+         * has been reclaimed.
+         */
+        long footprint(int step) {
+            EvolutionSequence value = sequence.get();
+            return (value == null ? -1 : statesPerStep * Math.max(1, value.length() - step));
+        }
+    }
+
+    private record Key(EvolutionSequence sequence, Perturbation perturbation, int step, int scale) {
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Key other) && (sequence == other.sequence) && (perturbation == other.perturbation)
+                    && (step == other.step) && (scale == other.scale);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (31 * System.identityHashCode(sequence) + System.identityHashCode(perturbation)) + step) + scale;
+        }
+    }
+
+}
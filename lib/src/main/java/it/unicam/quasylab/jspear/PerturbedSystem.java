@@ -56,7 +56,8 @@ public class PerturbedSystem implements SystemState {
     @Override
     public SystemState sampleNext(RandomGenerator rg) {
         SystemState next = perturbedSystem.sampleNext(rg);
-        return perturbation.step().apply(rg, next);
+        Perturbation nextPerturbation = perturbation.step();
+        return new PerturbedSystem(next.setDataState(nextPerturbation.applyInPlace(rg, next.getDataState())), nextPerturbation);
     }
 
     @Override
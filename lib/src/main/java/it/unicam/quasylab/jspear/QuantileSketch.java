@@ -0,0 +1,298 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * A mergeable sketch of the distribution of a stream of real values, based on the KLL algorithm. Values are
+ * stored in a hierarchy of compactors, where each value in level <code>h</code> stands for <code>2^h</code>
+ * values of the stream. When the sketch exceeds its capacity, the lowest full level is sorted and half of its
+ * values, chosen at a random offset, are promoted to the next level. The rank of any value in the sketch differs
+ * from its rank in the stream by an error that is, with high probability, proportional to <code>1/k</code>,
+ * while the sketch stores <code>O(k log(n/k))</code> values. As long as the stream does not exceed the capacity,
+ * the sketch is exact.
+ * <p>
+ * Compaction offsets are sampled with a generator having a fixed seed, so that sketches built from the same
+ * streams, merged in the same order, are the same.
+ */
+public final class QuantileSketch {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private static final double CAPACITY_RATIO = 2.0 / 3.0;
+
+    private static final long SEED = 0x5EED5EEDL;
+
+    private final int k;
+    private final SplittableRandom random;
+    private double[][] levels;
+    private int[] sizes;
+    private int height;
+    private int size;
+    private long count;
+
+    /**
+     * Creates an empty sketch with the given accuracy parameter.
+     *
+     * @param k accuracy parameter, namely the capacity of the top level of the sketch.
+     * @throws IllegalArgumentException if <code>k &lt; 8</code>.
+     */
+    public QuantileSketch(int k) {
+        if (k < MIN_CAPACITY) {
+            throw new IllegalArgumentException("The accuracy parameter of a sketch must be at least "+MIN_CAPACITY+"!");
+        }
+        this.k = k;
+        this.random = new SplittableRandom(SEED);
+        this.levels = new double[1][k];
+        this.sizes = new int[1];
+        this.height = 1;
+    }
+
+    /**
+     * Returns the accuracy parameter that guarantees, with high probability, the given normalised rank error.
+     *
+     * @param epsilon the normalised rank error.
+     * @return the accuracy parameter that guarantees the normalised rank error <code>epsilon</code>.
+     * @throws IllegalArgumentException if <code>epsilon</code> is not in <code>(0,1)</code>.
+     */
+    public static int accuracyFor(double epsilon) {
+        if ((epsilon <= 0) || (epsilon >= 1)) {
+            throw new IllegalArgumentException("The error of a sketch must be in (0,1)!");
+        }
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(2.0 / epsilon));
+    }
+
+    /**
+     * Returns the accuracy parameter of this sketch.
+     *
+     * @return the accuracy parameter of this sketch.
+     */
+    public int getAccuracy() {
+        return k;
+    }
+
+    /**
+     * Returns the number of values that have been added to this sketch.
+     *
+     * @return the number of values that have been added to this sketch.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Returns the number of values stored in this sketch.
+     *
+     * @return the number of values stored in this sketch.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds the given value to this sketch.
+     *
+     * @param value a value.
+     */
+    public void add(double value) {
+        append(0, value);
+        count++;
+        if (size > capacity()) {
+            compress();
+        }
+    }
+
+    /**
+     * Adds to this sketch all the values summarised by the given sketch.
+     *
+     * @param other a sketch.
+     * @throws IllegalArgumentException if the two sketches have different accuracy parameters.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.k != this.k) {
+            throw new IllegalArgumentException("Only sketches with the same accuracy can be merged!");
+        }
+        for (int h = 0; h < other.height; h++) {
+            while (height <= h) {
+                grow();
+            }
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        count += other.count;
+        compress();
+    }
+
+    /**
+     * Returns the values stored in this sketch, in ascending order.
+     *
+     * @return the values stored in this sketch, in ascending order.
+     */
+    public double[] values() {
+        return sorted()[0];
+    }
+
+    /**
+     * Returns the weights of the values stored in this sketch, namely the number of values of the stream that
+     * each of them stands for. The weight in position <code>i</code> is the one of the value in position
+     * <code>i</code> of {@link #values()}.
+     *
+     * @return the weights of the values stored in this sketch.
+     */
+    public double[] weights() {
+        return sorted()[1];
+    }
+
+    /**
+     * Returns the approximation of the given quantile of the values added to this sketch.
+     *
+     * @param q a quantile level.
+     * @return the approximation of the quantile <code>q</code>.
+     * @throws IllegalArgumentException if <code>q</code> is not in <code>[0,1]</code>, or if this sketch is empty.
+     */
+    public double quantile(double q) {
+        if ((q < 0) || (q > 1) || (count == 0)) {
+            throw new IllegalArgumentException();
+        }
+        double[][] items = sorted();
+        double[] values = items[0];
+        double[] weights = items[1];
+        double target = q * count;
+        double cumulative = 0;
+        for (int i = 0; i < values.length; i++) {
+            cumulative += weights[i];
+            if (cumulative >= target) {
+                return values[i];
+            }
+        }
+        return values[values.length - 1];
+    }
+
+    /**
+     * Returns the approximation of the Wasserstein lifting of the given ground distance between the distributions
+     * summarised by the two given sketches.
+     *
+     * @param distance ground distance on reals.
+     * @param thisSketch a sketch.
+     * @param otherSketch a sketch.
+     * @return the Wasserstein lifting of <code>distance</code> between the values summarised by the two sketches.
+     */
+    public static double distance(DoubleBinaryOperator distance, QuantileSketch thisSketch, QuantileSketch otherSketch) {
+        double[][] thisItems = thisSketch.sorted();
+        double[][] otherItems = otherSketch.sorted();
+        return DistanceKernels.merge(distance, thisItems[0], thisItems[1], otherItems[0], otherItems[1]);
+    }
+
+    /**
+     * Returns the values stored in this sketch in ascending order, together with their weights. Each level is
+     * sorted, and the sorted levels are then merged.
+     */
+    private double[][] sorted() {
+        double[] values = new double[0];
+        double[] weights = new double[0];
+        for (int h = 0; h < height; h++) {
+            double[] level = Arrays.copyOf(levels[h], sizes[h]);
+            Arrays.sort(level);
+            double[] mergedValues = new double[values.length + level.length];
+            double[] mergedWeights = new double[mergedValues.length];
+            double weight = (double) (1L << h);
+            int i = 0;
+            int j = 0;
+            for (int m = 0; m < mergedValues.length; m++) {
+                if ((j == level.length) || ((i < values.length) && (values[i] <= level[j]))) {
+                    mergedValues[m] = values[i];
+                    mergedWeights[m] = weights[i++];
+                } else {
+                    mergedValues[m] = level[j++];
+                    mergedWeights[m] = weight;
+                }
+            }
+            values = mergedValues;
+            weights = mergedWeights;
+        }
+        return new double[][] { values, weights };
+    }
+
+    private int capacity(int level) {
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, height - 1 - level)));
+    }
+
+    private int capacity() {
+        int total = 0;
+        for (int h = 0; h < height; h++) {
+            total += capacity(h);
+        }
+        return total;
+    }
+
+    private void append(int level, double value) {
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], Math.max(MIN_CAPACITY, 2 * levels[level].length));
+        }
+        levels[level][sizes[level]++] = value;
+        size++;
+    }
+
+    private void grow() {
+        levels = Arrays.copyOf(levels, height + 1);
+        sizes = Arrays.copyOf(sizes, height + 1);
+        levels[height] = new double[MIN_CAPACITY];
+        height++;
+    }
+
+    private void compress() {
+        while (size > capacity()) {
+            for (int h = 0; h < height; h++) {
+                if (sizes[h] >= capacity(h)) {
+                    compact(h);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts the given level and promotes half of its values to the next one. When the level contains an odd number
+     * of values, its smallest value is kept.
+     */
+    private void compact(int level) {
+        if (level + 1 == height) {
+            grow();
+        }
+        double[] values = levels[level];
+        int n = sizes[level];
+        Arrays.sort(values, 0, n);
+        int keep = n % 2;
+        int offset = (random.nextBoolean() ? 1 : 0);
+        for (int i = keep + offset; i < n; i += 2) {
+            append(level + 1, values[i]);
+        }
+        sizes[level] = keep;
+        size -= n - keep;
+    }
+
+}
@@ -24,11 +24,15 @@ package it.unicam.quasylab.jspear;
 
 import it.unicam.quasylab.jspear.ds.DataStateExpression;
 import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.ds.RelationOperator;
 import org.apache.commons.math3.random.RandomGenerator;
 import it.unicam.quasylab.jspear.penalty.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.function.*;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -39,8 +43,36 @@ import java.util.stream.Stream;
  */
 public class SampleSet<T extends SystemState> {
 
+    /**
+     * Number of states that are summarised by a single sketch when a sketch is built in parallel.
+     */
+    private static final int SKETCH_CHUNK_SIZE = 1 << 16;
+
+    private static volatile int penaltyCacheCapacity = 8;
+
+    private static volatile double approximationError = 0.0;
+
+    private static volatile boolean progressiveComparison = false;
+
+    /**
+     * Number of rounds in which samples are evaluated when a distance is compared progressively with a threshold.
+     */
+    private static final int PROGRESSIVE_ROUNDS = 16;
+
+    /**
+     * Order in which the rounds visit the residues modulo {@link #PROGRESSIVE_ROUNDS}, so that the evaluated samples
+     * are spread over the whole set.
+     */
+    private static final int[] PROGRESSIVE_ORDER = {0, 8, 4, 12, 2, 10, 6, 14, 1, 9, 5, 13, 3, 11, 7, 15};
+
     private final List<T> states;
 
+    private final PenaltyCache<double[]> penaltyCache = new PenaltyCache<>();
+
+    private final PenaltyCache<QuantileSketch> sketchCache = new PenaltyCache<>();
+
+    private final PenaltyCache<EcdfIndex> ecdfCache = new PenaltyCache<>();
+
     /**
      * Creates an empty sample set.
      */
@@ -77,6 +109,9 @@ public class SampleSet<T extends SystemState> {
      */
     public void add(T state) {
         states.add(state);
+        penaltyCache.clear();
+        sketchCache.clear();
+        ecdfCache.clear();
     }
 
     /**
@@ -88,16 +123,197 @@ public class SampleSet<T extends SystemState> {
         return states.size();
     }
 
+    /**
+     * Sets the maximal number of penalty functions whose sorted evaluations are cached by each sample set.
+     * When the capacity is exceeded, the least recently used evaluation is evicted. The default value is 8,
+     * and a capacity of 0 disables the cache.
+     *
+     * @param capacity maximal number of cached evaluations for each sample set.
+     * @throws IllegalArgumentException if <code>capacity&lt;0</code>.
+     */
+    public static void setPenaltyCacheCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity of the penalty cache must be non-negative!");
+        }
+        penaltyCacheCapacity = capacity;
+    }
+
+    /**
+     * Returns the maximal number of penalty functions whose sorted evaluations are cached by each sample set.
+     *
+     * @return the maximal number of cached evaluations for each sample set.
+     */
+    public static int getPenaltyCacheCapacity() {
+        return penaltyCacheCapacity;
+    }
+
+    /**
+     * Sets the normalised rank error of the quantile sketches used to approximate distances between sample sets.
+     * When the error is positive, the distances computed by {@link #distance(DataStateExpression, DoubleBinaryOperator, SampleSet)},
+     * by {@link #distanceLeq(DataStateExpression, SampleSet)}, by {@link #distanceGeq(DataStateExpression, SampleSet)}
+     * and by their variants based on penalties, are computed from a {@link QuantileSketch} of the evaluations of the
+     * penalty function over each sample set, so that evaluations are never sorted. The default value is 0, namely
+     * distances are computed exactly. Sample sets that fit in a sketch are compared exactly also in approximate mode.
+     *
+     * @param epsilon the normalised rank error of the sketches, or 0 to compute distances exactly.
+     * @throws IllegalArgumentException if <code>epsilon</code> is not in <code>[0,1)</code>.
+     */
+    public static void setApproximationError(double epsilon) {
+        if (epsilon != 0.0) {
+            QuantileSketch.accuracyFor(epsilon);
+        }
+        approximationError = epsilon;
+    }
+
+    /**
+     * Returns the normalised rank error of the quantile sketches used to approximate distances between sample sets,
+     * or 0 if distances are computed exactly.
+     *
+     * @return the normalised rank error of the quantile sketches used to approximate distances.
+     */
+    public static double getApproximationError() {
+        return approximationError;
+    }
+
+    /**
+     * Enables or disables the progressive comparison of distances with thresholds. When enabled,
+     * {@link #compareDistance(DataStateExpression, DoubleBinaryOperator, SampleSet, RelationOperator, double)} and its
+     * variants evaluate the penalty function on increasing fractions of the two sample sets, keeping bounds on the
+     * distance, and stop as soon as the comparison is decided. Bounds are only available for the ground distances used
+     * by {@link #distance(DataStateExpression, SampleSet)}, {@link #distanceLeq(DataStateExpression, SampleSet)} and
+     * {@link #distanceGeq(DataStateExpression, SampleSet)}, and they assume that the values of the penalty function are
+     * in <code>[0,1]</code> on all the samples. This assumption is only checked on the samples evaluated so far: distances
+     * are computed exactly when a value outside <code>[0,1]</code> is met, but a comparison may be decided by wrong
+     * bounds when such values occur among the samples that are not evaluated. Hence, the progressive comparison should
+     * only be enabled when all the penalty functions used in comparisons are normalised, and under this condition the
+     * outcome of a comparison does not depend on this setting. The default value is false.
+     *
+     * @param enabled true to compare distances with thresholds progressively.
+     */
+    public static void setProgressiveComparison(boolean enabled) {
+        progressiveComparison = enabled;
+    }
+
+    /**
+     * Returns true if distances are compared progressively with thresholds.
+     *
+     * @return true if distances are compared progressively with thresholds.
+     */
+    public static boolean isProgressiveComparison() {
+        return progressiveComparison;
+    }
+
+    /**
+     * Returns the sketch of the evaluations of the given penalty function over this sample set, with the accuracy
+     * corresponding to the current approximation error, or to the accuracy of a sketch with 1% error when distances
+     * are computed exactly. Sketches are cached like the sorted evaluations, and they are built in parallel without
+     * sorting the evaluations.
+     *
+     * @param f a penalty function.
+     * @return the sketch of the evaluations of <code>f</code> over this sample set.
+     */
+    public QuantileSketch getSketch(DataStateExpression f) {
+        double epsilon = approximationError;
+        int k = QuantileSketch.accuracyFor(epsilon > 0 ? epsilon : 0.01);
+        QuantileSketch sketch = sketchCache.get(f);
+        if ((sketch == null) || (sketch.getAccuracy() != k)) {
+            sketch = computeSketch(f, k);
+            QuantileSketch cached = sketchCache.put(f, sketch, penaltyCacheCapacity);
+            if (cached.getAccuracy() == k) {
+                sketch = cached;
+            } else {
+                sketchCache.replace(f, sketch, penaltyCacheCapacity);
+            }
+        }
+        return sketch;
+    }
+
+    private QuantileSketch computeSketch(DataStateExpression f, int k) {
+        List<T> elements = (states instanceof RandomAccess ? states : new ArrayList<>(states));
+        int size = elements.size();
+        int chunks = Math.max(1, (size + SKETCH_CHUNK_SIZE - 1) / SKETCH_CHUNK_SIZE);
+        QuantileSketch[] sketches = new QuantileSketch[chunks];
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            QuantileSketch sketch = new QuantileSketch(k);
+            int last = Math.min(size, (c + 1) * SKETCH_CHUNK_SIZE);
+            for (int i = c * SKETCH_CHUNK_SIZE; i < last; i++) {
+                sketch.add(f.eval(elements.get(i).getDataState()));
+            }
+            sketches[c] = sketch;
+        });
+        for (int c = 1; c < chunks; c++) {
+            sketches[0].merge(sketches[c]);
+        }
+        return sketches[0];
+    }
+
+    /**
+     * Returns the Wasserstein lifting of the given ground distance between the evaluations of the given penalty
+     * function over this sample set and over <code>other</code>, computed either exactly or from sketches according
+     * to the current approximation error.
+     */
+    private double wasserstein(DataStateExpression f, DoubleBinaryOperator distance, SampleSet<T> other) {
+        if (approximationError > 0) {
+            return QuantileSketch.distance(distance, this.getSketch(f), other.getSketch(f));
+        }
+        return computeDistance(distance, this.sortedPenalty(f), other.sortedPenalty(f));
+    }
+
     /**
      * Given a penalty function, described by means of an expression over data states,
      * returns a (sorted) array containing its evaluation on the data state
-     * of each element in the sample set.
+     * of each element in the sample set. Evaluations are cached, so that a penalty function
+     * is evaluated only once on each sample set, and the returned array is a copy of the cached one.
+     *
+     * @param f a penalty function.
+     * @return a sorted array containing all the evaluations of <code>f</code> over the
+     * data states associated to the system states in the sample set.
+     */
+    public double[] evalPenaltyFunction(DataStateExpression f) {
+        double[] values = sortedPenalty(f);
+        return Arrays.copyOf(values, values.length);
+    }
+
+    /**
+     * Returns the index of the evaluations of the given penalty function over this sample set. Indexes share the
+     * sorted evaluations of the penalty function and are cached like them.
+     *
+     * @param f a penalty function.
+     * @return the index of the evaluations of <code>f</code> over this sample set.
+     * @throws IllegalArgumentException if this sample set is empty.
+     */
+    public EcdfIndex getEcdfIndex(DataStateExpression f) {
+        EcdfIndex index = ecdfCache.get(f);
+        if (index == null) {
+            index = ecdfCache.put(f, new EcdfIndex(sortedPenalty(f)), penaltyCacheCapacity);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the cached sorted evaluations of the given penalty function over this sample set, computing
+     * them if needed. The returned array is shared and must not be modified.
+     *
+     * @param f a penalty function.
+     * @return the sorted evaluations of <code>f</code> over the data states in this sample set.
+     */
+    private double[] sortedPenalty(DataStateExpression f) {
+        double[] values = penaltyCache.get(f);
+        if (values == null) {
+            values = penaltyCache.put(f, computePenaltyFunction(f), penaltyCacheCapacity);
+        }
+        return values;
+    }
+
+    /**
+     * Evaluates the given penalty function on the data state of each element in this sample set and
+     * returns the sorted evaluations. This method is invoked when the evaluations are not cached.
      *
      * @param f a penalty function.
      * @return a sorted array containing all the evaluations of <code>f</code> over the
      * data states associated to the system states in the sample set.
      */
-    public synchronized double[] evalPenaltyFunction(DataStateExpression f) {
+    protected double[] computePenaltyFunction(DataStateExpression f) {
         return states.stream().map(SystemState::getDataState).mapToDouble(f).sorted().toArray();
     }
 
@@ -112,14 +328,11 @@ public class SampleSet<T extends SystemState> {
      * @return the Wasserstein lifting of <code>distance</code>,
      * computed on the values obtained by applying <code>f</code> to the data states in the samples,
      * between this sample set and <code>other</code>.
+     * The two sample sets can have arbitrary sizes: when the size of <code>other</code> is not a multiple of the size
+     * of this sample set, the distance is computed by merging the quantile functions of the two samples.
      */
-    public synchronized double distance(DataStateExpression f, DoubleBinaryOperator distance, SampleSet<T> other) {
-        if (other.size() % this.size() != 0) {
-            throw new IllegalArgumentException("Incompatible size of data sets!");
-        }
-        double[] thisData = this.evalPenaltyFunction(f);
-        double[] otherData = other.evalPenaltyFunction(f);
-        return computeDistance(distance, thisData, otherData);
+    public double distance(DataStateExpression f, DoubleBinaryOperator distance, SampleSet<T> other) {
+        return wasserstein(f, distance, other);
     }
 
     /**
@@ -132,13 +345,13 @@ public class SampleSet<T extends SystemState> {
      * computed on the values obtained by applying <code>f</code> to the data states in the samples,
      * between this sample set and <code>other</code>.
      */
-    public synchronized double distance(DataStateExpression f, SampleSet<T> other) {
-        return distance(f, (v1, v2) -> Math.abs(v2-v1), other);
+    public double distance(DataStateExpression f, SampleSet<T> other) {
+        return distance(f, DistanceKernels.ABSOLUTE, other);
     }
 
     /**
      * Utility method to evaluate the Wasserstein distance between two sampled distributions on reals,
-     * based on a given ground distance.
+     * based on a given ground distance. Built-in ground distances are evaluated by specialised kernels.
      *
      * @param distance ground distance on reals
      * @param thisData an array of real values
@@ -147,10 +360,7 @@ public class SampleSet<T extends SystemState> {
      * between the sampled distributions <code>thisData</code> and <code>otherData</code>.
      */
     private double computeDistance(DoubleBinaryOperator distance, double[] thisData, double[] otherData) {
-        int k = otherData.length / thisData.length;
-        return IntStream.range(0, thisData.length).parallel()
-                .mapToDouble(i -> IntStream.range(0, k).mapToDouble(j -> distance.applyAsDouble(thisData[i],otherData[i * k + j])).sum())
-                .sum() / otherData.length;
+        return DistanceKernels.wasserstein(distance, thisData, otherData);
     }
 
     /**
@@ -163,33 +373,25 @@ public class SampleSet<T extends SystemState> {
      * between the sampled distributions <code>thisData</code> and <code>otherData</code>.
      */
     private double computeDistance(double[] thisData, double[] otherData) {
-        return computeDistance((v1, v2) -> Math.abs(v2-v1), thisData, otherData);
+        return computeDistance(DistanceKernels.ABSOLUTE, thisData, otherData);
     }
 
     /**
      * Returns the asymmetric distance between <code>other</code> and this sample set computed according to
      * the function <code>f</code>.
-     * The cardinality of <code>other</code> must be a multiple of that of this sample set.
+     * The two sample sets can have arbitrary sizes.
      * @param f penalty function used to compute the distance.
      * @param other sample set to compare.
      * @return the distance between <code>other</code> and this sample set computed according to
      * the function <code>f</code>.
      */
-    public synchronized double distanceLeq(DataStateExpression f, SampleSet<T> other) {
-        return distance(f, (v1,v2) -> Math.max(0.0, v2-v1), other);
+    public double distanceLeq(DataStateExpression f, SampleSet<T> other) {
+        return distance(f, DistanceKernels.LEQ, other);
     }
 
-    public synchronized double distanceLeq(Penalty rho, SampleSet<T> other, int step) {
-        if (other.size() % this.size() != 0) {
-            throw new IllegalArgumentException("Incompatible size of data sets!");
-        }
+    public double distanceLeq(Penalty rho, SampleSet<T> other, int step) {
         DataStateExpression f = rho.effectUpTo(step).get(step);
-        double[] thisData = this.evalPenaltyFunction(f);
-        double[] otherData = other.evalPenaltyFunction(f);
-        int k = otherData.length / thisData.length;
-        return IntStream.range(0, thisData.length).parallel()
-                .mapToDouble(i -> IntStream.range(0, k).mapToDouble(j -> Math.max(0,otherData[i * k + j] - thisData[i])).sum())
-                .sum() / otherData.length;
+        return wasserstein(f, DistanceKernels.LEQ, other);
     }
 
     /**
@@ -201,33 +403,25 @@ public class SampleSet<T extends SystemState> {
      * @return the asymmetric Wasserstein distance between the sampled distributions <code>thisData</code> and <code>otherData</code>.
      */
     private double computeDistanceLeq(double[] thisData, double[] otherData) {
-        return computeDistance((v1, v2) -> Math.max(0.0,v2-v1), thisData, otherData);
+        return computeDistance(DistanceKernels.LEQ, thisData, otherData);
     }
 
     /**
      * Returns the asymmetric distance between this sample set and <code>other</code> computed according to
      * the function <code>f</code>.
-     * The cardinality of <code>other</code> must be a multiple of that of this sample set.
+     * The two sample sets can have arbitrary sizes.
      * @param f penalty function used to compute the distance.
      * @param other sample set to compare.
      * @return the distance between this sample set and <code>other</code> computed according to
      * the function <code>f</code>.
      */
-    public synchronized double distanceGeq(DataStateExpression f, SampleSet<T> other) {
-        return distance(f, (v1,v2) -> Math.max(0, v1-v2), other);
+    public double distanceGeq(DataStateExpression f, SampleSet<T> other) {
+        return distance(f, DistanceKernels.GEQ, other);
     }
 
-    public synchronized double distanceGeq(Penalty rho, SampleSet<T> other, int step) {
-        if (other.size() % this.size() != 0) {
-            throw new IllegalArgumentException("Incompatible size of data sets!");
-        }
+    public double distanceGeq(Penalty rho, SampleSet<T> other, int step) {
         DataStateExpression f = rho.effectUpTo(step).get(step);
-        double[] thisData = this.evalPenaltyFunction(f);
-        double[] otherData = other.evalPenaltyFunction(f);
-        int k = otherData.length / thisData.length;
-        return IntStream.range(0, thisData.length).parallel()
-                .mapToDouble(i -> IntStream.range(0, k).mapToDouble(j -> Math.max(0, thisData[i] - otherData[i * k + j])).sum())
-                .sum() / otherData.length;
+        return wasserstein(f, DistanceKernels.GEQ, other);
     }
 
     /**
@@ -239,7 +433,125 @@ public class SampleSet<T extends SystemState> {
      * @return the asymmetric Wasserstein distance between the sampled distributions <code>otherData</code> and <code>thisData</code>.
      */
     private double computeDistanceGeq(double[] thisData, double[] otherData) {
-        return computeDistance((v1, v2) -> Math.max(0.0,v1-v2), thisData, otherData);
+        return computeDistance(DistanceKernels.GEQ, thisData, otherData);
+    }
+
+    /**
+     * Compares with a threshold the Wasserstein lifting of a given ground distance on data states, computed according
+     * to the functions <code>f</code> and <code>distance</code>, between this sample set and <code>other</code>.
+     * When the progressive comparison is enabled, the comparison may be decided without evaluating <code>f</code>
+     * on all the samples.
+     *
+     * @param f penalty function used to compute the ground distance.
+     * @param distance ground distance on reals.
+     * @param other sample set to compare.
+     * @param relop relation operator used in the comparison.
+     * @param threshold the threshold.
+     * @return the outcome of the comparison between the distance and <code>threshold</code> according to <code>relop</code>.
+     * @see #setProgressiveComparison(boolean)
+     */
+    public ThresholdComparison compareDistance(DataStateExpression f, DoubleBinaryOperator distance, SampleSet<T> other, RelationOperator relop, double threshold) {
+        if (progressiveComparison && DistanceKernels.hasBounds(distance) && (approximationError == 0.0)
+                && ((penaltyCache.get(f) == null) || (other.penaltyCache.get(f) == null))) {
+            return progressiveComparison(f, distance, other, relop, threshold);
+        }
+        double value = wasserstein(f, distance, other);
+        return new ThresholdComparison(relop.eval(value, threshold), value, value, size() + other.size());
+    }
+
+    /**
+     * Compares with a threshold the distance between this sample set and <code>other</code> computed by
+     * {@link #distance(DataStateExpression, SampleSet)}.
+     *
+     * @param f penalty function used to compute the distance.
+     * @param other sample set to compare.
+     * @param relop relation operator used in the comparison.
+     * @param threshold the threshold.
+     * @return the outcome of the comparison between the distance and <code>threshold</code> according to <code>relop</code>.
+     */
+    public ThresholdComparison compareDistance(DataStateExpression f, SampleSet<T> other, RelationOperator relop, double threshold) {
+        return compareDistance(f, DistanceKernels.ABSOLUTE, other, relop, threshold);
+    }
+
+    /**
+     * Compares with a threshold the distance between this sample set and <code>other</code> computed by
+     * {@link #distanceLeq(DataStateExpression, SampleSet)}.
+     *
+     * @param f penalty function used to compute the distance.
+     * @param other sample set to compare.
+     * @param relop relation operator used in the comparison.
+     * @param threshold the threshold.
+     * @return the outcome of the comparison between the distance and <code>threshold</code> according to <code>relop</code>.
+     */
+    public ThresholdComparison compareDistanceLeq(DataStateExpression f, SampleSet<T> other, RelationOperator relop, double threshold) {
+        return compareDistance(f, DistanceKernels.LEQ, other, relop, threshold);
+    }
+
+    /**
+     * Compares with a threshold the distance between this sample set and <code>other</code> computed by
+     * {@link #distanceGeq(DataStateExpression, SampleSet)}.
+     *
+     * @param f penalty function used to compute the distance.
+     * @param other sample set to compare.
+     * @param relop relation operator used in the comparison.
+     * @param threshold the threshold.
+     * @return the outcome of the comparison between the distance and <code>threshold</code> according to <code>relop</code>.
+     */
+    public ThresholdComparison compareDistanceGeq(DataStateExpression f, SampleSet<T> other, RelationOperator relop, double threshold) {
+        return compareDistance(f, DistanceKernels.GEQ, other, relop, threshold);
+    }
+
+    /**
+     * Evaluates <code>f</code> on both sample sets in rounds, each one covering the samples whose index has a given
+     * residue modulo {@link #PROGRESSIVE_ROUNDS}. After each round the distance is bounded from the evaluations
+     * collected so far, and the comparison is decided as soon as the threshold falls outside the bounds. When all the
+     * samples are evaluated, the sorted evaluations are cached and the distance is computed exactly.
+     */
+    private ThresholdComparison progressiveComparison(DataStateExpression f, DoubleBinaryOperator distance, SampleSet<T> other, RelationOperator relop, double threshold) {
+        List<T> thisElements = (states instanceof RandomAccess ? states : new ArrayList<>(states));
+        List<T> otherElements = (other.states instanceof RandomAccess ? other.states : new ArrayList<>(other.states));
+        double[] thisData = new double[0];
+        double[] otherData = new double[0];
+        for (int round = 0; round < PROGRESSIVE_ROUNDS; round++) {
+            thisData = mergeSorted(thisData, evalResidue(f, thisElements, PROGRESSIVE_ORDER[round]));
+            otherData = mergeSorted(otherData, evalResidue(f, otherElements, PROGRESSIVE_ORDER[round]));
+            if (!isNormalised(thisData) || !isNormalised(otherData)) {
+                break;
+            }
+            if (round == PROGRESSIVE_ROUNDS - 1) {
+                this.penaltyCache.put(f, thisData, penaltyCacheCapacity);
+                other.penaltyCache.put(f, otherData, penaltyCacheCapacity);
+                break;
+            }
+            double[] bounds = DistanceKernels.bounds(distance, thisData, thisElements.size(), otherData, otherElements.size());
+            if ((threshold < bounds[0]) || (threshold > bounds[1])) {
+                return new ThresholdComparison(relop.eval(bounds[0], threshold), bounds[0], bounds[1], thisData.length + otherData.length);
+            }
+        }
+        double value = wasserstein(f, distance, other);
+        return new ThresholdComparison(relop.eval(value, threshold), value, value, size() + other.size());
+    }
+
+    private static <T extends SystemState> double[] evalResidue(DataStateExpression f, List<T> elements, int residue) {
+        int size = Math.max(0, (elements.size() - residue + PROGRESSIVE_ROUNDS - 1) / PROGRESSIVE_ROUNDS);
+        double[] result = new double[size];
+        IntStream.range(0, size).parallel().forEach(i -> result[i] = f.eval(elements.get(residue + i * PROGRESSIVE_ROUNDS).getDataState()));
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static double[] mergeSorted(double[] a, double[] b) {
+        double[] result = new double[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < result.length; k++) {
+            result[k] = ((j >= b.length) || ((i < a.length) && (a[i] <= b[j])) ? a[i++] : b[j++]);
+        }
+        return result;
+    }
+
+    private static boolean isNormalised(double[] sortedData) {
+        return (sortedData.length == 0) || ((sortedData[0] >= 0.0) && (sortedData[sortedData.length - 1] <= 1.0));
     }
 
     /**
@@ -255,33 +567,42 @@ public class SampleSet<T extends SystemState> {
      * @return the limits of the confidence interval of the evaluation of the distance between this sample set and <code>other</code> computed according to
      * the function <code>f</code>.
      */
-    public synchronized double[] bootstrapDistance(RandomGenerator rg, DataStateExpression f, ToDoubleBiFunction<double[], double[]> distanceFunction, SampleSet<T> other, int m, double z) {
-        if (other.size()%this.size()!=0) {
-            throw new IllegalArgumentException("Incompatible size of data sets!");
-        }
-        double[] W = new double[m];
-        double WSum = 0.0;
-        double[] thisData = this.evalPenaltyFunction(f);
-        double[] otherData = other.evalPenaltyFunction(f);
-        for (int i = 0; i<m; i++){
-            double[] thisBootstrapData = IntStream.range(0, thisData.length).mapToDouble(j -> thisData[rg.nextInt(thisData.length)]).sorted().toArray();
-            double[] otherBootstrapData = IntStream.range(0, otherData.length).mapToDouble(j -> otherData[rg.nextInt(otherData.length)]).sorted().toArray();
-            W[i] = distanceFunction.applyAsDouble(thisBootstrapData, otherBootstrapData);
-            WSum += W[i];
-        }
-        double BootMean = WSum/m;
-        double StandardError = Math.sqrt(IntStream.range(0,m).mapToDouble(j->Math.pow(W[j]-BootMean,2)).sum()/(m-1));
-        double[] CI = new double[2];
-        CI[0] = Math.max(0,BootMean - z*StandardError);
-        CI[1] = Math.min(BootMean + z*StandardError,1);
-        return CI;
+    public double[] bootstrapDistance(RandomGenerator rg, DataStateExpression f, ToDoubleBiFunction<double[], double[]> distanceFunction, SampleSet<T> other, int m, double z) {
+        return Bootstrap.normalInterval(Bootstrap.replicates(rg, this.sortedPenalty(f), other.sortedPenalty(f), distanceFunction, m), z);
+    }
+
+    /**
+     * Returns the percentile confidence interval, at level <code>1-alpha</code>, of the evaluation of the distance
+     * between this sample set and <code>other</code> computed according to the function <code>f</code>.
+     * The interval is given by the empirical <code>alpha/2</code> and <code>1-alpha/2</code> quantiles of
+     * <code>m</code> bootstrap replicates of the distance.
+     *
+     * @param rg a random generator
+     * @param f penalty function used to compute the distance.
+     * @param distanceFunction function used to compute the distance between sorted data sets.
+     * @param other sample set to compare.
+     * @param m number of applications of bootstrapping
+     * @param alpha the significance level, in <code>(0,1)</code>
+     * @return the limits of the percentile confidence interval of the evaluation of the distance between this sample set
+     * and <code>other</code> computed according to the function <code>f</code>.
+     */
+    public double[] bootstrapPercentileDistance(RandomGenerator rg, DataStateExpression f, ToDoubleBiFunction<double[], double[]> distanceFunction, SampleSet<T> other, int m, double alpha) {
+        return Bootstrap.percentileInterval(Bootstrap.replicates(rg, this.sortedPenalty(f), other.sortedPenalty(f), distanceFunction, m), alpha);
+    }
+
+    /**
+     * In case the method to compute the distance is not passed as parameter,
+     * method <code>computeDistance</code> is used as default.
+     */
+    public double[] bootstrapPercentileDistance(RandomGenerator rg, DataStateExpression f, SampleSet<T> other, int m, double alpha) {
+        return bootstrapPercentileDistance(rg, f, this::computeDistance, other, m, alpha);
     }
 
     /**
      * In case the random generator is not passed as parameter,
      * the default one is used.
      */
-    public synchronized double[] bootstrapDistance(DataStateExpression f, ToDoubleBiFunction<double[], double[]> distanceFunction, SampleSet<T> other, int m, double z) {
+    public double[] bootstrapDistance(DataStateExpression f, ToDoubleBiFunction<double[], double[]> distanceFunction, SampleSet<T> other, int m, double z) {
         return bootstrapDistance(new DefaultRandomGenerator(), f, distanceFunction, other, m, z);
     }
 
@@ -289,7 +610,7 @@ public class SampleSet<T extends SystemState> {
      * In case the method to compute the distance is not passed as parameter,
      * method <code>computeDistance</code> is used as default.
      */
-    public synchronized double[] bootstrapDistance(RandomGenerator rg, DataStateExpression f, SampleSet<T> other, int m, double z) {
+    public double[] bootstrapDistance(RandomGenerator rg, DataStateExpression f, SampleSet<T> other, int m, double z) {
         return bootstrapDistance(rg, f, this::computeDistance, other, m , z);
     }
 
@@ -297,7 +618,7 @@ public class SampleSet<T extends SystemState> {
      * In case neither the random generator nor the distance method are passed as parameters,
      * the default ones are used.
      */
-    public synchronized double[] bootstrapDistance(DataStateExpression f, SampleSet<T> other, int m, double z) {
+    public double[] bootstrapDistance(DataStateExpression f, SampleSet<T> other, int m, double z) {
         return bootstrapDistance(new DefaultRandomGenerator(), f, this::computeDistance, other, m, z);
     }
 
@@ -313,7 +634,7 @@ public class SampleSet<T extends SystemState> {
      * @return the limits of the confidence interval of the evaluation of the distance between this sample set and <code>other</code> computed according to
      * the function <code>f</code>.
      */
-    public synchronized double[] bootstrapDistanceLeq(RandomGenerator rg, DataStateExpression f, SampleSet<T> other, int m, double z) {
+    public double[] bootstrapDistanceLeq(RandomGenerator rg, DataStateExpression f, SampleSet<T> other, int m, double z) {
         return bootstrapDistance(rg, f, this::computeDistanceLeq, other, m , z);
     }
 
@@ -321,7 +642,7 @@ public class SampleSet<T extends SystemState> {
      * In case the random generator is not passed as parameter,
      * the default one is used.
      */
-    public synchronized double[] bootstrapDistanceLeq(DataStateExpression f, SampleSet<T> other, int m, double z) {
+    public double[] bootstrapDistanceLeq(DataStateExpression f, SampleSet<T> other, int m, double z) {
         return bootstrapDistance(new DefaultRandomGenerator(), f, this::computeDistanceLeq, other, m, z);
     }
 
@@ -337,7 +658,7 @@ public class SampleSet<T extends SystemState> {
      * @return the limits of the confidence interval of the evaluation of the distance between this sample set and <code>other</code> computed according to
      * the function <code>f</code>.
      */
-    public synchronized double[] bootstrapDistanceGeq(RandomGenerator rg, DataStateExpression f, SampleSet<T> other, int m, double z) {
+    public double[] bootstrapDistanceGeq(RandomGenerator rg, DataStateExpression f, SampleSet<T> other, int m, double z) {
         return bootstrapDistance(rg, f, this::computeDistanceGeq, other, m , z);
     }
 
@@ -345,7 +666,7 @@ public class SampleSet<T extends SystemState> {
      * In case the random generator is not passed as parameter,
      * the default one is used.
      */
-    public synchronized double[] bootstrapDistanceGeq(DataStateExpression f, SampleSet<T> other, int m, double z) {
+    public double[] bootstrapDistanceGeq(DataStateExpression f, SampleSet<T> other, int m, double z) {
         return bootstrapDistance(new DefaultRandomGenerator(), f, this::computeDistanceGeq, other, m, z);
     }
 
@@ -369,13 +690,33 @@ public class SampleSet<T extends SystemState> {
 
     /**
      * Returns a new sample set obtained by applying a given function to all the elements of this sample set.
+     * Each element is sampled with its own random generator split from <code>rg</code>, hence the result
+     * only depends on the state of <code>rg</code> and not on the level of parallelism.
+     *
      * @param rg random generator used to sample random values.
      * @param function function used to generate a new element.
      * @return a new sample set obtained by applying <code>function</code> to all the elements of this sample set.
      */
     public SampleSet<T> apply(RandomGenerator rg, BiFunction<RandomGenerator, T, T> function) {
+        return apply(DefaultRandomGenerator.split(rg, size()), function);
+    }
+
+    /**
+     * Returns a new sample set obtained by applying a given function to all the elements of this sample set,
+     * where the element in position <code>i</code> is sampled with the random generator <code>streams[i]</code>.
+     *
+     * @param streams random generators used to sample random values, one for each element.
+     * @param function function used to generate a new element.
+     * @return a new sample set obtained by applying <code>function</code> to all the elements of this sample set.
+     * @throws IllegalArgumentException if <code>streams.length != size()</code>.
+     */
+    public SampleSet<T> apply(RandomGenerator[] streams, BiFunction<RandomGenerator, T, T> function) {
+        if (streams.length != size()) {
+            throw new IllegalArgumentException("Incompatible number of random streams!");
+        }
+        List<T> elements = (states instanceof RandomAccess ? states : new ArrayList<>(states));
         return new SampleSet<>(
-                this.stream().parallel().map(s -> function.apply(rg, s)).toList()
+                IntStream.range(0, elements.size()).parallel().mapToObj(i -> function.apply(streams[i], elements.get(i))).toList()
         );
     }
 
@@ -391,9 +732,19 @@ public class SampleSet<T extends SystemState> {
         );
     }
 
+    /**
+     * Returns a new sample set containing the elements of this sample set followed by the ones of the given one.
+     *
+     * @param other a sample set.
+     * @return a new sample set containing the elements of this sample set followed by the ones of <code>other</code>.
+     */
+    public SampleSet<T> concat(SampleSet<T> other) {
+        return new SampleSet<>(Stream.concat(this.stream(), other.stream()).toList());
+    }
+
     public SampleSet<T> applyDistribution(RandomGenerator rg, DataStateFunction function, boolean parallel){
         if(parallel){
-            return new SampleSet<>(this.stream().parallel().map(s -> (T) s.apply(rg, function)).toList());
+            return apply(rg, (r, s) -> (T) s.apply(r, function));
         } else {
             return new SampleSet<>(this.stream().map(s -> (T) s.apply(rg, function)).toList());
         }
@@ -404,6 +755,8 @@ public class SampleSet<T extends SystemState> {
     }
 
     public SampleSet<SystemState> applyDistribution(RandomGenerator rg, DataStateFunction function){
-        return new SampleSet<>(this.stream().parallel().map(s -> s.apply(rg, function)).toList());
+        RandomGenerator[] streams = DefaultRandomGenerator.split(rg, size());
+        List<T> elements = (states instanceof RandomAccess ? states : new ArrayList<>(states));
+        return new SampleSet<>(IntStream.range(0, elements.size()).parallel().mapToObj(i -> elements.get(i).apply(streams[i], function)).toList());
     }
 }
\ No newline at end of file
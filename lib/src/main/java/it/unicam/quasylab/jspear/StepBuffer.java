@@ -0,0 +1,124 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The steps of an evolution sequence. Steps are added by a single writer at a time, which must hold the lock of
+ * the owning sequence, while they can be read by any thread without locking: a step is published by writing it in
+ * the backing array before the number of steps, which is volatile, is incremented.
+ */
+final class StepBuffer {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private volatile Object[] steps;
+    private volatile int size;
+
+    /**
+     * Creates a buffer containing the given steps. Slots of evicted steps are <code>null</code>.
+     *
+     * @param initial initial steps.
+     */
+    StepBuffer(List<SampleSet<SystemState>> initial) {
+        Object[] array = new Object[Math.max(INITIAL_CAPACITY, initial.size())];
+        for (int i = 0; i < initial.size(); i++) {
+            array[i] = initial.get(i);
+        }
+        this.steps = array;
+        this.size = initial.size();
+    }
+
+    /**
+     * Returns the number of steps in this buffer.
+     *
+     * @return the number of steps in this buffer.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the step at the given index, or <code>null</code> if it has been evicted.
+     *
+     * @param i step index.
+     * @return the step at the given index.
+     * @throws IndexOutOfBoundsException if <code>i</code> is not a published step.
+     */
+    @SuppressWarnings("unchecked")
+    SampleSet<SystemState> get(int i) {
+        int published = size;
+        if ((i < 0) || (i >= published)) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return (SampleSet<SystemState>) steps[i];
+    }
+
+    /**
+     * Replaces the step at the given index. This method is used to evict steps and to cache the ones
+     * reloaded from a store.
+     *
+     * @param i step index.
+     * @param step new content of the slot.
+     */
+    void set(int i, SampleSet<SystemState> step) {
+        if ((i < 0) || (i >= size)) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        steps[i] = step;
+    }
+
+    /**
+     * Publishes the given step as the last one of this buffer.
+     *
+     * @param step a step, or <code>null</code> for a slot that is not in memory.
+     */
+    void add(SampleSet<SystemState> step) {
+        int n = size;
+        Object[] array = steps;
+        if (n == array.length) {
+            array = Arrays.copyOf(array, 2 * n);
+            steps = array;
+        }
+        array[n] = step;
+        size = n + 1;
+    }
+
+    /**
+     * Returns the first <code>n</code> slots of this buffer.
+     *
+     * @param n number of slots.
+     * @return the first <code>n</code> slots of this buffer.
+     */
+    @SuppressWarnings("unchecked")
+    List<SampleSet<SystemState>> prefix(int n) {
+        if (n > size) {
+            throw new IndexOutOfBoundsException(n);
+        }
+        Object[] array = steps;
+        return Arrays.asList((SampleSet<SystemState>[]) Arrays.copyOf(array, n, SampleSet[].class));
+    }
+
+}
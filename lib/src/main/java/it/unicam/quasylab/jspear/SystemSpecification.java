@@ -30,6 +30,10 @@ import it.unicam.quasylab.jspear.robtl.RobustnessFunction;
 import it.unicam.quasylab.jspear.robtl.TruthValues;
 import org.apache.commons.math3.random.RandomGenerator;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.stream.IntStream;
 
@@ -46,6 +50,7 @@ public class SystemSpecification {
     private final Map<String, DataStateExpression> penalties;
     private final Map<String, RobustnessFormula> formulas;
     private EvolutionSequence sequence;
+    private EvolutionSequenceStore store;
     private int size = DEFAULT_SIZE;
     private final Map<String, Perturbation> perturbations;
     private final Map<String, DistanceExpression> expressions;
@@ -159,9 +164,66 @@ public class SystemSpecification {
      * this random generator,
      * this system, and
      * this size.
+     * The penalty functions of this specification are registered in the sequence.
      */
     public void generateSequence() {
         this.sequence = new EvolutionSequence(rand, rg -> system, this.size);
+        registerPenalties();
+    }
+
+    /**
+     * Registers the penalty functions of this specification in its sequence, so that their sketches are
+     * built while steps are generated when distances are approximated.
+     */
+    private void registerPenalties() {
+        if (penalties != null) {
+            penalties.values().forEach(this.sequence::registerPenalty);
+        }
+    }
+
+    /**
+     * Attaches the evolution sequence of this specification to the given file. If the file contains
+     * a stored sequence, the latter is used instead of generating a new one, and its generation is resumed from
+     * the last stored step. The system states of the stored steps are obtained by replacing the data state of
+     * this system. Otherwise, a new sequence is generated and stored in the file. In both cases, the steps
+     * generated from now on are appended to the file.
+     *
+     * @param file a file.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void attachSequence(Path file) throws IOException {
+        closeStore();
+        if (Files.exists(file) && (Files.size(file) > 0)) {
+            EvolutionSequenceStore opened = EvolutionSequenceStore.open(file);
+            try {
+                this.sequence = new EvolutionSequence(rand, opened, system::setDataState);
+                registerPenalties();
+            } catch (IOException | RuntimeException e) {
+                opened.close();
+                throw e;
+            }
+            this.store = opened;
+            this.size = opened.getSize();
+        } else {
+            generateSequence();
+            this.store = EvolutionSequenceStore.create(file, this.sequence.get(0));
+            this.sequence.persistTo(this.store, system::setDataState);
+        }
+    }
+
+    /**
+     * Closes the store attached to the evolution sequence of this specification, if any.
+     */
+    private void closeStore() {
+        if (this.store != null) {
+            try {
+                this.store.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                this.store = null;
+            }
+        }
     }
 
     /**
@@ -471,7 +533,7 @@ public class SystemSpecification {
     public double[] evalDistanceExpression(String expressionName, String perturbationName, int perturbationStep, int scale, int[] steps) {
         EvolutionSequence perturbed = getSequence().apply(getPerturbation(perturbationName), perturbationStep, scale);
         DistanceExpression expr = getDistanceExpression(expressionName);
-        return IntStream.of(steps).mapToDouble(i -> expr.compute(i, getSequence(), perturbed)).toArray();
+        return expr.compute(steps, getSequence(), perturbed);
     }
 
     /**
@@ -516,6 +578,7 @@ public class SystemSpecification {
      * Resets the default parameters.
      */
     public void clear() {
+        closeStore();
         this.sequence = null;
         this.size = DEFAULT_SIZE;
         this.m = DEFAULT_M;
@@ -72,6 +72,16 @@ public interface SystemState {
      */
     SystemState setDataState(DataState dataState);
 
+    /**
+     * Returns the batch system that can be used to advance, in a single call, a batch of states containing
+     * this one. By default, no batch system is available and states are advanced one at a time.
+     *
+     * @return the batch system that can be used to advance a batch of states containing this one.
+     */
+    default Optional<BatchSystem> getBatchSystem() {
+        return Optional.empty();
+    }
+
 
     /**
      * Returns the sampling of the given function applied to this system state.
@@ -84,6 +94,19 @@ public interface SystemState {
         return this.setDataState(function.apply(rg, this.getDataState()));
     }
 
+    /**
+     * Returns the sampling of the given function applied to this system state, whose data state is not shared
+     * and can be modified in place. This method is invoked on the states that have just been returned by
+     * {@link #sampleNext(RandomGenerator)}.
+     *
+     * @param rg       random generator used in the sampling
+     * @param function random function to sample
+     * @return the sampling of the given function applied to this system state.
+     */
+    default SystemState applyInPlace(RandomGenerator rg, DataStateFunction function) {
+        return this.setDataState(function.applyInPlace(rg, this.getDataState()));
+    }
+
     /**
      * Computes the average value obtained by applying the given function experienced in a computation of a
      * length <code>steps</code> starting from <code>system</code>.
@@ -119,7 +142,7 @@ public interface SystemState {
         double[] result = new double[steps];
         for (int i = 0; i < steps; i++) {
             result[i] = Arrays.stream(current.evalPenaltyFunction(f)).average().orElse(Double.NaN);
-            current = current.apply(s -> s.sampleNext(rg));
+            current = current.apply(rg, (r, s) -> s.sampleNext(r));
         }
         return result;
     }
@@ -129,7 +152,7 @@ public interface SystemState {
         double[] result = new double[steps];
         for (int i = 0; i < steps; i++) {
             result[i] = Arrays.stream(current.evalPenaltyFunction(f)).max().orElse(Double.NaN);
-            current = current.apply(s -> s.sampleNext(rg));
+            current = current.apply(rg, (r, s) -> s.sampleNext(r));
         }
         return result;
     }
@@ -243,10 +266,10 @@ public interface SystemState {
         for (int i = 0; i < steps; i++) {
             Optional<DataStateFunction> perturbationEffects = p.effect();
             if (perturbationEffects.isPresent()) {
-                current = current.apply(s -> s.apply(rg, perturbationEffects.get()));
+                current = current.apply(rg, (r, s) -> s.apply(r, perturbationEffects.get()));
             }
             result[i] = Arrays.stream(current.evalPenaltyFunction(f)).average().orElse(Double.NaN);
-            current = current.apply(s -> s.sampleNext(rg));
+            current = current.apply(rg, (r, s) -> s.sampleNext(r));
             p = p.step();
         }
         return result;
@@ -276,13 +299,13 @@ public interface SystemState {
 
             Optional<DataStateFunction> perturbationEffects = p.effect();
             if (perturbationEffects.isPresent()) {
-                current = current.apply(s -> s.apply(rg, perturbationEffects.get()));
+                current = current.apply(rg, (r, s) -> s.apply(r, perturbationEffects.get()));
             }
 
             for (int j = 0; j < F.size(); j++) {
                 result[i][j] = Arrays.stream(current.evalPenaltyFunction(F.get(j))).average().orElse(Double.NaN);
             }
-            current = current.apply(s -> s.sampleNext(rg));
+            current = current.apply(rg, (r, s) -> s.sampleNext(r));
             p = p.step();
         }
         return result;
@@ -309,12 +332,12 @@ public interface SystemState {
         for (int i = 0; i < steps; i++) {
             Optional<DataStateFunction> perturbationEffects = p.effect();
             if (perturbationEffects.isPresent()) {
-                current = current.apply(s -> s.apply(rg, perturbationEffects.get()));
+                current = current.apply(rg, (r, s) -> s.apply(r, perturbationEffects.get()));
             }
             for (int j = 0; j < F.size(); j++) {
                 result[i][j] = Arrays.stream(current.evalPenaltyFunction(F.get(j))).min().orElse(Double.NaN);
             }
-            current = current.apply(s -> s.sampleNext(rg));
+            current = current.apply(rg, (r, s) -> s.sampleNext(r));
             p = p.step();
         }
         return result;
@@ -341,12 +364,12 @@ public interface SystemState {
         for (int i = 0; i < steps; i++) {
             Optional<DataStateFunction> perturbationEffects = p.effect();
             if (perturbationEffects.isPresent()) {
-                current = current.apply(s -> s.apply(rg, perturbationEffects.get()));
+                current = current.apply(rg, (r, s) -> s.apply(r, perturbationEffects.get()));
             }
             for (int j = 0; j < F.size(); j++) {
                 result[i][j] = Arrays.stream(current.evalPenaltyFunction(F.get(j))).max().orElse(Double.NaN);
             }
-            current = current.apply(s -> s.sampleNext(rg));
+            current = current.apply(rg, (r, s) -> s.sampleNext(r));
             p = p.step();
         }
         return result;
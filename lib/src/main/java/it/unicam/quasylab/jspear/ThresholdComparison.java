@@ -0,0 +1,47 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+/**
+ * The outcome of the comparison between a distance and a threshold. Besides the outcome of the comparison,
+ * the record reports the bounds on the distance that were known when the comparison was decided, and
+ * the number of samples evaluated to obtain them. When the distance is computed exactly, the two bounds
+ * coincide with its value.
+ *
+ * @param value the outcome of the comparison.
+ * @param lowerBound a lower bound of the distance.
+ * @param upperBound an upper bound of the distance.
+ * @param evaluatedSamples number of samples, of both the compared sample sets, evaluated to decide the comparison.
+ */
+public record ThresholdComparison(boolean value, double lowerBound, double upperBound, int evaluatedSamples) {
+
+    /**
+     * Returns true if the distance has been computed exactly.
+     *
+     * @return true if the distance has been computed exactly.
+     */
+    public boolean isExact() {
+        return lowerBound == upperBound;
+    }
+
+}
@@ -23,18 +23,22 @@
 package it.unicam.quasylab.jspear;
 
 import it.unicam.quasylab.jspear.controller.Controller;
-import it.unicam.quasylab.jspear.controller.EffectStep;
 import it.unicam.quasylab.jspear.ds.DataState;
 import it.unicam.quasylab.jspear.ds.DataStateBooleanExpression;
 import it.unicam.quasylab.jspear.ds.DataStateExpression;
 import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.ds.UpdateBuffer;
 import org.apache.commons.math3.random.RandomGenerator;
 
+import java.util.Optional;
+
 /**
  * Represents a system controlled by controller.
  */
 public class TimedSystem implements SystemState {
 
+    private static final Optional<BatchSystem> BATCH_SYSTEM = Optional.of(BatchSystem.SAMPLE_NEXT);
+
     private final Controller controller;
     private final DataStateFunction environment;
     private final DataState state;
@@ -61,8 +65,16 @@ public class TimedSystem implements SystemState {
 
 
     public TimedSystem sampleNextMicro(RandomGenerator rg){
-        EffectStep<Controller> step = controller.next(rg, state);
-        return new TimedSystem(step.next(), environment, environment.apply(rg, state.apply(step.effect())),generateNextTime);
+        UpdateBuffer updates = UpdateBuffer.acquire();
+        Controller next;
+        DataState updated;
+        try {
+            next = controller.next(rg, state, updates);
+            updated = state.apply(updates);
+        } finally {
+            updates.release();
+        }
+        return new TimedSystem(next, environment, environment.applyInPlace(rg, updated),generateNextTime);
     }
 
     @Override
@@ -103,5 +115,10 @@ public class TimedSystem implements SystemState {
         return new TimedSystem(controller, environment, dataState, generateNextTime);
     }
 
+    @Override
+    public Optional<BatchSystem> getBatchSystem() {
+        return BATCH_SYSTEM;
+    }
+
 
 }
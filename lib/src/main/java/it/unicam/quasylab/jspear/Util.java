@@ -22,12 +22,14 @@
 
 package it.unicam.quasylab.jspear;
 
+import it.unicam.quasylab.jspear.distance.DistanceEvaluationContext;
 import it.unicam.quasylab.jspear.distance.DistanceExpression;
 import it.unicam.quasylab.jspear.ds.DataStateExpression;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.function.DoubleBinaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
@@ -59,9 +61,8 @@ public class Util {
                                                                                    double to,
                                                                                    int steps) {
         double dt = (to-from)/steps;
-        double[] result = sampleSet.evalPenaltyFunction(penalty);
-        double size = result.length;
-        return IntStream.range(0, steps).mapToDouble(i -> DoubleStream.of(result).filter(x -> x<=from+i*dt).count()/size).toArray();
+        EcdfIndex index = sampleSet.getEcdfIndex(penalty);
+        return IntStream.range(0, steps).mapToDouble(i -> index.cdf(from+i*dt)).toArray();
     }
 
     /**
@@ -132,7 +133,8 @@ public class Util {
      * @param <T> model domain.
      */
     public static <T extends SystemState> double[][] evalDistanceExpression(EvolutionSequence sequence, EvolutionSequence sequence2, int from, int to, DistanceExpression ...  expressions) {
-        return IntStream.range(from, to).mapToObj(i -> Stream.of(expressions).mapToDouble(expr -> expr.compute(i, sequence, sequence2)).toArray()).toArray(double[][]::new);
+        DistanceEvaluationContext context = new DistanceEvaluationContext(sequence, sequence2);
+        return IntStream.range(from, to).mapToObj(i -> Stream.of(expressions).mapToDouble(expr -> context.compute(expr, i)).toArray()).toArray(double[][]::new);
     }
 
     /**
@@ -153,6 +155,76 @@ public class Util {
         return evalDistanceExpression(sequence, sequence2, 0, to, expressions);
     }
 
+    /**
+     * Computes the Wasserstein lifting of a given ground distance between two weighted sampled distributions
+     * on reals. Values in each array must be sorted in ascending order, and each value has the weight at the
+     * same position. Weights are normalised, and the two distributions can have different sizes.
+     *
+     * @param distance ground distance on reals
+     * @param values1 sorted values of the first distribution
+     * @param weights1 weights of the values of the first distribution
+     * @param values2 sorted values of the second distribution
+     * @param weights2 weights of the values of the second distribution
+     * @return the Wasserstein lifting of <code>distance</code> between the two weighted distributions.
+     * @throws IllegalArgumentException if values and weights have different lengths, or if a weight is negative,
+     * or if the total weight of a distribution is not positive.
+     */
+    public static double wasserstein(DoubleBinaryOperator distance, double[] values1, double[] weights1, double[] values2, double[] weights2) {
+        return DistanceKernels.merge(distance, values1, weights1, values2, weights2);
+    }
+
+    /**
+     * Returns the maxima of the windows of the given width over the given values. The element at position
+     * <code>i</code> of the result is the maximum of the values at positions in <code>[i, i+width)</code>.
+     * Maxima are computed in linear time by means of a monotonic deque.
+     *
+     * @param values an array of reals
+     * @param width width of the windows
+     * @return the maxima of the windows of width <code>width</code> over <code>values</code>.
+     * @throws IllegalArgumentException if <code>width</code> is not positive or it is larger than the number of values.
+     */
+    public static double[] slidingMax(double[] values, int width) {
+        return slidingExtremum(values, width, true);
+    }
+
+    /**
+     * Returns the minima of the windows of the given width over the given values. The element at position
+     * <code>i</code> of the result is the minimum of the values at positions in <code>[i, i+width)</code>.
+     * Minima are computed in linear time by means of a monotonic deque.
+     *
+     * @param values an array of reals
+     * @param width width of the windows
+     * @return the minima of the windows of width <code>width</code> over <code>values</code>.
+     * @throws IllegalArgumentException if <code>width</code> is not positive or it is larger than the number of values.
+     */
+    public static double[] slidingMin(double[] values, int width) {
+        return slidingExtremum(values, width, false);
+    }
+
+    private static double[] slidingExtremum(double[] values, int width, boolean max) {
+        if ((width <= 0)||(width > values.length)) {
+            throw new IllegalArgumentException("Illegal window width!");
+        }
+        double[] result = new double[values.length - width + 1];
+        // Indexes of the candidate extrema of the current window, whose values are monotone from head to tail.
+        int[] deque = new int[values.length];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < values.length; i++) {
+            while ((tail > head)&&(max ? values[deque[tail-1]] <= values[i] : values[deque[tail-1]] >= values[i])) {
+                tail--;
+            }
+            deque[tail++] = i;
+            if (deque[head] <= i - width) {
+                head++;
+            }
+            if (i >= width - 1) {
+                result[i - width + 1] = values[deque[head]];
+            }
+        }
+        return result;
+    }
+
     /**
      * Stores the given data into a csv file.
      *
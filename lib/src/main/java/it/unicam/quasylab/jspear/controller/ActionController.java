@@ -23,6 +23,7 @@
 package it.unicam.quasylab.jspear.controller;
 
 import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.UpdateBuffer;
 import it.unicam.quasylab.jspear.ds.DataStateUpdate;
 import org.apache.commons.math3.random.RandomGenerator;
 
@@ -65,4 +66,10 @@ public class ActionController implements Controller {
     public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
         return new EffectStep<>(action.apply(rg, state), nextController);
     }
+
+    @Override
+    public Controller next(RandomGenerator rg, DataState state, UpdateBuffer updates) {
+        updates.addAll(action.apply(rg, state));
+        return nextController;
+    }
 }
@@ -23,6 +23,7 @@
 package it.unicam.quasylab.jspear.controller;
 
 import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.UpdateBuffer;
 import it.unicam.quasylab.jspear.ds.DataStateUpdate;
 import org.apache.commons.math3.random.RandomGenerator;
 
@@ -63,4 +64,12 @@ public class AssignmentController implements Controller {
     public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
         return nextController.next(rg, state).applyBefore(assignment.apply(rg, state));
     }
+
+    @Override
+    public Controller next(RandomGenerator rg, DataState state, UpdateBuffer updates) {
+        int position = updates.size();
+        Controller result = nextController.next(rg, state, updates);
+        updates.addAll(position, assignment.apply(rg, state));
+        return result;
+    }
 }
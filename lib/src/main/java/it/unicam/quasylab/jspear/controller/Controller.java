@@ -25,6 +25,7 @@ package it.unicam.quasylab.jspear.controller;
 import it.unicam.quasylab.jspear.ds.DataState;
 import it.unicam.quasylab.jspear.ds.DataStateFunction;
 import it.unicam.quasylab.jspear.ds.DataStateUpdate;
+import it.unicam.quasylab.jspear.ds.UpdateBuffer;
 import org.apache.commons.math3.random.RandomGenerator;
 
 import java.util.List;
@@ -69,4 +70,19 @@ public interface Controller {
 
     EffectStep<Controller> next(RandomGenerator rg, DataState state);
 
+    /**
+     * Performs a step of this controller by writing its updates into the given buffer, instead of
+     * allocating a list of updates.
+     *
+     * @param rg random generator used to sample random expressions.
+     * @param state current data state.
+     * @param updates buffer where the updates of this step are appended.
+     * @return the controller to use at the next step.
+     */
+    default Controller next(RandomGenerator rg, DataState state, UpdateBuffer updates) {
+        EffectStep<Controller> step = next(rg, state);
+        updates.addAll(step.effect());
+        return step.next();
+    }
+
 }
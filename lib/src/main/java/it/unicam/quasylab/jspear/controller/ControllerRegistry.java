@@ -22,6 +22,10 @@
 
 package it.unicam.quasylab.jspear.controller;
 
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.UpdateBuffer;
+import org.apache.commons.math3.random.RandomGenerator;
+
 import java.util.HashMap;
 import java.util.Map;
 
@@ -69,7 +73,17 @@ public class ControllerRegistry {
      * @return a controller that refers to the one defined in this registry with the given name.
      */
     public Controller reference(String name) {
-        return (rg, ds) -> get(name).next(rg, ds);
+        return new Controller() {
+            @Override
+            public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
+                return get(name).next(rg, state);
+            }
+
+            @Override
+            public Controller next(RandomGenerator rg, DataState state, UpdateBuffer updates) {
+                return get(name).next(rg, state, updates);
+            }
+        };
     }
 
 }
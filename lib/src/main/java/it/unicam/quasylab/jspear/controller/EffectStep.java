@@ -24,7 +24,7 @@ package it.unicam.quasylab.jspear.controller;
 
 import it.unicam.quasylab.jspear.ds.DataStateUpdate;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.BinaryOperator;
 import java.util.function.UnaryOperator;
@@ -60,7 +60,7 @@ public record EffectStep<T>(List<DataStateUpdate> effect, T next) {
      * @return a step consisting of the parallel application of this step with the one given as parameters.
      */
     public EffectStep<T> parallel(BinaryOperator<T> stepOperator, EffectStep<T> other) {
-        List<DataStateUpdate> newEffects = new LinkedList<>();
+        List<DataStateUpdate> newEffects = new ArrayList<>(this.effect.size()+other.effect.size());
         newEffects.addAll(this.effect);
         newEffects.addAll(other.effect);
         return new EffectStep<>(newEffects, stepOperator.apply(this.next, other.next));
@@ -88,7 +88,8 @@ public record EffectStep<T>(List<DataStateUpdate> effect, T next) {
      */
     public EffectStep<T> applyAfter(EffectStep<T> apply) {
         if (this.isCompleted()) return this;
-        LinkedList<DataStateUpdate> updates = new LinkedList<>(this.effect);
+        List<DataStateUpdate> updates = new ArrayList<>(this.effect.size()+apply.effect.size());
+        updates.addAll(this.effect);
         updates.addAll(apply.effect);
         return new EffectStep<>(updates, apply.next);
     }
@@ -23,6 +23,7 @@
 package it.unicam.quasylab.jspear.controller;
 
 import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.UpdateBuffer;
 import org.apache.commons.math3.random.RandomGenerator;
 
 /**
@@ -55,4 +56,9 @@ public class ExecController implements Controller {
         return nextController.next(rg, state);
     }
 
+    @Override
+    public Controller next(RandomGenerator rg, DataState state, UpdateBuffer updates) {
+        return nextController.next(rg, state, updates);
+    }
+
 }
@@ -23,6 +23,7 @@
 package it.unicam.quasylab.jspear.controller;
 
 import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.UpdateBuffer;
 import org.apache.commons.math3.random.RandomGenerator;
 
 import java.util.function.BiPredicate;
@@ -76,4 +77,15 @@ public class GenerativeChoiceController implements Controller{
         }
     }
 
+    @Override
+    public Controller next(RandomGenerator rg, DataState state, UpdateBuffer updates) {
+        double p = rg.nextDouble();
+        if (p <= this.p) {
+            return leftController.next(rg, state, updates);
+        }
+        else{
+            return rightController.next(rg, state, updates);
+        }
+    }
+
 }
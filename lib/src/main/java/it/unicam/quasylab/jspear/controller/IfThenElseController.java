@@ -23,6 +23,7 @@
 package it.unicam.quasylab.jspear.controller;
 
 import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.UpdateBuffer;
 import org.apache.commons.math3.random.RandomGenerator;
 
 import java.util.function.BiPredicate;
@@ -68,5 +69,10 @@ public class IfThenElseController implements Controller{
         return (guard.test(rg, state)?thenController.next(rg, state):elseController.next(rg, state));
     }
 
+    @Override
+    public Controller next(RandomGenerator rg, DataState state, UpdateBuffer updates) {
+        return (guard.test(rg, state)?thenController.next(rg, state, updates):elseController.next(rg, state, updates));
+    }
+
 
 }
@@ -23,6 +23,7 @@
 package it.unicam.quasylab.jspear.controller;
 
 import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.UpdateBuffer;
 import org.apache.commons.math3.random.RandomGenerator;
 
 import java.util.List;
@@ -45,4 +46,9 @@ public class NilController implements Controller {
         return new EffectStep<>(List.of(), this);
     }
 
+    @Override
+    public Controller next(RandomGenerator rg, DataState state, UpdateBuffer updates) {
+        return this;
+    }
+
 }
@@ -23,6 +23,7 @@
 package it.unicam.quasylab.jspear.controller;
 
 import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.UpdateBuffer;
 import org.apache.commons.math3.random.RandomGenerator;
 
 /**
@@ -59,4 +60,11 @@ public class ParallelController implements Controller {
     public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
         return this.leftController.next(rg, state).parallel(ParallelController::new, this.rightController.next(rg, state));
     }
+
+    @Override
+    public Controller next(RandomGenerator rg, DataState state, UpdateBuffer updates) {
+        Controller left = this.leftController.next(rg, state, updates);
+        Controller right = this.rightController.next(rg, state, updates);
+        return new ParallelController(left, right);
+    }
 }
@@ -23,6 +23,7 @@
 package it.unicam.quasylab.jspear.controller;
 
 import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.UpdateBuffer;
 import it.unicam.quasylab.jspear.ds.DataStateUpdate;
 import org.apache.commons.math3.random.RandomGenerator;
 
@@ -86,4 +87,15 @@ public class ProbabilisticInterleavingController implements Controller {
             return new EffectStep<>(updates, c);
         }
     }
+
+    @Override
+    public Controller next(RandomGenerator rg, DataState state, UpdateBuffer updates) {
+        double p = rg.nextDouble();
+        if (p <= this.p) {
+            return new ProbabilisticInterleavingController(this.p, this.leftController.next(rg, state, updates), this.rightController);
+        }
+        else{
+            return new ProbabilisticInterleavingController(this.p, this.leftController, this.rightController.next(rg, state, updates));
+        }
+    }
 }
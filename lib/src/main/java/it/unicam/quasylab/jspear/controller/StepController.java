@@ -23,9 +23,10 @@
 package it.unicam.quasylab.jspear.controller;
 
 import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.UpdateBuffer;
 import org.apache.commons.math3.random.RandomGenerator;
 
-import java.util.LinkedList;
+import java.util.List;
 import java.util.function.ToIntBiFunction;
 
 /**
@@ -78,11 +79,16 @@ public class StepController implements Controller {
      */
     @Override
     public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
+        return new EffectStep<>(List.of(), next(rg, state, null));
+    }
+
+    @Override
+    public Controller next(RandomGenerator rg, DataState state, UpdateBuffer updates) {
         int numberOfSteps = steps.applyAsInt(rg, state);
         if (numberOfSteps<=0) {
-            return new EffectStep<>(new LinkedList<>(), nextController);
+            return nextController;
         } else {
-            return new EffectStep<>(new LinkedList<>(), new StepController((rg2, ds) -> numberOfSteps-1, nextController));
+            return new StepController((rg2, ds) -> numberOfSteps-1, nextController);
         }
     }
 
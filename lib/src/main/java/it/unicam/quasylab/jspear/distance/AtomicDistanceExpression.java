@@ -22,9 +22,13 @@
 
 package it.unicam.quasylab.jspear.distance;
 
+import it.unicam.quasylab.jspear.DistanceKernels;
 import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.SampleSet;
 import it.unicam.quasylab.jspear.ds.DataStateExpression;
+import it.unicam.quasylab.jspear.ds.RelationOperator;
 import org.apache.commons.math3.random.RandomGenerator;
+import java.util.OptionalInt;
 import java.util.function.DoubleBinaryOperator;
 import java.util.function.ToDoubleBiFunction;
 import java.util.stream.IntStream;
@@ -41,6 +45,16 @@ public final class AtomicDistanceExpression implements DistanceExpression {
     private final DataStateExpression rho;
     private final DoubleBinaryOperator distance;
 
+    /**
+     * Generates the atomic distance expression that will use the given penalty function
+     * and the distance {@link DistanceKernels#ABSOLUTE} over reals for the evaluation of the
+     * ground distance on data states.
+     * @param rho the penalty function
+     */
+    public AtomicDistanceExpression(DataStateExpression rho) {
+        this(rho, DistanceKernels.ABSOLUTE);
+    }
+
     /**
      * Generates the atomic distance expression that will use the given penalty function
      * and the given distance over reals for the evaluation of the ground distance on data states.
@@ -70,6 +84,20 @@ public final class AtomicDistanceExpression implements DistanceExpression {
         return seq1.get(step).distance(this.rho, this.distance, seq2.get(step));
     }
 
+    /**
+     * @inheritDoc
+     *
+     * When the distance is not available in the context, the comparison is delegated to the sample sets reached by the
+     * two sequences, which may decide it progressively.
+     */
+    @Override
+    public boolean compare(int step, DistanceEvaluationContext context, RelationOperator relop, double threshold) {
+        if (!SampleSet.isProgressiveComparison() || context.isComputed(this, step)) {
+            return DistanceExpression.super.compare(step, context, relop, threshold);
+        }
+        return context.getFirstSequence().get(step).compareDistance(rho, distance, context.getSecondSequence().get(step), relop, threshold).value();
+    }
+
     @Override
     public double[] evalCI(RandomGenerator rg, int step, EvolutionSequence seq1, EvolutionSequence seq2, int m, double z){
         double[] res = new double[3];
@@ -82,4 +110,18 @@ public final class AtomicDistanceExpression implements DistanceExpression {
         res[2] = partial[1];
         return res;
     }
+
+    /**
+     * Returns the penalty function of this expression.
+     *
+     * @return the penalty function of this expression.
+     */
+    DataStateExpression getPenalty() {
+        return rho;
+    }
+
+    @Override
+    public OptionalInt getTimeHorizon() {
+        return OptionalInt.of(0);
+    }
 }
@@ -23,9 +23,13 @@
 package it.unicam.quasylab.jspear.distance;
 
 import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.SampleSet;
 import it.unicam.quasylab.jspear.ds.DataStateExpression;
+import it.unicam.quasylab.jspear.ds.RelationOperator;
 import org.apache.commons.math3.random.RandomGenerator;
 
+import java.util.OptionalInt;
+
 /**
  * Class AtomicDistanceExpressionLeq implements the atomic distance expression
  * evaluating the hemidistance between the first and the second evolution sequence at a given time step.
@@ -56,6 +60,20 @@ public final class AtomicDistanceExpressionLeq implements DistanceExpression {
         return seq1.get(step).distanceLeq(rho, seq2.get(step));
     }
 
+    /**
+     * @inheritDoc
+     *
+     * When the distance is not available in the context, the comparison is delegated to the sample sets reached by the
+     * two sequences, which may decide it progressively.
+     */
+    @Override
+    public boolean compare(int step, DistanceEvaluationContext context, RelationOperator relop, double threshold) {
+        if (!SampleSet.isProgressiveComparison() || context.isComputed(this, step)) {
+            return DistanceExpression.super.compare(step, context, relop, threshold);
+        }
+        return context.getFirstSequence().get(step).compareDistanceLeq(rho, context.getSecondSequence().get(step), relop, threshold).value();
+    }
+
     @Override
     public double[] evalCI(RandomGenerator rg, int step, EvolutionSequence seq1, EvolutionSequence seq2, int m, double z){
         double[] res = new double[3];
@@ -66,5 +84,17 @@ public final class AtomicDistanceExpressionLeq implements DistanceExpression {
         return res;
     }
 
+    /**
+     * Returns the penalty function of this expression.
+     *
+     * @return the penalty function of this expression.
+     */
+    DataStateExpression getPenalty() {
+        return rho;
+    }
 
+    @Override
+    public OptionalInt getTimeHorizon() {
+        return OptionalInt.of(0);
+    }
 }
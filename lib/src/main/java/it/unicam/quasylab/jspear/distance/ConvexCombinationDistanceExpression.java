@@ -25,6 +25,7 @@ package it.unicam.quasylab.jspear.distance;
 import it.unicam.quasylab.jspear.EvolutionSequence;
 import org.apache.commons.math3.random.RandomGenerator;
 
+import java.util.OptionalInt;
 import java.util.Arrays;
 import java.util.stream.IntStream;
 
@@ -62,8 +63,13 @@ public final class ConvexCombinationDistanceExpression implements DistanceExpres
      */
     @Override
     public double compute(int step, EvolutionSequence seq1, EvolutionSequence seq2) {
+        return new DistanceEvaluationContext(seq1, seq2).compute(this, step);
+    }
+
+    @Override
+    public double compute(int step, DistanceEvaluationContext context) {
         return IntStream.range(0, weights.length)
-                .mapToDouble(i -> weights[i]*expressions[i].compute(step, seq1, seq2))
+                .mapToDouble(i -> weights[i]*context.compute(expressions[i], step))
                 .sum();
     }
 
@@ -75,9 +81,26 @@ public final class ConvexCombinationDistanceExpression implements DistanceExpres
      */
     @Override
     public double[] evalCI(RandomGenerator rg, int step, EvolutionSequence seq1, EvolutionSequence seq2, int m, double z) {
+        return new DistanceEvaluationContext(rg, seq1, seq2, m, z).evalCI(this, step);
+    }
+
+    @Override
+    public double[] evalCI(int step, DistanceEvaluationContext context) {
         return IntStream.range(0,3).mapToDouble(j -> IntStream.range(0, weights.length)
-                .mapToDouble(i -> weights[i]*expressions[i].evalCI(rg, step, seq1, seq2, m, z)[j])
+                .mapToDouble(i -> weights[i]*context.evalCI(expressions[i], step)[j])
                 .sum()).toArray();
     }
 
+    @Override
+    public OptionalInt getTimeHorizon() {
+        int horizon = 0;
+        for (DistanceExpression expression : expressions) {
+            OptionalInt h = expression.getTimeHorizon();
+            if (h.isEmpty()) {
+                return OptionalInt.empty();
+            }
+            horizon = Math.max(horizon, h.getAsInt());
+        }
+        return OptionalInt.of(horizon);
+    }
 }
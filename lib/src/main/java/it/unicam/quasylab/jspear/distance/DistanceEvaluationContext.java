@@ -0,0 +1,291 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.distance;
+
+import it.unicam.quasylab.jspear.DefaultRandomGenerator;
+import it.unicam.quasylab.jspear.EvolutionSequence;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The context in which distance expressions are evaluated between two given evolution sequences.
+ * The context memoizes the evaluations, and the confidence intervals, of each (sub)expression at each step, so that
+ * composite expressions that inspect the same subexpressions at the same steps, like until or interval expressions,
+ * compute each of them only once. The cache is identity based and it lives as long as the context, which is meant
+ * to be used for a single query. Contexts can be safely used by concurrent evaluations.
+ */
+public final class DistanceEvaluationContext {
+
+    private final EvolutionSequence seq1;
+    private final EvolutionSequence seq2;
+    private final boolean bootstrap;
+    private final long seed;
+    private final int m;
+    private final double z;
+    private final ConcurrentHashMap<Key, Double> values = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Key, double[]> intervals = new ConcurrentHashMap<>();
+    private final Map<DistanceExpression, Integer> positions = new IdentityHashMap<>();
+
+    /**
+     * Creates the context for the evaluation of distance expressions between the two given evolution sequences.
+     * Confidence intervals cannot be evaluated in the created context.
+     *
+     * @param seq1 an evolution sequence
+     * @param seq2 an evolution sequence
+     */
+    public DistanceEvaluationContext(EvolutionSequence seq1, EvolutionSequence seq2) {
+        this(null, seq1, seq2, 0, Double.NaN);
+    }
+
+    /**
+     * Creates the context for the evaluation of distance expressions, and of their confidence intervals,
+     * between the two given evolution sequences. The random streams used by the bootstrap method for the different
+     * subexpressions and steps are derived from a seed drawn from the given generator.
+     *
+     * @param rg random generator
+     * @param seq1 an evolution sequence
+     * @param seq2 an evolution sequence
+     * @param m number of repetitions for the bootstrap method
+     * @param z the quantile of the standard normal distribution corresponding to the desired coverage probability.
+     */
+    public DistanceEvaluationContext(RandomGenerator rg, EvolutionSequence seq1, EvolutionSequence seq2, int m, double z) {
+        this.seq1 = Objects.requireNonNull(seq1);
+        this.seq2 = Objects.requireNonNull(seq2);
+        this.bootstrap = (rg != null);
+        this.seed = (rg == null ? 0 : rg.nextLong());
+        this.m = m;
+        this.z = z;
+    }
+
+    /**
+     * Returns the first evolution sequence of this context.
+     *
+     * @return the first evolution sequence of this context.
+     */
+    public EvolutionSequence getFirstSequence() {
+        return seq1;
+    }
+
+    /**
+     * Returns the second evolution sequence of this context.
+     *
+     * @return the second evolution sequence of this context.
+     */
+    public EvolutionSequence getSecondSequence() {
+        return seq2;
+    }
+
+    /**
+     * Returns the evaluation of the given expression between the sequences of this context at the given step.
+     * The expression is evaluated only the first time it is requested at that step.
+     *
+     * @param expression a distance expression
+     * @param step time step at which the expression is evaluated
+     * @return the evaluation of <code>expression</code> between the sequences of this context at time <code>step</code>.
+     */
+    public double compute(DistanceExpression expression, int step) {
+        Key key = new Key(expression, step);
+        Double value = values.get(key);
+        if (value == null) {
+            // Values are not computed within the map as evaluations recursively access it.
+            value = expression.compute(step, this);
+            Double previous = values.putIfAbsent(key, value);
+            return (previous == null ? value : previous);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the evaluations of the given expression between the sequences of this context at each step in
+     * <code>[from,to]</code>. When some of these evaluations are not yet available, the whole range is evaluated
+     * by the expression, which may share work among the steps.
+     *
+     * @param expression a distance expression
+     * @param from left bound of the time interval
+     * @param to right bound of the time interval
+     * @return the array containing the evaluations of <code>expression</code> between the sequences of this context
+     * at each time step in <code>[from,to]</code>.
+     */
+    public double[] compute(DistanceExpression expression, int from, int to) {
+        double[] result = new double[to-from+1];
+        for (int i = from; i <= to; i++) {
+            Double value = values.get(new Key(expression, i));
+            if (value == null) {
+                result = expression.compute(from, to, this);
+                for (int j = from; j <= to; j++) {
+                    values.putIfAbsent(new Key(expression, j), result[j-from]);
+                }
+                return result;
+            }
+            result[i-from] = value;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the evaluation of the given expression between the sequences of this context at the given step
+     * and the related confidence interval. The expression is evaluated only the first time it is requested
+     * at that step.
+     *
+     * @param expression a distance expression
+     * @param step time step at which the expression is evaluated
+     * @return the evaluation of <code>expression</code> between the sequences of this context at time <code>step</code>
+     * and its confidence interval.
+     * @throws IllegalStateException if this context has no parameters for the bootstrap method.
+     */
+    public double[] evalCI(DistanceExpression expression, int step) {
+        if (!bootstrap) {
+            throw new IllegalStateException("Confidence intervals cannot be evaluated in this context!");
+        }
+        Key key = new Key(expression, step);
+        double[] value = intervals.get(key);
+        if (value == null) {
+            // Subexpressions are numbered before they are evaluated, possibly in parallel.
+            getPosition(expression);
+            value = expression.evalCI(step, this);
+            double[] previous = intervals.putIfAbsent(key, value);
+            if (previous != null) {
+                value = previous;
+            }
+        }
+        return value.clone();
+    }
+
+    /**
+     * Returns true if the evaluation of the given expression at the given step is available in this context.
+     *
+     * @param expression a distance expression
+     * @param step a time step
+     * @return true if the evaluation of <code>expression</code> at time <code>step</code> is available.
+     */
+    boolean isComputed(DistanceExpression expression, int step) {
+        return values.containsKey(new Key(expression, step));
+    }
+
+    /**
+     * Stores the evaluation of the given expression at the given step, unless one is already available.
+     *
+     * @param expression a distance expression
+     * @param step time step at which the expression has been evaluated
+     * @param value the evaluation of <code>expression</code> at time <code>step</code>
+     */
+    void store(DistanceExpression expression, int step, double value) {
+        values.putIfAbsent(new Key(expression, step), value);
+    }
+
+    /**
+     * Returns the random generator used to evaluate the confidence interval of the given expression at the given
+     * step. Generators are derived from the seed of this context, from the position of the expression in the
+     * evaluated tree and from the step, so that confidence intervals do not depend on the order in which
+     * subexpressions and steps are evaluated, and different subexpressions use independent streams.
+     *
+     * @param expression a distance expression.
+     * @param step a time step.
+     * @return the random generator used to evaluate the confidence interval of <code>expression</code>
+     * at time <code>step</code>.
+     */
+    public RandomGenerator getRandomGenerator(DistanceExpression expression, int step) {
+        return DefaultRandomGenerator.derive(seed, (((long) getPosition(expression)) << 32) + step);
+    }
+
+    /**
+     * Returns the position of the given expression in the trees evaluated in this context. Positions are assigned
+     * in preorder, starting from the first expression evaluated in this context, hence they only depend on the
+     * structure of the evaluated expressions. Expressions occurring more than once are numbered once.
+     *
+     * @param expression a distance expression.
+     * @return the position of <code>expression</code> in the trees evaluated in this context.
+     */
+    private synchronized int getPosition(DistanceExpression expression) {
+        Integer position = positions.get(expression);
+        if (position == null) {
+            number(expression);
+            position = positions.get(expression);
+        }
+        return position;
+    }
+
+    private void number(DistanceExpression expression) {
+        if (positions.putIfAbsent(expression, positions.size()) == null) {
+            for (DistanceExpression argument : getArguments(expression)) {
+                number(argument);
+            }
+        }
+    }
+
+    private static List<DistanceExpression> getArguments(DistanceExpression expression) {
+        if (expression instanceof ConvexCombinationDistanceExpression e) {
+            return List.of(e.expressions);
+        } else if (expression instanceof MaxDistanceExpression e) {
+            return List.of(e.getFirstExpression(), e.getSecondExpression());
+        } else if (expression instanceof MinDistanceExpression e) {
+            return List.of(e.getFirstExpression(), e.getSecondExpression());
+        } else if (expression instanceof ThresholdDistanceExpression e) {
+            return List.of(e.getExpression());
+        } else if (expression instanceof MaxIntervalDistanceExpression e) {
+            return List.of(e.getExpression());
+        } else if (expression instanceof MinIntervalDistanceExpression e) {
+            return List.of(e.getExpression());
+        } else if (expression instanceof UntilDistanceExpression e) {
+            return List.of(e.getLeftExpression(), e.getRightExpression());
+        }
+        return List.of();
+    }
+
+    /**
+     * Returns the number of repetitions for the bootstrap method.
+     *
+     * @return the number of repetitions for the bootstrap method.
+     */
+    public int getBootstrapSize() {
+        return m;
+    }
+
+    /**
+     * Returns the quantile of the standard normal distribution used to evaluate confidence intervals.
+     *
+     * @return the quantile of the standard normal distribution used to evaluate confidence intervals.
+     */
+    public double getQuantile() {
+        return z;
+    }
+
+    private record Key(DistanceExpression expression, int step) {
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Key other) && (expression == other.expression) && (step == other.step);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(expression) + step;
+        }
+    }
+
+}
@@ -22,10 +22,13 @@
 
 package it.unicam.quasylab.jspear.distance;
 
+import java.util.OptionalInt;
 import java.util.stream.IntStream;
 
 import it.unicam.quasylab.jspear.DefaultRandomGenerator;
 import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.ds.RelationOperator;
+import org.apache.commons.math3.random.RandomGenerator;
 
 /**
  * Distance expressions are used for the definition of distances between evolution sequences.
@@ -56,6 +59,8 @@ public sealed interface DistanceExpression permits
 
     /**
      * Returns the evaluation of the distance expression between the two sequences at each time step in a given interval.
+     * The evaluation is planned by a {@link DistanceQueryPlanner}, which computes all the needed atomic distances in
+     * a single batch.
      *
      * @param from left bound of the time interval
      * @param to right bound of the time interval
@@ -65,7 +70,22 @@ public sealed interface DistanceExpression permits
      * at each time step in <code>[from,to]</code>
      */
     default double[] compute(int from, int to, EvolutionSequence seq1, EvolutionSequence seq2) {
-        return compute(IntStream.range(from, to+1).toArray(), seq1, seq2);
+        return DistanceQueryPlanner.compute(this, from, to, seq1, seq2);
+    }
+
+    /**
+     * Returns the evaluation of the distance expression between the sequences of the given context at each time step
+     * in a given interval. Expressions that inspect windows of steps override this method to share the evaluations
+     * of their subexpressions among the steps of the interval.
+     *
+     * @param from left bound of the time interval
+     * @param to right bound of the time interval
+     * @param context the context of the evaluation
+     * @return the array containing the evaluations of the distance expression between the sequences of the context
+     * at each time step in <code>[from,to]</code>
+     */
+    default double[] compute(int from, int to, DistanceEvaluationContext context) {
+        return IntStream.range(from, to+1).parallel().mapToDouble(i -> context.compute(this, i)).toArray();
     }
 
     /**
@@ -78,7 +98,38 @@ public sealed interface DistanceExpression permits
      * at each time step in <code>steps</code>.
      */
     default double[] compute(int[] steps, EvolutionSequence seq1, EvolutionSequence seq2) {
-        return IntStream.of(steps).mapToDouble(i -> compute(i, seq1, seq2)).toArray();
+        DistanceEvaluationContext context = new DistanceEvaluationContext(seq1, seq2);
+        return IntStream.of(steps).mapToDouble(i -> context.compute(this, i)).toArray();
+    }
+
+    /**
+     * Returns the evaluation of the distance expression between the sequences of the given context at the given step.
+     * Composite expressions evaluate their subexpressions through the context, so that each of them is computed at most
+     * once at each step.
+     *
+     * @param step time step at which we evaluate the expression
+     * @param context the context of the evaluation
+     * @return the evaluation of the distance expression at the given step between the sequences of the context.
+     */
+    default double compute(int step, DistanceEvaluationContext context) {
+        return compute(step, context.getFirstSequence(), context.getSecondSequence());
+    }
+
+    /**
+     * Returns the outcome of the comparison between the evaluation of the distance expression between the sequences
+     * of the given context at the given step and a threshold. Atomic distances may decide the comparison without
+     * computing their exact value, when the progressive comparison of sample sets is enabled.
+     *
+     * @param step time step at which we evaluate the expression
+     * @param context the context of the evaluation
+     * @param relop relation operator used in the comparison
+     * @param threshold the threshold
+     * @return the outcome of the comparison between the evaluation of the expression and <code>threshold</code>
+     * according to <code>relop</code>.
+     * @see it.unicam.quasylab.jspear.SampleSet#setProgressiveComparison(boolean)
+     */
+    default boolean compare(int step, DistanceEvaluationContext context, RelationOperator relop, double threshold) {
+        return relop.eval(context.compute(this, step), threshold);
     }
 
     /**
@@ -115,4 +166,28 @@ public sealed interface DistanceExpression permits
         return evalCI(new DefaultRandomGenerator(), step, seq1, seq2, m, z);
     }
 
+    /**
+     * Returns the evaluation of the distance expression between the sequences of the given context at the given step
+     * and the related confidence interval, computed with the bootstrap parameters of the context.
+     * Composite expressions evaluate their subexpressions through the context, so that each of them is computed at most
+     * once at each step.
+     *
+     * @param step time step at which we start the evaluation of the expression
+     * @param context the context of the evaluation
+     * @return the evaluation of the distance expression at the given step between the sequences of the context
+     * and its confidence interval.
+     */
+    default double[] evalCI(int step, DistanceEvaluationContext context) {
+        return evalCI(context.getRandomGenerator(this, step), step, context.getFirstSequence(), context.getSecondSequence(),
+                context.getBootstrapSize(), context.getQuantile());
+    }
+
+    /**
+     * Returns the number of steps, after the one at which the expression is evaluated, that may be
+     * inspected by the evaluation. An empty value is returned when no such bound exists.
+     *
+     * @return the number of steps after the evaluation step that may be inspected by the evaluation.
+     */
+    OptionalInt getTimeHorizon();
+
 }
@@ -0,0 +1,189 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.distance;
+
+import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * This class plans the evaluation of a distance expression over an interval of time steps.
+ * The tree of the expression is visited to collect the atomic distances, and the steps, needed by the query.
+ * These are then evaluated in a single parallel batch, where the atomic distances sharing a penalty function
+ * are evaluated together at each step, so that the sorted evaluations of the penalty cached by the sample sets
+ * are shared among them. Finally, the results are folded back up the tree through a
+ * {@link DistanceEvaluationContext}.
+ */
+public final class DistanceQueryPlanner {
+
+    private final Map<DistanceExpression, BitSet> requested = new IdentityHashMap<>();
+
+    private final Map<DistanceExpression, BitSet> leaves = new IdentityHashMap<>();
+
+    private DistanceQueryPlanner() {}
+
+    /**
+     * Returns the evaluation of the given distance expression between the two sequences at each time step
+     * in <code>[from,to]</code>.
+     *
+     * @param expression a distance expression
+     * @param from left bound of the time interval
+     * @param to right bound of the time interval
+     * @param seq1 an evolution sequence
+     * @param seq2 an evolution sequence
+     * @return the array containing the evaluations of <code>expression</code> between <code>seq1</code> and
+     * <code>seq2</code> at each time step in <code>[from,to]</code>.
+     */
+    public static double[] compute(DistanceExpression expression, int from, int to, EvolutionSequence seq1, EvolutionSequence seq2) {
+        return plan(expression, from, to, seq1, seq2).compute(expression, from, to);
+    }
+
+    /**
+     * Returns a context for the evaluation of the given distance expression between the two sequences at the
+     * time steps in <code>[from,to]</code>, where all the atomic distances needed by the evaluation have
+     * already been computed.
+     *
+     * @param expression a distance expression
+     * @param from left bound of the time interval
+     * @param to right bound of the time interval
+     * @param seq1 an evolution sequence
+     * @param seq2 an evolution sequence
+     * @return a context where the atomic distances needed to evaluate <code>expression</code> at time steps in
+     * <code>[from,to]</code> are available.
+     */
+    public static DistanceEvaluationContext plan(DistanceExpression expression, int from, int to, EvolutionSequence seq1, EvolutionSequence seq2) {
+        if ((from<0)||(from>to)) {
+            throw new IllegalArgumentException();
+        }
+        DistanceQueryPlanner planner = new DistanceQueryPlanner();
+        planner.collect(expression, from, to);
+        DistanceEvaluationContext context = new DistanceEvaluationContext(seq1, seq2);
+        planner.evaluate(context);
+        return context;
+    }
+
+    /**
+     * Records that the given expression is evaluated at the steps in <code>[from,to]</code>, and visits its
+     * arguments with the steps they are evaluated at. Steps that have already been visited are skipped.
+     */
+    private void collect(DistanceExpression expression, int from, int to) {
+        if (from > to) {
+            return;
+        }
+        BitSet steps = requested.computeIfAbsent(expression, e -> new BitSet());
+        if (steps.nextClearBit(from) > to) {
+            return;
+        }
+        steps.set(from, to+1);
+        if (expression instanceof AtomicDistanceExpression
+                || expression instanceof AtomicDistanceExpressionLeq
+                || expression instanceof AtomicDistanceExpressionGeq) {
+            leaves.computeIfAbsent(expression, e -> new BitSet()).set(from, to+1);
+        } else if (expression instanceof ConvexCombinationDistanceExpression e) {
+            for (DistanceExpression argument : e.expressions) {
+                collect(argument, from, to);
+            }
+        } else if (expression instanceof MaxDistanceExpression e) {
+            collect(e.getFirstExpression(), from, to);
+            collect(e.getSecondExpression(), from, to);
+        } else if (expression instanceof MinDistanceExpression e) {
+            collect(e.getFirstExpression(), from, to);
+            collect(e.getSecondExpression(), from, to);
+        } else if (expression instanceof ThresholdDistanceExpression e) {
+            collect(e.getExpression(), from, to);
+        } else if (expression instanceof MaxIntervalDistanceExpression e) {
+            collect(e.getExpression(), from+e.getFrom(), to+e.getTo()-1);
+        } else if (expression instanceof MinIntervalDistanceExpression e) {
+            collect(e.getExpression(), from+e.getFrom(), to+e.getTo()-1);
+        } else if (expression instanceof UntilDistanceExpression e) {
+            collect(e.getRightExpression(), from+e.getFrom(), to+e.getTo()-1);
+            collect(e.getLeftExpression(), from+e.getFrom(), to+e.getTo()-2);
+        }
+        // Skorokhod distances inspect the sequences on their own, hence they are evaluated when the tree is folded.
+    }
+
+    /**
+     * Evaluates all the collected atomic distances and stores their values in the given context.
+     */
+    private void evaluate(DistanceEvaluationContext context) {
+        EvolutionSequence seq1 = context.getFirstSequence();
+        EvolutionSequence seq2 = context.getSecondSequence();
+        int last = leaves.values().stream().mapToInt(s -> s.length()-1).max().orElse(-1);
+        if (last < 0) {
+            return;
+        }
+        List<List<DistanceExpression>> tasks = new ArrayList<>();
+        List<Integer> taskSteps = new ArrayList<>();
+        for (int step = 0; step <= last; step++) {
+            Map<DataStateExpression, List<DistanceExpression>> groups = new LinkedHashMap<>();
+            for (Map.Entry<DistanceExpression, BitSet> leaf : leaves.entrySet()) {
+                if (leaf.getValue().get(step)) {
+                    groups.computeIfAbsent(getPenalty(leaf.getKey()), p -> new ArrayList<>()).add(leaf.getKey());
+                }
+            }
+            for (List<DistanceExpression> group : groups.values()) {
+                tasks.add(group);
+                taskSteps.add(step);
+            }
+        }
+        // Tasks are evaluated in batches of ascending steps that fit the retention windows of the sequences. Each
+        // batch generates the sequences up to its last step, so that the batch does not contend for their
+        // generation, without evicting the steps that the batch needs.
+        int window = Math.min(seq1.getRetention(), seq2.getRetention());
+        int first = 0;
+        while (first < tasks.size()) {
+            int lastStep = (int) Math.min(last, (long) taskSteps.get(first)+window-1);
+            int end = first;
+            while ((end < tasks.size())&&(taskSteps.get(end) <= lastStep)) {
+                end++;
+            }
+            seq1.get(lastStep);
+            seq2.get(lastStep);
+            IntStream.range(first, end).parallel().forEach(i -> {
+                int step = taskSteps.get(i);
+                for (DistanceExpression leaf : tasks.get(i)) {
+                    context.store(leaf, step, leaf.compute(step, seq1, seq2));
+                }
+            });
+            first = end;
+        }
+    }
+
+    private static DataStateExpression getPenalty(DistanceExpression leaf) {
+        if (leaf instanceof AtomicDistanceExpression e) {
+            return e.getPenalty();
+        }
+        if (leaf instanceof AtomicDistanceExpressionLeq e) {
+            return e.getPenalty();
+        }
+        return ((AtomicDistanceExpressionGeq) leaf).getPenalty();
+    }
+
+}
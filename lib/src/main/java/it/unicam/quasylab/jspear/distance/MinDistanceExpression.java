@@ -25,6 +25,7 @@ package it.unicam.quasylab.jspear.distance;
 import it.unicam.quasylab.jspear.EvolutionSequence;
 import org.apache.commons.math3.random.RandomGenerator;
 
+import java.util.OptionalInt;
 import java.util.stream.IntStream;
 
 /**
@@ -58,10 +59,15 @@ public final class MinDistanceExpression implements DistanceExpression {
      */
     @Override
     public double compute(int step, EvolutionSequence seq1, EvolutionSequence seq2) {
+        return new DistanceEvaluationContext(seq1, seq2).compute(this, step);
+    }
+
+    @Override
+    public double compute(int step, DistanceEvaluationContext context) {
         if (step<0) {
             throw new IllegalArgumentException();
         }
-        return Math.min(expr1.compute(step, seq1, seq2), expr2.compute(step, seq1, seq2));
+        return Math.min(context.compute(expr1, step), context.compute(expr2, step));
     }
 
     /**
@@ -72,12 +78,44 @@ public final class MinDistanceExpression implements DistanceExpression {
      */
     @Override
     public double[] evalCI(RandomGenerator rg, int step, EvolutionSequence seq1, EvolutionSequence seq2, int m, double z) {
+        return new DistanceEvaluationContext(rg, seq1, seq2, m, z).evalCI(this, step);
+    }
+
+    @Override
+    public double[] evalCI(int step, DistanceEvaluationContext context) {
         if (step<0) {
             throw new IllegalArgumentException();
         }
         return IntStream.range(0,3)
-                .mapToDouble(i -> Math.min(expr1.evalCI(rg, step, seq1, seq2, m, z)[i], expr2.evalCI(rg, step, seq1, seq2, m, z)[i]))
+                .mapToDouble(i -> Math.min(context.evalCI(expr1, step)[i], context.evalCI(expr2, step)[i]))
                 .toArray();
     }
 
+    /**
+     * Returns the first argument of this expression.
+     *
+     * @return the first argument of this expression.
+     */
+    DistanceExpression getFirstExpression() {
+        return expr1;
+    }
+
+    /**
+     * Returns the second argument of this expression.
+     *
+     * @return the second argument of this expression.
+     */
+    DistanceExpression getSecondExpression() {
+        return expr2;
+    }
+
+    @Override
+    public OptionalInt getTimeHorizon() {
+        OptionalInt h1 = expr1.getTimeHorizon();
+        OptionalInt h2 = expr2.getTimeHorizon();
+        if (h1.isEmpty() || h2.isEmpty()) {
+            return OptionalInt.empty();
+        }
+        return OptionalInt.of(Math.max(h1.getAsInt(), h2.getAsInt()));
+    }
 }
@@ -23,8 +23,10 @@
 package it.unicam.quasylab.jspear.distance;
 
 import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.Util;
 import org.apache.commons.math3.random.RandomGenerator;
 
+import java.util.OptionalInt;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.IntStream;
@@ -67,14 +69,26 @@ public final class MinIntervalDistanceExpression implements DistanceExpression {
      */
     @Override
     public double compute(int step, EvolutionSequence seq1, EvolutionSequence seq2) {
-        if (step<0) {
+        return new DistanceEvaluationContext(seq1, seq2).compute(this, step);
+    }
+
+    @Override
+    public double compute(int step, DistanceEvaluationContext context) {
+        return compute(step, step, context)[0];
+    }
+
+    /**
+     * @inheritDoc
+     *
+     * The expression is evaluated once at each step covered by the shifted intervals, and the minima of the
+     * windows are computed in linear time.
+     */
+    @Override
+    public double[] compute(int fromStep, int toStep, DistanceEvaluationContext context) {
+        if (fromStep<0) {
             throw new IllegalArgumentException();
         }
-        return IntStream.range(from+step, to+step)
-                .sequential()
-                .mapToDouble(i -> expression.compute(i, seq1, seq2))
-                .min()
-                .orElse(Double.NaN);
+        return Util.slidingMin(context.compute(expression, from+fromStep, to+toStep-1), to-from);
     }
 
     /**
@@ -85,15 +99,55 @@ public final class MinIntervalDistanceExpression implements DistanceExpression {
      */
     @Override
     public double[] evalCI(RandomGenerator rg, int step, EvolutionSequence seq1, EvolutionSequence seq2, int m, double z) {
+        return new DistanceEvaluationContext(rg, seq1, seq2, m, z).evalCI(this, step);
+    }
+
+    @Override
+    public double[] evalCI(int step, DistanceEvaluationContext context) {
         if (step<0) {
             throw new IllegalArgumentException();
         }
         double[] res = new double[3];
-        List<double[]> resList = IntStream.range(from + step, to + step).parallel().mapToObj(i -> expression.evalCI(rg, i, seq1, seq2, m, z)).toList();
+        List<double[]> resList = IntStream.range(from + step, to + step).parallel().mapToObj(i -> context.evalCI(expression, i)).toList();
         res[0] = resList.stream().parallel().mapToDouble(r -> r[0]).min().orElse(Double.NaN);
         res[1] = resList.stream().parallel().mapToDouble(r -> r[1]).min().orElse(Double.NaN);
         res[2] = resList.stream().parallel().mapToDouble(r -> r[2]).min().orElse(Double.NaN);
         return res;
     }
 
+    /**
+     * Returns the distance expression evaluated in the interval.
+     *
+     * @return the distance expression evaluated in the interval.
+     */
+    DistanceExpression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Returns the left bound of the time interval.
+     *
+     * @return the left bound of the time interval.
+     */
+    int getFrom() {
+        return from;
+    }
+
+    /**
+     * Returns the right bound of the time interval.
+     *
+     * @return the right bound of the time interval.
+     */
+    int getTo() {
+        return to;
+    }
+
+    @Override
+    public OptionalInt getTimeHorizon() {
+        OptionalInt h = expression.getTimeHorizon();
+        if (h.isEmpty()) {
+            return OptionalInt.empty();
+        }
+        return OptionalInt.of(to + h.getAsInt());
+    }
 }
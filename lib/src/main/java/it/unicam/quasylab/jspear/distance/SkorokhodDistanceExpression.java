@@ -22,6 +22,7 @@
 
 package it.unicam.quasylab.jspear.distance;
 
+import java.util.OptionalInt;
 import java.util.function.DoubleBinaryOperator;
 import java.util.function.ToDoubleFunction;
 import java.util.stream.IntStream;
@@ -435,4 +436,13 @@ public final class SkorokhodDistanceExpression implements DistanceExpression {
     {
         return this.usedOffsets;
     }
+
+    /**
+     * The Skorokhod distance may compare steps that are far apart in the two sequences,
+     * hence no bounded time horizon can be given.
+     */
+    @Override
+    public OptionalInt getTimeHorizon() {
+        return OptionalInt.empty();
+    }
 }
@@ -22,6 +22,7 @@
 
 package it.unicam.quasylab.jspear.distance;
 
+import java.util.OptionalInt;
 import it.unicam.quasylab.jspear.EvolutionSequence;
 import it.unicam.quasylab.jspear.ds.RelationOperator;
 import org.apache.commons.math3.random.RandomGenerator;
@@ -63,7 +64,12 @@ public final class ThresholdDistanceExpression implements DistanceExpression {
      */
     @Override
     public double compute(int step, EvolutionSequence seq1, EvolutionSequence seq2) {
-        return (relop.eval(expression.compute(step, seq1, seq2),threshold)?0.0:1.0);
+        return new DistanceEvaluationContext(seq1, seq2).compute(this, step);
+    }
+
+    @Override
+    public double compute(int step, DistanceEvaluationContext context) {
+        return (expression.compare(step, context, relop, threshold)?0.0:1.0);
     }
 
     /**
@@ -76,8 +82,13 @@ public final class ThresholdDistanceExpression implements DistanceExpression {
      */
     @Override
     public double[] evalCI(RandomGenerator rg, int step, EvolutionSequence seq1, EvolutionSequence seq2, int m, double z) {
+        return new DistanceEvaluationContext(rg, seq1, seq2, m, z).evalCI(this, step);
+    }
+
+    @Override
+    public double[] evalCI(int step, DistanceEvaluationContext context) {
         double[] res = new double[3];
-        double[] value = expression.evalCI(rg, step, seq1, seq2, m, z);
+        double[] value = context.evalCI(expression, step);
         res[0]= relop.eval(value[0],threshold)?0.0:1.0;
         if(value[1]< threshold && threshold< value[2]){
             res[1] = 0.0;
@@ -90,4 +101,17 @@ public final class ThresholdDistanceExpression implements DistanceExpression {
         return res;
     }
 
+    /**
+     * Returns the distance expression compared with the threshold.
+     *
+     * @return the distance expression compared with the threshold.
+     */
+    DistanceExpression getExpression() {
+        return expression;
+    }
+
+    @Override
+    public OptionalInt getTimeHorizon() {
+        return expression.getTimeHorizon();
+    }
 }
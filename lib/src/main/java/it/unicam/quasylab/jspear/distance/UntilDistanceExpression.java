@@ -25,6 +25,7 @@ package it.unicam.quasylab.jspear.distance;
 import it.unicam.quasylab.jspear.EvolutionSequence;
 import org.apache.commons.math3.random.RandomGenerator;
 
+import java.util.OptionalInt;
 import java.util.Objects;
 import java.util.stream.IntStream;
 
@@ -73,29 +74,42 @@ public final class UntilDistanceExpression implements DistanceExpression {
      */
     @Override
     public double compute(int step, EvolutionSequence seq1, EvolutionSequence seq2) {
-        if (step<0) {
+        return new DistanceEvaluationContext(seq1, seq2).compute(this, step);
+    }
+
+    @Override
+    public double compute(int step, DistanceEvaluationContext context) {
+        return compute(step, step, context)[0];
+    }
+
+    /**
+     * @inheritDoc
+     *
+     * Both subexpressions are evaluated once at each step covered by the shifted intervals, and the maximum of
+     * the left expression is updated incrementally, hence each step is evaluated in time linear in the width
+     * of the interval.
+     */
+    @Override
+    public double[] compute(int fromStep, int toStep, DistanceEvaluationContext context) {
+        if (fromStep<0) {
             throw new IllegalArgumentException();
         }
-        /*
-        return IntStream.range(from+step, to+step).parallel()
-                .mapToDouble(i -> Math.max(rightExpression.compute(i, seq1, seq2),
-                        IntStream.range(from+step,i).parallel()
-                                .mapToDouble(j-> leftExpression.compute(j,seq1,seq2)).max().orElse(Double.NaN)))
-                .min().orElse(Double.NaN);
-
-         */
-        double res = 1.0;
-        double resL = 0.0;
-        for(int i = from+step; i<to+step; i++) {
-            double resR = rightExpression.compute(i, seq1, seq2);
-            //double resL = leftExpression.compute(i,seq1,seq2);
-            for(int j =from+step; j<i; j++) {
-                double partialL = leftExpression.compute(j,seq1,seq2);
-                resL = Math.max(resL, partialL);
+        int offset = from+fromStep;
+        double[] right = context.compute(rightExpression, offset, to+toStep-1);
+        double[] left = (to-from>1?context.compute(leftExpression, offset, to+toStep-2):new double[0]);
+        double[] result = new double[toStep-fromStep+1];
+        for(int step = fromStep; step<=toStep; step++) {
+            double res = 1.0;
+            double resL = 0.0;
+            for(int i = from+step; i<to+step; i++) {
+                if (i > from+step) {
+                    resL = Math.max(resL, left[i-1-offset]);
+                }
+                res = Math.min(res,Math.max(right[i-offset],resL));
             }
-            res = Math.min(res,Math.max(resR,resL));
+            result[step-fromStep] = res;
         }
-        return res;
+        return result;
     }
 
     /**
@@ -107,15 +121,22 @@ public final class UntilDistanceExpression implements DistanceExpression {
      */
     @Override
     public double[] evalCI(RandomGenerator rg, int step, EvolutionSequence seq1, EvolutionSequence seq2, int m, double z) {
+        return new DistanceEvaluationContext(rg, seq1, seq2, m, z).evalCI(this, step);
+    }
+
+    @Override
+    public double[] evalCI(int step, DistanceEvaluationContext context) {
         if (step<0) {
             throw new IllegalArgumentException();
         }
         double[] res = {1.0,1.0,1.0};
+        double[] resL = null;
         for(int i = from+step; i<to+step; i++) {
-            double[] resR = rightExpression.evalCI(rg, i, seq1, seq2, m, z);
-            double[] resL = leftExpression.evalCI(rg, i,seq1,seq2,m,z);
-            for(int j =from+step; j<i; j++) {
-                double[] partialL = leftExpression.evalCI(rg, j,seq1,seq2,m,z);
+            double[] resR = context.evalCI(rightExpression, i);
+            double[] partialL = context.evalCI(leftExpression, i);
+            if (resL == null) {
+                resL = partialL;
+            } else {
                 resL[0] = Math.max(resL[0], partialL[0]);
                 resL[1] = Math.max(resL[1], partialL[1]);
                 resL[2] = Math.max(resL[2], partialL[2]);
@@ -127,4 +148,49 @@ public final class UntilDistanceExpression implements DistanceExpression {
         return res;
     }
 
+    /**
+     * Returns the left argument of this expression.
+     *
+     * @return the left argument of this expression.
+     */
+    DistanceExpression getLeftExpression() {
+        return leftExpression;
+    }
+
+    /**
+     * Returns the right argument of this expression.
+     *
+     * @return the right argument of this expression.
+     */
+    DistanceExpression getRightExpression() {
+        return rightExpression;
+    }
+
+    /**
+     * Returns the left bound of the time interval.
+     *
+     * @return the left bound of the time interval.
+     */
+    int getFrom() {
+        return from;
+    }
+
+    /**
+     * Returns the right bound of the time interval.
+     *
+     * @return the right bound of the time interval.
+     */
+    int getTo() {
+        return to;
+    }
+
+    @Override
+    public OptionalInt getTimeHorizon() {
+        OptionalInt l = leftExpression.getTimeHorizon();
+        OptionalInt r = rightExpression.getTimeHorizon();
+        if (l.isEmpty() || r.isEmpty()) {
+            return OptionalInt.empty();
+        }
+        return OptionalInt.of(to + Math.max(l.getAsInt(), r.getAsInt()));
+    }
 }
@@ -22,6 +22,7 @@
 
 package it.unicam.quasylab.jspear.distl;
 
+import it.unicam.quasylab.jspear.PenaltyShift;
 import it.unicam.quasylab.jspear.SampleSet;
 import it.unicam.quasylab.jspear.SystemState;
 import it.unicam.quasylab.jspear.ds.DataStateExpression;
@@ -45,12 +46,15 @@ public final class BrinkDisTLFormula implements DisTLFormula {
 
     private final double q;
 
+    private final Optional<PenaltyShift> shift;
+
     public BrinkDisTLFormula(DataStateFunction distribution, DataStateExpression penalty, double threshold) {
         this.mu = distribution;
         this.dist = new SampleSet<>();
         this.rho = Optional.of(penalty);
         this.q = threshold;
         this.P = new NonePenalty();
+        this.shift = Optional.empty();
     }
 
     public BrinkDisTLFormula(DataStateFunction distribution, Penalty penalty, double threshold) {
@@ -59,6 +63,27 @@ public final class BrinkDisTLFormula implements DisTLFormula {
         this.rho = Optional.empty();
         this.q = threshold;
         this.P = penalty;
+        this.shift = Optional.empty();
+    }
+
+    /**
+     * Creates a brink formula whose distribution <code>distribution</code> is deterministic, and it transforms the values
+     * of <code>penalty</code> according to <code>shift</code>, namely <code>penalty(distribution(ds))</code> is
+     * <code>shift.apply(penalty(ds))</code> for each data state <code>ds</code>. Under this assumption the formula is
+     * evaluated on the sorted evaluations of the penalty, without sampling the distribution.
+     *
+     * @param distribution a deterministic distribution.
+     * @param shift the transformation of the values of <code>penalty</code> induced by <code>distribution</code>.
+     * @param penalty a penalty function.
+     * @param threshold the threshold.
+     */
+    public BrinkDisTLFormula(DataStateFunction distribution, PenaltyShift shift, DataStateExpression penalty, double threshold) {
+        this.mu = distribution;
+        this.dist = new SampleSet<>();
+        this.rho = Optional.of(penalty);
+        this.P = new NonePenalty();
+        this.q = threshold;
+        this.shift = Optional.of(shift);
     }
 
     public BrinkDisTLFormula(SampleSet<SystemState> distribution, DataStateExpression penalty, double threshold) {
@@ -67,6 +92,7 @@ public final class BrinkDisTLFormula implements DisTLFormula {
         this.rho = Optional.ofNullable(penalty);
         this.P = new NonePenalty();
         this.q = threshold;
+        this.shift = Optional.empty();
     }
 
     public BrinkDisTLFormula(SampleSet<SystemState> distribution, Penalty penalty, double threshold) {
@@ -75,6 +101,7 @@ public final class BrinkDisTLFormula implements DisTLFormula {
         this.rho = Optional.empty();
         this.P = penalty;
         this.q = threshold;
+        this.shift = Optional.empty();
     }
 
     @Override
@@ -90,6 +117,16 @@ public final class BrinkDisTLFormula implements DisTLFormula {
         return this.dist;
     }
 
+    /**
+     * Returns the transformation of the values of the penalty function induced by the distribution of this formula,
+     * if it has been declared.
+     *
+     * @return the transformation of the values of the penalty function induced by the distribution of this formula.
+     */
+    public Optional<PenaltyShift> getShift() {
+        return this.shift;
+    }
+
     public Optional<DataStateExpression> getRho() {
         return this.rho;
     }
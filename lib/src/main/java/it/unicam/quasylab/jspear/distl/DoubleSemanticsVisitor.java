@@ -23,13 +23,17 @@
 package it.unicam.quasylab.jspear.distl;
 
 import it.unicam.quasylab.jspear.DefaultRandomGenerator;
+import it.unicam.quasylab.jspear.PenaltyShift;
 import it.unicam.quasylab.jspear.SampleSet;
 import it.unicam.quasylab.jspear.SystemState;
+import it.unicam.quasylab.jspear.Util;
 import it.unicam.quasylab.jspear.penalty.*;
 import it.unicam.quasylab.jspear.ds.DataStateExpression;
 import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.udistl.UDisTLFormula;
 import org.apache.commons.math3.random.AbstractRandomGenerator;
 
+import java.util.function.DoubleBinaryOperator;
 import java.util.stream.IntStream;
 import java.util.Optional;
 
@@ -58,22 +62,31 @@ public class DoubleSemanticsVisitor implements DisTLFormulaVisitor<Double> {
 
     @Override
     public DisTLFunction<Double> evalAlways(AlwaysDisTLFormula alwaysDisTLFormula) {
-        DisTLFunction<Double> argumentFunction = alwaysDisTLFormula.getArgument().eval(this);
+        RobustnessSignal argumentSignal = signal(alwaysDisTLFormula.getArgument());
         int from = alwaysDisTLFormula.getFrom();
         int to = alwaysDisTLFormula.getTo();
-        return (sampleSize, step, sequence) ->
-                maybeParallelize(IntStream.range(from, to+1))
-                        .mapToDouble(i ->
-                                argumentFunction.eval(sampleSize, step+i, sequence))
-                        .min().orElse(Double.NaN);
+        return new RobustnessSignal((sampleSize, first, last, sequence) -> {
+            if (to < from) {
+                return RobustnessSignal.filled(first, last, Double.NaN);
+            }
+            return Util.slidingMin(argumentSignal.eval(sampleSize, first+from, last+to, sequence), to-from+1);
+        }, true);
     }
 
     @Override
     public DisTLFunction<Double> evalBrink(BrinkDisTLFormula brinkDisTLFormula){
+        return pointwise(brinkFunction(brinkDisTLFormula));
+    }
+
+    private DisTLFunction<Double> brinkFunction(BrinkDisTLFormula brinkDisTLFormula){
         DataStateFunction mu = brinkDisTLFormula.getDistribution();
         Optional<DataStateExpression> rho = brinkDisTLFormula.getRho();
         Penalty P = brinkDisTLFormula.getP();
         double q = brinkDisTLFormula.getThreshold();
+        Optional<PenaltyShift> shift = brinkDisTLFormula.getShift();
+        if (shift.isPresent() && rho.isPresent()) {
+            return (sampleSize, step, sequence) -> sequence.get(step).getEcdfIndex(rho.get()).distanceLeq(shift.get()) - q;
+        }
         if (brinkDisTLFormula.getSampledDistribution().size() ==0) {
         return rho.<DisTLFunction<Double>>map(
                 dataStateExpression -> (sampleSize, step, sequence)
@@ -97,52 +110,69 @@ public class DoubleSemanticsVisitor implements DisTLFormulaVisitor<Double> {
 
     @Override
     public DisTLFunction<Double> evalConjunction(ConjunctionDisTLFormula conjunctionDisTLFormula) {
-        DisTLFunction<Double> leftFunction = conjunctionDisTLFormula.getLeftFormula().eval(this);
-        DisTLFunction<Double> rightFunction = conjunctionDisTLFormula.getRightFormula().eval(this);
-        return (sampleSize, step, sequence) -> Math.min(leftFunction.eval(sampleSize, step, sequence), rightFunction.eval(sampleSize, step, sequence));
+        RobustnessSignal leftSignal = signal(conjunctionDisTLFormula.getLeftFormula());
+        RobustnessSignal rightSignal = signal(conjunctionDisTLFormula.getRightFormula());
+        return combine(leftSignal, rightSignal, Math::min);
     }
 
     @Override
     public DisTLFunction<Double> evalDisjunction(DisjunctionDisTLFormula disjunctionDisTLFormula) {
-        DisTLFunction<Double> leftFunction = disjunctionDisTLFormula.getLeftFormula().eval(this);
-        DisTLFunction<Double> rightFunction = disjunctionDisTLFormula.getRightFormula().eval(this);
-        return (sampleSize, step, sequence) -> Math.max(leftFunction.eval(sampleSize, step, sequence),rightFunction.eval(sampleSize, step, sequence));
+        RobustnessSignal leftSignal = signal(disjunctionDisTLFormula.getLeftFormula());
+        RobustnessSignal rightSignal = signal(disjunctionDisTLFormula.getRightFormula());
+        return combine(leftSignal, rightSignal, Math::max);
     }
 
     @Override
     public DisTLFunction<Double> evalEventually(EventuallyDisTLFormula eventuallyDisTLFormula) {
-        DisTLFunction<Double> argumentFunction = eventuallyDisTLFormula.getArgument().eval(this);
+        RobustnessSignal argumentSignal = signal(eventuallyDisTLFormula.getArgument());
         int from = eventuallyDisTLFormula.getFrom();
         int to = eventuallyDisTLFormula.getTo();
-        return (sampleSize, step, sequence) -> maybeParallelize(IntStream.range(from, to+1))
-                .mapToDouble(i -> argumentFunction.eval(sampleSize, step+i, sequence)).max().orElse(Double.NaN);
-
+        return new RobustnessSignal((sampleSize, first, last, sequence) -> {
+            if (to < from) {
+                return RobustnessSignal.filled(first, last, Double.NaN);
+            }
+            return Util.slidingMax(argumentSignal.eval(sampleSize, first+from, last+to, sequence), to-from+1);
+        }, true);
     }
 
     @Override
     public DisTLFunction<Double> evalFalse() {
-        return (sampleSize, step, sequence) -> -1.0;
+        return RobustnessSignal.constant(-1.0);
     }
 
     @Override
     public DisTLFunction<Double> evalImplication(ImplicationDisTLFormula implicationDisTLFormula) {
-        DisTLFunction<Double> leftFunction = implicationDisTLFormula.getLeftFormula().eval(this);
-        DisTLFunction<Double> rightFunction = implicationDisTLFormula.getRightFormula().eval(this);
-        return (sampleSize, step, sequence) -> Math.max(-leftFunction.eval(sampleSize, step, sequence), rightFunction.eval(sampleSize, step, sequence));
+        RobustnessSignal leftSignal = signal(implicationDisTLFormula.getLeftFormula());
+        RobustnessSignal rightSignal = signal(implicationDisTLFormula.getRightFormula());
+        return combine(leftSignal, rightSignal, (l, r) -> Math.max(-l, r));
     }
 
     @Override
     public DisTLFunction<Double> evalNegation(NegationDisTLFormula negationDisTLFormula) {
-        DisTLFunction<Double> argumentFunction = (negationDisTLFormula.getArgument()).eval(this);
-        return (sampleSize, step, sequence) -> - argumentFunction.eval(sampleSize, step, sequence);
+        RobustnessSignal argumentSignal = signal(negationDisTLFormula.getArgument());
+        return new RobustnessSignal((sampleSize, first, last, sequence) -> {
+            double[] values = argumentSignal.eval(sampleSize, first, last, sequence);
+            for (int i = 0; i < values.length; i++) {
+                values[i] = -values[i];
+            }
+            return values;
+        }, false);
     }
 
     @Override
     public DisTLFunction<Double> evalTarget(TargetDisTLFormula targetDisTLFormula) {
+        return pointwise(targetFunction(targetDisTLFormula));
+    }
+
+    private DisTLFunction<Double> targetFunction(TargetDisTLFormula targetDisTLFormula) {
         DataStateFunction mu = targetDisTLFormula.getDistribution();
         Optional<DataStateExpression> rho = targetDisTLFormula.getRho();
         Penalty P = targetDisTLFormula.getP();
         double q = targetDisTLFormula.getThreshold();
+        Optional<PenaltyShift> shift = targetDisTLFormula.getShift();
+        if (shift.isPresent() && rho.isPresent()) {
+            return (sampleSize, step, sequence) -> q - sequence.get(step).getEcdfIndex(rho.get()).distanceGeq(shift.get());
+        }
         if (targetDisTLFormula.getSampledDistribution().size() ==0) {
             return rho.<DisTLFunction<Double>>map(dataStateExpression -> (sampleSize, step, sequence)
                     -> {
@@ -169,29 +199,79 @@ public class DoubleSemanticsVisitor implements DisTLFormulaVisitor<Double> {
 
     @Override
     public DisTLFunction<Double> evalTrue() {
-        return (sampleSize, step, sequence) -> 1.0;
+        return RobustnessSignal.constant(1.0);
     }
 
     @Override
     public DisTLFunction<Double> evalUntil(UntilDisTLFormula untilDisTLFormula) {
-        DisTLFunction<Double> leftFunction = untilDisTLFormula.getLeftFormula().eval(this);
-        DisTLFunction<Double> rightFunction = untilDisTLFormula.getRightFormula().eval(this);
+        RobustnessSignal leftSignal = signal(untilDisTLFormula.getLeftFormula());
+        RobustnessSignal rightSignal = signal(untilDisTLFormula.getRightFormula());
         int from = untilDisTLFormula.getFrom();
         int to = untilDisTLFormula.getTo();
+        return new RobustnessSignal((sampleSize, first, last, sequence) -> {
+            if (to < from) {
+                return RobustnessSignal.filled(first, last, Double.NaN);
+            }
+            double[] right = rightSignal.eval(sampleSize, first+from, last+to, sequence);
+            double[] left = (to > from ? leftSignal.eval(sampleSize, first+from, last+to-1, sequence) : new double[0]);
+            double[] result = new double[last-first+1];
+            maybeParallelize(IntStream.range(0, result.length)).forEach(start -> {
+                // The minimum of the left formula is taken over the steps preceding the current one.
+                double leftMin = Double.POSITIVE_INFINITY;
+                double value = Double.NEGATIVE_INFINITY;
+                for (int i = start; i <= start+to-from; i++) {
+                    value = Math.max(value, Math.min(right[i], leftMin));
+                    if (i < start+to-from) {
+                        leftMin = Math.min(leftMin, left[i]);
+                    }
+                }
+                result[start] = value;
+            });
+            return result;
+        }, true);
+    }
 
-        return(sampleSize, step, sequence) ->
-                maybeParallelize(IntStream.range(step+from, step+to+1)).mapToDouble(
-                        tauPrime -> {
-                            if (tauPrime == from + step){
-                                return rightFunction.eval(sampleSize, tauPrime, sequence);
-                            } else {
-                                return Math.min(
-                                        rightFunction.eval(sampleSize, tauPrime, sequence),
-                                        maybeParallelize(IntStream.range(from+step, tauPrime)).mapToDouble(tauPrimePrime -> leftFunction.eval(sampleSize, tauPrimePrime, sequence))
-                                                .min().orElse(Double.NaN));
-                            }
-                        }).max().orElse(Double.NaN);
+    /**
+     * Returns the robustness signal of the given formula.
+     *
+     * @param formula a DisTL formula.
+     * @return the robustness signal of <code>formula</code>.
+     */
+    private RobustnessSignal signal(UDisTLFormula formula) {
+        DisTLFunction<Double> function = formula.eval(this);
+        return (function instanceof RobustnessSignal signal ? signal : pointwise(function));
+    }
+
+    /**
+     * Returns the memoized signal whose values are obtained by evaluating the given function at each step.
+     *
+     * @param function a function evaluating a formula at a single step.
+     * @return the memoized signal whose values are obtained by evaluating <code>function</code> at each step.
+     */
+    private RobustnessSignal pointwise(DisTLFunction<Double> function) {
+        return new RobustnessSignal((sampleSize, first, last, sequence) ->
+                maybeParallelize(IntStream.rangeClosed(first, last)).mapToDouble(i -> function.eval(sampleSize, i, sequence)).toArray(), true);
+    }
 
+    /**
+     * Returns the signal whose values are obtained by combining the values of the given signals at each step.
+     * Values are not memoized, since the ones of the combined signals are.
+     *
+     * @param leftSignal a robustness signal.
+     * @param rightSignal a robustness signal.
+     * @param operator the operator combining the values of the two signals.
+     * @return the signal whose values are obtained by combining the values of <code>leftSignal</code>
+     * and <code>rightSignal</code> with <code>operator</code>.
+     */
+    private static RobustnessSignal combine(RobustnessSignal leftSignal, RobustnessSignal rightSignal, DoubleBinaryOperator operator) {
+        return new RobustnessSignal((sampleSize, first, last, sequence) -> {
+            double[] values = leftSignal.eval(sampleSize, first, last, sequence);
+            double[] rightValues = rightSignal.eval(sampleSize, first, last, sequence);
+            for (int i = 0; i < values.length; i++) {
+                values[i] = operator.applyAsDouble(values[i], rightValues[i]);
+            }
+            return values;
+        }, false);
     }
 
     private IntStream maybeParallelize(IntStream s){
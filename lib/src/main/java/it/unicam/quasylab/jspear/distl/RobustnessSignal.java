@@ -0,0 +1,180 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.distl;
+
+import it.unicam.quasylab.jspear.EvolutionSequence;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The robustness signal of a DisTL formula, namely the function mapping each step of an evolution sequence to the
+ * evaluation of the formula at that step. Signals are evaluated over intervals of steps, so that temporal operators
+ * can compute the values at consecutive steps together, and the evaluations are memoized for each sequence and
+ * sample size, so that each formula is evaluated at most once per step. Sequences are weakly referenced, and their
+ * evaluations are discarded when the sequences are reclaimed.
+ */
+final class RobustnessSignal implements DisTLFunction<Double> {
+
+    /**
+     * Evaluates a formula at all the steps of an interval.
+     */
+    @FunctionalInterface
+    interface RangeFunction {
+
+        /**
+         * Returns the evaluations of a formula at the steps in <code>[from, to]</code>.
+         *
+         * @param sampleSize size of the sample set used to infer statistical values.
+         * @param from first step.
+         * @param to last step.
+         * @param sequence evolution sequence to evaluate.
+         * @return the evaluations of a formula at the steps in <code>[from, to]</code>.
+         */
+        double[] eval(int sampleSize, int from, int to, EvolutionSequence sequence);
+
+    }
+
+    private final RangeFunction function;
+    private final Map<EvolutionSequence, Map<Integer, Values>> signals;
+
+    /**
+     * Creates the signal computed by the given function.
+     *
+     * @param function function evaluating the formula over intervals of steps.
+     * @param memoized <code>true</code> if the evaluations must be memoized.
+     */
+    RobustnessSignal(RangeFunction function, boolean memoized) {
+        this.function = function;
+        this.signals = (memoized ? Collections.synchronizedMap(new WeakHashMap<>()) : null);
+    }
+
+    /**
+     * Returns the signal whose value is the given constant at each step. Its values are not memoized.
+     *
+     * @param value a real value.
+     * @return the signal whose value is <code>value</code> at each step.
+     */
+    static RobustnessSignal constant(double value) {
+        return new RobustnessSignal((sampleSize, from, to, sequence) -> filled(from, to, value), false);
+    }
+
+    /**
+     * Returns an array of the size of the interval <code>[from, to]</code> filled with the given value.
+     *
+     * @param from first step.
+     * @param to last step.
+     * @param value a real value.
+     * @return an array of the size of the interval <code>[from, to]</code> filled with <code>value</code>.
+     */
+    static double[] filled(int from, int to, double value) {
+        double[] result = new double[Math.max(0, to-from+1)];
+        Arrays.fill(result, value);
+        return result;
+    }
+
+    @Override
+    public Double eval(int sampleSize, int step, EvolutionSequence sequence) {
+        return eval(sampleSize, step, step, sequence)[0];
+    }
+
+    /**
+     * Returns the values of this signal at the steps in <code>[from, to]</code>. Only the values that are not
+     * memoized are computed, one run of consecutive steps at a time.
+     *
+     * @param sampleSize size of the sample set used to infer statistical values.
+     * @param from first step.
+     * @param to last step.
+     * @param sequence evolution sequence to evaluate.
+     * @return the values of this signal at the steps in <code>[from, to]</code>.
+     */
+    double[] eval(int sampleSize, int from, int to, EvolutionSequence sequence) {
+        if ((signals == null)||(to < from)) {
+            return function.eval(sampleSize, from, to, sequence);
+        }
+        Values values = signals.computeIfAbsent(sequence, s -> Collections.synchronizedMap(new HashMap<>()))
+                .computeIfAbsent(sampleSize, n -> new Values());
+        double[] result = new double[to-from+1];
+        int missing = values.copy(from, to, result, from);
+        while (missing <= to) {
+            values.store(missing, function.eval(sampleSize, missing, values.nextComputed(missing, to)-1, sequence));
+            missing = values.copy(missing, to, result, from);
+        }
+        return result;
+    }
+
+    /**
+     * The memoized values of a signal on a sequence for a given sample size.
+     */
+    private static final class Values {
+
+        private double[] values = new double[16];
+        private final BitSet computed = new BitSet();
+
+        /**
+         * Copies the memoized values at the steps in <code>[from, to]</code> into <code>result</code>, whose first
+         * element is the value at step <code>offset</code>, until the first step whose value is not memoized,
+         * and returns that step, or <code>to+1</code> if all the values are memoized.
+         */
+        synchronized int copy(int from, int to, double[] result, int offset) {
+            int step = from;
+            while ((step <= to) && computed.get(step)) {
+                result[step-offset] = values[step];
+                step++;
+            }
+            return step;
+        }
+
+        /**
+         * Returns the first step in <code>[from, to]</code> whose value is memoized, or <code>to+1</code> if there
+         * is none.
+         */
+        synchronized int nextComputed(int from, int to) {
+            int next = computed.nextSetBit(from);
+            return ((next < 0)||(next > to) ? to+1 : next);
+        }
+
+        /**
+         * Memoizes the given values of the steps starting from <code>from</code>. Values that are already memoized
+         * are not replaced.
+         */
+        synchronized void store(int from, double[] newValues) {
+            int last = from+newValues.length;
+            if (last > values.length) {
+                values = Arrays.copyOf(values, Math.max(last, 2*values.length));
+            }
+            for (int i = 0; i < newValues.length; i++) {
+                if (!computed.get(from+i)) {
+                    values[from+i] = newValues[i];
+                    computed.set(from+i);
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.ds;
+
+import java.util.Arrays;
+
+/**
+ * A data state whose values are stored in chunks that are shared, copy-on-write, with the data states
+ * obtained from it. Updating a copy of a chunked data state only copies the chunks containing the
+ * updated cells, hence in models with many variables where each step updates only few of them,
+ * successive states of a trajectory, as well as the replicas of a state, share most of their storage.
+ * <p>
+ * The chunked representation is preserved by {@link #copy()}, and therefore by {@link #apply(java.util.List)}
+ * and {@link #apply(UpdateBuffer)}. Chunked data states should be used for the initial states of wide models:
+ * for small models the plain representation of {@link DataState} is more efficient.
+ */
+public class ChunkedDataState extends DataState {
+
+    private static final int CHUNK_BITS = 5;
+
+    /**
+     * Number of cells in each chunk.
+     */
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final int size;
+    private final Chunk[] chunks;
+
+    /**
+     * Creates a new chunked data state with the variables described by the given schema
+     * that are initialised with the given values <code>data</code>.
+     * Default values are used for time variables.
+     *
+     * @param schema schema of the created data state.
+     * @param data data state values.
+     * @throws IllegalArgumentException if <code>schema.size() != data.length</code>.
+     */
+    public ChunkedDataState(DataStateSchema schema, double[] data) {
+        super(schema);
+        if (schema.size() != data.length) {
+            throw new IllegalArgumentException();
+        }
+        this.size = data.length;
+        this.chunks = new Chunk[(size + CHUNK_MASK) >>> CHUNK_BITS];
+        for (int c = 0; c < chunks.length; c++) {
+            chunks[c] = new Chunk(Arrays.copyOfRange(data, c << CHUNK_BITS, Math.min(size, (c + 1) << CHUNK_BITS)));
+        }
+        if (schema.needsClamping()) {
+            for (int i = 0; i < size; i++) {
+                chunks[i >>> CHUNK_BITS].values[i & CHUNK_MASK] = schema.clamp(i, data[i]);
+            }
+        }
+    }
+
+    private ChunkedDataState(ChunkedDataState source) {
+        super(source.getSchema());
+        this.size = source.size;
+        this.chunks = source.chunks.clone();
+        setTime(source);
+    }
+
+    /**
+     * Returns a chunked data state with the same values, schema and time variables of the given data state.
+     *
+     * @param state a data state.
+     * @return a chunked data state with the same values, schema and time variables of <code>state</code>.
+     */
+    public static ChunkedDataState of(DataState state) {
+        if (state instanceof ChunkedDataState chunkedDataState) {
+            return chunkedDataState.copy();
+        }
+        ChunkedDataState result = new ChunkedDataState(state.getSchema(), state.toArray());
+        result.setTime(state);
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public double get(int i) {
+        if ((i < 0) || (i >= size)) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return chunks[i >>> CHUNK_BITS].values[i & CHUNK_MASK];
+    }
+
+    @Override
+    public void set(int i, double v) {
+        if ((i < 0) || (i >= size)) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        int c = i >>> CHUNK_BITS;
+        Chunk chunk = chunks[c];
+        if (chunk.shared) {
+            chunk = new Chunk(chunk.values.clone());
+            chunks[c] = chunk;
+        }
+        chunk.values[i & CHUNK_MASK] = getSchema().clamp(i, v);
+    }
+
+    @Override
+    public double[] toArray() {
+        double[] result = new double[size];
+        for (int c = 0; c < chunks.length; c++) {
+            System.arraycopy(chunks[c].values, 0, result, c << CHUNK_BITS, chunks[c].values.length);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of this data state that shares all its chunks with this one. Shared chunks are never
+     * modified: they are copied by the first update performed, either on this data state or on the returned one,
+     * on one of their cells. Copying only marks the chunks as shared, hence a data state can be copied
+     * concurrently by different threads, as long as it is not updated in the meantime.
+     *
+     * @return a copy of this data state.
+     */
+    @Override
+    public ChunkedDataState copy() {
+        for (Chunk chunk : chunks) {
+            if (!chunk.shared) {
+                chunk.shared = true;
+            }
+        }
+        return new ChunkedDataState(this);
+    }
+
+    /**
+     * A chunk of values. Once a chunk is shared among different data states, it is never modified again.
+     */
+    private static final class Chunk {
+
+        private final double[] values;
+        private volatile boolean shared;
+
+        private Chunk(double[] values) {
+            this.values = values;
+        }
+
+    }
+
+}
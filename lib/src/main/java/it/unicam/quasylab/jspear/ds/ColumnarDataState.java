@@ -0,0 +1,159 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.ds;
+
+/**
+ * A data state whose values are stored in a row of a set of columns.
+ * Column <code>i</code> contains the values of variable <code>i</code> for all the rows,
+ * hence a collection of data states sharing the same columns is stored contiguously
+ * variable by variable. Updates performed via {@link #set(int, double)} are written
+ * through to the underlying column.
+ */
+public class ColumnarDataState extends DataState {
+
+    private final double[][] columns;
+    private int row;
+
+    /**
+     * Creates a new data state backed by the given row of the given columns.
+     *
+     * @param dataRanges data ranges of the values in the cells.
+     * @param columns columns containing the values, one for each variable.
+     * @param row index of the row containing the values of this data state.
+     * @throws IllegalArgumentException if <code>dataRanges.length != columns.length</code>.
+     */
+    public ColumnarDataState(DataRange[] dataRanges, double[][] columns, int row) {
+        super(dataRanges);
+        if (dataRanges.length != columns.length) {
+            throw new IllegalArgumentException();
+        }
+        this.columns = columns;
+        this.row = row;
+    }
+
+    /**
+     * Creates a new data state with the given schema backed by the given row of the given columns.
+     *
+     * @param schema schema of the data state.
+     * @param columns columns containing the values, one for each variable.
+     * @param row index of the row containing the values of this data state.
+     * @throws IllegalArgumentException if <code>schema.size() != columns.length</code>.
+     */
+    public ColumnarDataState(DataStateSchema schema, double[][] columns, int row) {
+        super(schema);
+        if (schema.size() != columns.length) {
+            throw new IllegalArgumentException();
+        }
+        this.columns = columns;
+        this.row = row;
+    }
+
+    /**
+     * Returns a data state backed by the given row of the given columns having the same
+     * data ranges and time variables of the given data state. Values of <code>source</code>
+     * are not copied into the columns.
+     *
+     * @param source a data state.
+     * @param columns columns containing the values, one for each variable.
+     * @param row index of the row containing the values of the returned data state.
+     * @return a data state backed by row <code>row</code> of <code>columns</code>
+     * with the same ranges and time variables of <code>source</code>.
+     */
+    public static ColumnarDataState of(DataState source, double[][] columns, int row) {
+        ColumnarDataState result = new ColumnarDataState(source.getSchema(), columns, row);
+        result.setTime(source);
+        return result;
+    }
+
+    /**
+     * Returns the index of the row containing the values of this data state.
+     *
+     * @return the index of the row containing the values of this data state.
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Moves this data state to the given row. This method is used to scan the columns
+     * with a single cursor, without allocating a data state for each row.
+     *
+     * @param row index of the new row.
+     * @return this data state.
+     */
+    public ColumnarDataState moveTo(int row) {
+        this.row = row;
+        return this;
+    }
+
+    /**
+     * Returns <code>true</code> if the given data state is backed by the row that follows the one of this data
+     * state by the given offset in the same columns.
+     *
+     * @param other a data state.
+     * @param offset distance between the rows.
+     * @return <code>true</code> if <code>other</code> is backed by row <code>getRow()+offset</code> of the columns
+     * backing this data state.
+     */
+    public boolean precedes(DataState other, int offset) {
+        return (other instanceof ColumnarDataState columnarDataState) && (columnarDataState.columns == this.columns) && (columnarDataState.row == this.row + offset);
+    }
+
+    /**
+     * Copies the values of the given number of rows, starting from the one of this data state, at the
+     * beginning of the given columns.
+     *
+     * @param rows number of rows to copy.
+     * @param target columns where the values are copied, one for each variable.
+     */
+    public void copyRows(int rows, double[][] target) {
+        for (int i = 0; i < columns.length; i++) {
+            System.arraycopy(columns[i], row, target[i], 0, rows);
+        }
+    }
+
+    @Override
+    public int size() {
+        return columns.length;
+    }
+
+    @Override
+    public double get(int i) {
+        return columns[i][row];
+    }
+
+    @Override
+    public void set(int i, double v) {
+        columns[i][row] = getSchema().clamp(i, v);
+    }
+
+    @Override
+    public double[] toArray() {
+        double[] values = new double[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = columns[i][row];
+        }
+        return values;
+    }
+
+}
@@ -26,7 +26,6 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.function.IntToDoubleFunction;
 import java.util.function.Predicate;
-import java.util.stream.IntStream;
 
 /**
  * A data state is an object associating variables with values.
@@ -35,14 +34,8 @@ import java.util.stream.IntStream;
 public class DataState {
 
     private final double[] data;
-    private final DataRange[] dataRanges;
-    private double timeStep = 0.0;
-    private double granularity = 1.0;
-    private double timeReal = 0.0;
-    private double timeDelta = 0.0;
-
-
-    private int step = 0;
+    private final DataStateSchema schema;
+    private DataStateTime time = DataStateTime.INITIAL;
 
     /**
      * Creates a new data state with the given number of cells.
@@ -63,7 +56,7 @@ public class DataState {
      * @param data values in the data state.
      */
     public DataState(double[] data) {
-        this(IntStream.range(0, data.length).mapToObj(i -> new DataRange()).toArray(DataRange[]::new), data);
+        this(DataStateSchema.unbounded(data.length), data);
     }
 
     /**
@@ -77,11 +70,8 @@ public class DataState {
      * @param Tdelta initial value for time delta.
      */
     public DataState(double[] data, double gran, double Tstep, double Treal, double Tdelta) {
-        this(IntStream.range(0, data.length).mapToObj(i -> new DataRange()).toArray(DataRange[]::new), data);
-        this.granularity = gran;
-        this.timeStep = Tstep;
-        this.timeReal = Treal;
-        this.timeDelta = Tdelta;
+        this(DataStateSchema.unbounded(data.length), data);
+        this.time = new DataStateTime(0, Tstep, gran, Treal, Tdelta);
     }
 
     /**
@@ -92,8 +82,7 @@ public class DataState {
      * @param Tstep initial time step value.
      */
     public DataState(double[] data, int Tstep) {
-        this(IntStream.range(0, data.length).mapToObj(i -> new DataRange()).toArray(DataRange[]::new), data);
-        this.step = Tstep;
+        this(DataStateSchema.unbounded(data.length), data, Tstep);
     }
 
     /**
@@ -106,7 +95,7 @@ public class DataState {
      * @param initFunction function used to initialise the values.
      */
     public DataState(int size, IntToDoubleFunction initFunction) {
-        this(DataRange.getDefaultRangeArray(size), initFunction);
+        this(DataStateSchema.unbounded(size), initFunction);
     }
 
     /**
@@ -121,8 +110,7 @@ public class DataState {
      * @param Tstep initial time step value.
      */
     public DataState(int size, IntToDoubleFunction initFunction, int Tstep) {
-        this(DataRange.getDefaultRangeArray(size), initFunction);
-        this.step = Tstep;
+        this(DataStateSchema.unbounded(size), initFunction, Tstep);
     }
 
     /**
@@ -134,7 +122,7 @@ public class DataState {
      * @param dataRanges data ranges of the values in the cells.
      */
     public DataState(DataRange[] dataRanges, IntToDoubleFunction initFunction) {
-        this(dataRanges, IntStream.range(0, dataRanges.length).mapToDouble(initFunction).toArray());
+        this(DataStateSchema.of(dataRanges), initFunction);
     }
 
     /**
@@ -152,11 +140,8 @@ public class DataState {
      * @param Tdelta initial value for time delta.
      */
     public DataState(int size, IntToDoubleFunction initFunction, double gran, double Tstep, double Treal, double Tdelta) {
-        this(DataRange.getDefaultRangeArray(size), initFunction);
-        this.granularity = gran;
-        this.timeStep = Tstep;
-        this.timeReal = Treal;
-        this.timeDelta = Tdelta;
+        this(DataStateSchema.unbounded(size), initFunction);
+        this.time = new DataStateTime(0, Tstep, gran, Treal, Tdelta);
     }
 
     /**
@@ -171,8 +156,7 @@ public class DataState {
      * @param Tstep initial time step value.
      */
     public DataState(DataRange[] dataRanges, IntToDoubleFunction initFunction, int Tstep) {
-        this(dataRanges, IntStream.range(0, dataRanges.length).mapToDouble(initFunction).toArray());
-        this.step = Tstep;
+        this(DataStateSchema.of(dataRanges), initFunction, Tstep);
     }
 
     /**
@@ -186,11 +170,72 @@ public class DataState {
      * @throws IllegalArgumentException if <code>dataRanges.length != data.length</code>.
      */
     public DataState(DataRange[] dataRanges, double[] data) {
-        if (dataRanges.length != data.length) {
+        this(DataStateSchema.of(dataRanges), data);
+    }
+
+    /**
+     * Creates a new data state with the variables described by the given schema
+     * that are initialised with the given values <code>data</code>.
+     * Default values are used for time variables.
+     *
+     * @param schema schema of the created data state.
+     * @param data data state values.
+     * @throws IllegalArgumentException if <code>schema.size() != data.length</code>.
+     */
+    public DataState(DataStateSchema schema, double[] data) {
+        if (schema.size() != data.length) {
             throw new IllegalArgumentException();
         }
-        this.data = DataRange.apply(dataRanges, data);
-        this.dataRanges = dataRanges;
+        this.data = schema.clamp(Arrays.copyOf(data, data.length));
+        this.schema = schema;
+    }
+
+    /**
+     * Creates a new data state with the variables described by the given schema. Values in the data state are
+     * initialised by assigning to the cell in position <code>i</code> the value <code>initFunction.applyAsDouble(i)</code>.
+     * Default values are used for time variables.
+     *
+     * @param schema schema of the created data state.
+     * @param initFunction function used to initialise the values.
+     */
+    public DataState(DataStateSchema schema, IntToDoubleFunction initFunction) {
+        double[] values = new double[schema.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = initFunction.applyAsDouble(i);
+        }
+        this.data = schema.clamp(values);
+        this.schema = schema;
+    }
+
+    /**
+     * Creates a new data state with the variables described by the given schema
+     * that are initialised with the given values <code>data</code>.
+     * Default values are used for time variables.
+     * Step is initialised individually.
+     *
+     * @param schema schema of the created data state.
+     * @param data data state values.
+     * @param Tstep initial time step value.
+     * @throws IllegalArgumentException if <code>schema.size() != data.length</code>.
+     */
+    public DataState(DataStateSchema schema, double[] data, int Tstep) {
+        this(schema, data);
+        this.time = DataStateTime.INITIAL.withStep(Tstep);
+    }
+
+    /**
+     * Creates a new data state with the variables described by the given schema. Values in the data state are
+     * initialised by assigning to the cell in position <code>i</code> the value <code>initFunction.applyAsDouble(i)</code>.
+     * Default values are used for time variables.
+     * Step is initialised individually.
+     *
+     * @param schema schema of the created data state.
+     * @param initFunction function used to initialise the values.
+     * @param Tstep initial time step value.
+     */
+    public DataState(DataStateSchema schema, IntToDoubleFunction initFunction, int Tstep) {
+        this(schema, initFunction);
+        this.time = DataStateTime.INITIAL.withStep(Tstep);
     }
 
     /**
@@ -207,11 +252,8 @@ public class DataState {
      * @param Tdelta initial value for time delta.
      */
     public DataState(DataRange[] dataRanges, IntToDoubleFunction initFunction, double gran, double Tstep, double Treal, double Tdelta) {
-        this(dataRanges, IntStream.range(0, dataRanges.length).mapToDouble(initFunction).toArray());
-        this.granularity = gran;
-        this.timeStep = Tstep;
-        this.timeReal = Treal;
-        this.timeDelta = Tdelta;
+        this(DataStateSchema.of(dataRanges), initFunction);
+        this.time = new DataStateTime(0, Tstep, gran, Treal, Tdelta);
     }
 
     /**
@@ -226,12 +268,7 @@ public class DataState {
      * @throws IllegalArgumentException if <code>dataRanges.length != data.length</code>.
      */
     public DataState(DataRange[] dataRanges, double[] data, int Tstep) {
-        if (dataRanges.length != data.length) {
-            throw new IllegalArgumentException();
-        }
-        this.data = DataRange.apply(dataRanges, data);
-        this.dataRanges = dataRanges;
-        this.step = Tstep;
+        this(DataStateSchema.of(dataRanges), data, Tstep);
     }
 
     /**
@@ -248,15 +285,47 @@ public class DataState {
      * @throws IllegalArgumentException if <code>dataRanges.length != data.length</code>.
      */
     public DataState(DataRange[] dataRanges, double[] data, double gran, double Tstep, double Treal, double Tdelta) {
-        if (dataRanges.length != data.length) {
-            throw new IllegalArgumentException();
-        }
-        this.data = DataRange.apply(dataRanges, data);
-        this.dataRanges = dataRanges;
-        this.granularity = gran;
-        this.timeStep = Tstep;
-        this.timeReal = Treal;
-        this.timeDelta = Tdelta;
+        this(DataStateSchema.of(dataRanges), data);
+        this.time = new DataStateTime(0, Tstep, gran, Treal, Tdelta);
+    }
+
+    /**
+     * Creates a data state whose values are not stored in a local array.
+     * This constructor is used by subclasses that provide a different storage
+     * for the values, and that override methods {@link #size()}, {@link #get(int)},
+     * {@link #set(int, double)} and {@link #toArray()} accordingly.
+     *
+     * @param dataRanges data ranges of the values in the cells.
+     */
+    protected DataState(DataRange[] dataRanges) {
+        this(DataStateSchema.of(dataRanges));
+    }
+
+    /**
+     * Creates a data state whose values are not stored in a local array.
+     * This constructor is used by subclasses that provide a different storage
+     * for the values, and that override methods {@link #size()}, {@link #get(int)},
+     * {@link #set(int, double)} and {@link #toArray()} accordingly.
+     *
+     * @param schema schema of the data state.
+     */
+    protected DataState(DataStateSchema schema) {
+        this.data = null;
+        this.schema = schema;
+    }
+
+    /**
+     * Creates a data state that stores the given values, which are assumed to comply with the given schema,
+     * and that has the same time variables of the given data state.
+     *
+     * @param schema schema of the data state.
+     * @param data values of the cells, used without copy.
+     * @param time data state providing the values of time variables.
+     */
+    private DataState(DataStateSchema schema, double[] data, DataState time) {
+        this.data = data;
+        this.schema = schema;
+        this.time = time.time;
     }
 
     /**
@@ -353,10 +422,10 @@ public class DataState {
      */
     public IntToDoubleFunction get(int from, int to) {
         return i -> {
-            if ((i<0)||(i+from>to)||(i+from>this.data.length)) {
+            if ((i<0)||(i+from>to)||(i+from>this.size())) {
                 throw new ArrayIndexOutOfBoundsException();
             }
-            return this.data[from+i];
+            return this.get(from+i);
         };
     }
 
@@ -364,16 +433,16 @@ public class DataState {
      * Get the values of time variables.
      */
     public double getTimeStep(){
-        return this.timeStep;
+        return this.time.timeStep();
     }
     public double getTimeReal(){
-        return this.timeReal;
+        return this.time.timeReal();
     }
     public double getGranularity(){
-        return this.granularity;
+        return this.time.granularity();
     }
     public double getTimeDelta(){
-        return this.timeDelta;
+        return this.time.timeDelta();
     }
 
     /**
@@ -382,7 +451,7 @@ public class DataState {
      */
 
     public int getStep(){
-        return this.step;
+        return this.time.step();
     }
 
     /**
@@ -392,23 +461,23 @@ public class DataState {
      * @param v value to assign to the cell.
      */
     public void set(int i, double v) {
-        this.data[i] = this.dataRanges[i].apply(v);
+        this.data[i] = this.schema.clamp(i, v);
     }
 
     /**
      * Set the values of time variables.
      */
     public void setTimeStep(double t){
-        this.timeStep = t;
+        this.time = this.time.withTimeStep(t);
     }
     public void setTimeReal(double t){
-        this.timeReal = t;
+        this.time = this.time.withTimeReal(t);
     }
     public void setGranularity(double t){
-        this.granularity = t;
+        this.time = this.time.withGranularity(t);
     }
     public void setTimeDelta(double t){
-        this.timeDelta = t;
+        this.time = this.time.withTimeDelta(t);
     }
 
     /**
@@ -418,7 +487,7 @@ public class DataState {
      */
 
     public void setStep(int newStep){
-        this.step = newStep;
+        this.time = this.time.withStep(newStep);
     }
 
     /**
@@ -428,7 +497,43 @@ public class DataState {
      * @return the data range associated with the cell in position i.
      */
     public DataRange getDataRange(int i) {
-        return dataRanges[i];
+        return schema.getRange(i);
+    }
+
+    /**
+     * Returns the data ranges associated with the cells of this data state.
+     *
+     * @return the data ranges associated with the cells of this data state.
+     */
+    DataRange[] getDataRanges() {
+        return schema.getRanges();
+    }
+
+    /**
+     * Returns the schema of this data state.
+     *
+     * @return the schema of this data state.
+     */
+    public DataStateSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Copies the values of time variables of the given data state into this data state.
+     *
+     * @param other a data state.
+     */
+    public void setTime(DataState other) {
+        this.time = other.time;
+    }
+
+    /**
+     * Returns a copy of the values stored in this data state.
+     *
+     * @return an array containing the values stored in this data state.
+     */
+    public double[] toArray() {
+        return Arrays.copyOf(this.data, this.data.length);
     }
 
     /**
@@ -438,16 +543,35 @@ public class DataState {
      * @return the data state obtained from this data state by applying the given updates.
      */
     public DataState apply(List<DataStateUpdate> updates) {
-        DataState newDataState = new DataState(this.dataRanges, data);
-        updates.forEach(newDataState::apply);
-        newDataState.setGranularity(this.getGranularity());
-        newDataState.setTimeStep(this.getTimeStep());
-        newDataState.setTimeReal(this.getTimeReal());
-        newDataState.setTimeDelta(this.getTimeDelta());
-        newDataState.setStep(this.getStep());
+        DataState newDataState = copy();
+        for (DataStateUpdate update : updates) {
+            newDataState.apply(update);
+        }
+        return newDataState;
+    }
+
+    /**
+     * Returns a new data state with the same data as this data state plus the updates in the given buffer applied.
+     *
+     * @param updates buffer of updates to apply.
+     * @return the data state obtained from this data state by applying the given updates.
+     */
+    public DataState apply(UpdateBuffer updates) {
+        DataState newDataState = copy();
+        updates.applyTo(newDataState);
         return newDataState;
     }
 
+    /**
+     * Returns a copy of this data state, with the same values, data ranges and time variables.
+     * The returned data state is stored in memory and can be modified without affecting this one.
+     *
+     * @return a copy of this data state.
+     */
+    public DataState copy() {
+        return new DataState(this.schema, toArray(), this);
+    }
+
     /**
      * Applies a given update to this data state.
      *
@@ -462,7 +586,7 @@ public class DataState {
      * @return The string representation of the array of values.
      */
     public String toString(){
-        return Arrays.toString(this.data);
+        return Arrays.toString(toArray());
     }
 
 
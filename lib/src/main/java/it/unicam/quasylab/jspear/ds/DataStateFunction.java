@@ -25,6 +25,7 @@ package it.unicam.quasylab.jspear.ds;
 import org.apache.commons.math3.random.RandomGenerator;
 
 import java.util.List;
+import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 
 /**
@@ -47,6 +48,42 @@ public interface DataStateFunction {
      */
     DataState apply(RandomGenerator rg, DataState ds);
 
+    /**
+     * Samples an outcome of this function that may be obtained by modifying the given data state in place.
+     * This method is invoked when <code>ds</code> is not shared, so that functions that write their effects
+     * directly into it avoid the allocation of a new data state. By default, {@link #apply(RandomGenerator, DataState)}
+     * is used.
+     *
+     * @param rg random generator used to evaluate random expressions.
+     * @param ds a data state that can be modified.
+     * @return a data state sampled among the ones reachable in one step from ds, possibly <code>ds</code> itself.
+     */
+    default DataState applyInPlace(RandomGenerator rg, DataState ds) {
+        return apply(rg, ds);
+    }
+
+    /**
+     * Returns the function that updates data states in place via the given procedure. When the function is
+     * applied to a data state that cannot be modified, the procedure is applied to a copy of it.
+     *
+     * @param update procedure that modifies a data state.
+     * @return the function that updates data states in place via <code>update</code>.
+     */
+    static DataStateFunction inPlace(BiConsumer<RandomGenerator, DataState> update) {
+        return new DataStateFunction() {
+            @Override
+            public DataState apply(RandomGenerator rg, DataState ds) {
+                return applyInPlace(rg, ds.copy());
+            }
+
+            @Override
+            public DataState applyInPlace(RandomGenerator rg, DataState ds) {
+                update.accept(rg, ds);
+                return ds;
+            }
+        };
+    }
+
     /**
      * Returns the composition of this function with a given one.
      *
@@ -54,7 +91,17 @@ public interface DataStateFunction {
      * @return the outcome of the application of this function followed by the application of <code>other</code>.
      */
     default DataStateFunction compose(DataStateFunction other) {
-        return (rg, ds) -> other.apply(rg, this.apply(rg, ds));
+        return new DataStateFunction() {
+            @Override
+            public DataState apply(RandomGenerator rg, DataState ds) {
+                return other.apply(rg, DataStateFunction.this.apply(rg, ds));
+            }
+
+            @Override
+            public DataState applyInPlace(RandomGenerator rg, DataState ds) {
+                return other.applyInPlace(rg, DataStateFunction.this.applyInPlace(rg, ds));
+            }
+        };
     }
 
 
@@ -0,0 +1,238 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.ds;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The schema of a data state describes its variables: their number, their names and the data ranges
+ * of their values. Schemas are immutable and are shared by all the data states of a model, so that
+ * each state only needs to store its values. Schemas are interned: as long as a schema is in use, any
+ * other schema with the same names and the same ranges is the same object. The registry of interned
+ * schemas only holds weak references, so that schemas that are no longer used can be collected.
+ * Data states that are derived from existing ones should be created from the schema of the latter,
+ * which is never interned again.
+ */
+public final class DataStateSchema {
+
+    private static final int UNBOUNDED_CACHE_SIZE = 256;
+
+    private static final DataStateSchema[] UNBOUNDED = new DataStateSchema[UNBOUNDED_CACHE_SIZE];
+
+    private static final Map<Key, WeakReference<DataStateSchema>> SCHEMAS = new WeakHashMap<>();
+
+    private final Key key;
+    private final String[] names;
+    private final DataRange[] ranges;
+    private final boolean[] bounded;
+    private final boolean clamping;
+
+    private DataStateSchema(Key key, String[] names, DataRange[] ranges) {
+        this.key = key;
+        this.names = names;
+        this.ranges = ranges;
+        this.bounded = new boolean[ranges.length];
+        boolean clamping = false;
+        for (int i = 0; i < ranges.length; i++) {
+            this.bounded[i] = (ranges[i].minValue() != Double.NEGATIVE_INFINITY) || (ranges[i].maxValue() != Double.POSITIVE_INFINITY);
+            clamping |= this.bounded[i];
+        }
+        this.clamping = clamping;
+    }
+
+    /**
+     * Returns the schema of data states with the given number of unnamed variables, that can assume
+     * values in the interval [{@link Double#NEGATIVE_INFINITY}, {@link Double#POSITIVE_INFINITY}].
+     *
+     * @param size number of variables.
+     * @return the schema of data states with <code>size</code> unbounded variables.
+     */
+    public static DataStateSchema unbounded(int size) {
+        if ((size < 0) || (size >= UNBOUNDED_CACHE_SIZE)) {
+            return of(DataRange.getDefaultRangeArray(size));
+        }
+        DataStateSchema schema = UNBOUNDED[size];
+        if (schema == null) {
+            schema = of(DataRange.getDefaultRangeArray(size));
+            UNBOUNDED[size] = schema;
+        }
+        return schema;
+    }
+
+    /**
+     * Returns the schema of data states with unnamed variables whose values range in the given data ranges.
+     *
+     * @param ranges data ranges of the variables.
+     * @return the schema of data states whose variable <code>i</code> ranges in <code>ranges[i]</code>.
+     */
+    public static DataStateSchema of(DataRange[] ranges) {
+        return of(null, ranges);
+    }
+
+    /**
+     * Returns the schema of data states with the given variables whose values range in the given data ranges.
+     *
+     * @param names names of the variables, or <code>null</code> if variables are unnamed.
+     * @param ranges data ranges of the variables.
+     * @return the schema of data states whose variable <code>i</code> is named <code>names[i]</code>
+     * and ranges in <code>ranges[i]</code>.
+     * @throws IllegalArgumentException if <code>names.length != ranges.length</code>.
+     */
+    public static DataStateSchema of(String[] names, DataRange[] ranges) {
+        if ((names != null) && (names.length != ranges.length)) {
+            throw new IllegalArgumentException("Names and ranges must have the same length!");
+        }
+        String[] namesCopy = (names == null ? null : names.clone());
+        DataRange[] rangesCopy = ranges.clone();
+        Key key = new Key(namesCopy == null ? List.of() : List.of(namesCopy), List.of(rangesCopy));
+        synchronized (SCHEMAS) {
+            WeakReference<DataStateSchema> reference = SCHEMAS.get(key);
+            DataStateSchema schema = (reference == null ? null : reference.get());
+            if (schema == null) {
+                schema = new DataStateSchema(key, namesCopy, rangesCopy);
+                SCHEMAS.put(key, new WeakReference<>(schema));
+            }
+            return schema;
+        }
+    }
+
+    /**
+     * Returns the number of variables in this schema.
+     *
+     * @return the number of variables in this schema.
+     */
+    public int size() {
+        return ranges.length;
+    }
+
+    /**
+     * Returns the name of the variable with the given index, or <code>null</code> if variables are unnamed.
+     *
+     * @param i index of a variable.
+     * @return the name of the variable with index <code>i</code>.
+     */
+    public String getName(int i) {
+        return (names == null ? null : names[i]);
+    }
+
+    /**
+     * Returns the index of the variable with the given name, or <code>-1</code> if no such variable exists.
+     *
+     * @param name a variable name.
+     * @return the index of the variable with the given name.
+     */
+    public int indexOf(String name) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the data range of the variable with the given index.
+     *
+     * @param i index of a variable.
+     * @return the data range of the variable with index <code>i</code>.
+     */
+    public DataRange getRange(int i) {
+        return ranges[i];
+    }
+
+    /**
+     * Returns the data ranges of the variables in this schema. The returned array must not be modified.
+     *
+     * @return the data ranges of the variables in this schema.
+     */
+    DataRange[] getRanges() {
+        return ranges;
+    }
+
+    /**
+     * Returns <code>true</code> if the variable with the given index has a bounded data range.
+     *
+     * @param i index of a variable.
+     * @return <code>true</code> if the values of variable <code>i</code> have to be clamped.
+     */
+    public boolean isBounded(int i) {
+        return bounded[i];
+    }
+
+    /**
+     * Returns <code>true</code> if at least one variable in this schema has a bounded data range.
+     *
+     * @return <code>true</code> if values of some variable have to be clamped.
+     */
+    public boolean needsClamping() {
+        return clamping;
+    }
+
+    /**
+     * Returns the value that variable <code>i</code> assumes when it is assigned the value <code>v</code>.
+     *
+     * @param i index of a variable.
+     * @param v a value.
+     * @return the value <code>v</code> clamped in the data range of variable <code>i</code>.
+     */
+    public double clamp(int i, double v) {
+        return (bounded[i] ? ranges[i].apply(v) : v);
+    }
+
+    /**
+     * Clamps, in place, each value in the given array in the data range of the corresponding variable.
+     *
+     * @param values values of the variables.
+     * @return the array <code>values</code>.
+     */
+    public double[] clamp(double[] values) {
+        if (clamping) {
+            for (int i = 0; i < values.length; i++) {
+                if (bounded[i]) {
+                    values[i] = ranges[i].apply(values[i]);
+                }
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < ranges.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(names == null ? "x" + i : names[i]).append(": ").append(ranges[i]);
+        }
+        return builder.append("]").toString();
+    }
+
+    private record Key(List<String> names, List<DataRange> ranges) {}
+
+}
@@ -0,0 +1,108 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.ds;
+
+/**
+ * The time variables of a data state. Instances are immutable, so that states having the same time
+ * variables, like all the states of a sample set at a given step, can share a single instance.
+ */
+final class DataStateTime {
+
+    static final DataStateTime INITIAL = new DataStateTime(0, 0.0, 1.0, 0.0, 0.0);
+
+    private final int step;
+    private final double timeStep;
+    private final double granularity;
+    private final double timeReal;
+    private final double timeDelta;
+
+    private volatile DataStateTime next;
+
+    DataStateTime(int step, double timeStep, double granularity, double timeReal, double timeDelta) {
+        this.step = step;
+        this.timeStep = timeStep;
+        this.granularity = granularity;
+        this.timeReal = timeReal;
+        this.timeDelta = timeDelta;
+    }
+
+    int step() {
+        return step;
+    }
+
+    double timeStep() {
+        return timeStep;
+    }
+
+    double granularity() {
+        return granularity;
+    }
+
+    double timeReal() {
+        return timeReal;
+    }
+
+    double timeDelta() {
+        return timeDelta;
+    }
+
+    /**
+     * Returns the time variables obtained from these ones by setting the step to the given value.
+     * The successor of this instance is cached, so that states that move to the next step together
+     * share the same instance.
+     *
+     * @param step new value of the step.
+     * @return the time variables with the given step.
+     */
+    DataStateTime withStep(int step) {
+        if (step == this.step) {
+            return this;
+        }
+        if (step != this.step + 1) {
+            return new DataStateTime(step, timeStep, granularity, timeReal, timeDelta);
+        }
+        DataStateTime result = next;
+        if (result == null) {
+            result = new DataStateTime(step, timeStep, granularity, timeReal, timeDelta);
+            next = result;
+        }
+        return result;
+    }
+
+    DataStateTime withTimeStep(double timeStep) {
+        return (timeStep == this.timeStep ? this : new DataStateTime(step, timeStep, granularity, timeReal, timeDelta));
+    }
+
+    DataStateTime withGranularity(double granularity) {
+        return (granularity == this.granularity ? this : new DataStateTime(step, timeStep, granularity, timeReal, timeDelta));
+    }
+
+    DataStateTime withTimeReal(double timeReal) {
+        return (timeReal == this.timeReal ? this : new DataStateTime(step, timeStep, granularity, timeReal, timeDelta));
+    }
+
+    DataStateTime withTimeDelta(double timeDelta) {
+        return (timeDelta == this.timeDelta ? this : new DataStateTime(step, timeStep, granularity, timeReal, timeDelta));
+    }
+
+}
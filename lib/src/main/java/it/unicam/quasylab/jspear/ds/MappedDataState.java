@@ -0,0 +1,102 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.ds;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * A read-only data state whose values are stored in a buffer, typically mapped from a file.
+ * The buffer contains the values of a set of samples variable by variable: the value of
+ * variable <code>i</code> for sample <code>row</code> is at position <code>i*samples+row</code>.
+ * Values are never copied from the buffer, and any attempt to modify them raises an
+ * {@link UnsupportedOperationException}. Updates via {@link #apply(java.util.List)} produce
+ * a new data state stored in memory.
+ */
+public class MappedDataState extends DataState {
+
+    private final DoubleBuffer values;
+    private final int samples;
+    private final int row;
+
+    /**
+     * Creates a new data state backed by the given row of the given buffer.
+     *
+     * @param dataRanges data ranges of the values in the cells.
+     * @param values buffer containing the values of all the samples, variable by variable.
+     * @param samples number of samples stored in the buffer.
+     * @param row index of the sample containing the values of this data state.
+     * @throws IllegalArgumentException if the buffer does not contain <code>samples</code> values for each variable,
+     * or if <code>row</code> is not a valid sample index.
+     */
+    public MappedDataState(DataRange[] dataRanges, DoubleBuffer values, int samples, int row) {
+        this(DataStateSchema.of(dataRanges), values, samples, row);
+    }
+
+    /**
+     * Creates a new data state with the given schema backed by the given row of the given buffer.
+     *
+     * @param schema schema of the data state.
+     * @param values buffer containing the values of all the samples, variable by variable.
+     * @param samples number of samples stored in the buffer.
+     * @param row index of the sample containing the values of this data state.
+     * @throws IllegalArgumentException if the buffer does not contain <code>samples</code> values for each variable,
+     * or if <code>row</code> is not a valid sample index.
+     */
+    public MappedDataState(DataStateSchema schema, DoubleBuffer values, int samples, int row) {
+        super(schema);
+        if ((values.capacity() < schema.size() * samples) || (row < 0) || (row >= samples)) {
+            throw new IllegalArgumentException();
+        }
+        this.values = values;
+        this.samples = samples;
+        this.row = row;
+    }
+
+    @Override
+    public int size() {
+        return getSchema().size();
+    }
+
+    @Override
+    public double get(int i) {
+        if ((i < 0) || (i >= size())) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return values.get(i * samples + row);
+    }
+
+    @Override
+    public void set(int i, double v) {
+        throw new UnsupportedOperationException("Mapped data states cannot be modified");
+    }
+
+    @Override
+    public double[] toArray() {
+        double[] result = new double[size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i * samples + row);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.ds;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A growable buffer of updates on a data state. Updates are stored in two primitive arrays, one for the indexes
+ * and one for the values, so that adding an update does not allocate any object. Buffers are meant to be reused:
+ * each thread owns a buffer that can be obtained via {@link #acquire()} and returned via {@link #release()}.
+ */
+public final class UpdateBuffer {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private static final ThreadLocal<UpdateBuffer> LOCAL = ThreadLocal.withInitial(UpdateBuffer::new);
+
+    private int[] indexes;
+    private double[] values;
+    private int size;
+    private boolean acquired;
+
+    /**
+     * Creates an empty buffer.
+     */
+    public UpdateBuffer() {
+        this.indexes = new int[INITIAL_CAPACITY];
+        this.values = new double[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Returns an empty buffer owned by the current thread. If the buffer of the current thread is already
+     * in use, a new buffer is returned.
+     *
+     * @return an empty buffer.
+     */
+    public static UpdateBuffer acquire() {
+        UpdateBuffer buffer = LOCAL.get();
+        if (buffer.acquired) {
+            buffer = new UpdateBuffer();
+        }
+        buffer.acquired = true;
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Clears this buffer and makes it available to the next invocation of {@link #acquire()}.
+     */
+    public void release() {
+        clear();
+        this.acquired = false;
+    }
+
+    /**
+     * Adds the update assigning the given value to the datum at the given index.
+     *
+     * @param index position of the datum.
+     * @param value new value of the datum.
+     */
+    public void add(int index, double value) {
+        ensureCapacity(size + 1);
+        indexes[size] = index;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Adds the given updates to this buffer.
+     *
+     * @param updates a list of updates.
+     */
+    public void addAll(List<DataStateUpdate> updates) {
+        addAll(size, updates);
+    }
+
+    /**
+     * Inserts the given updates in this buffer, starting from the given position.
+     *
+     * @param position position of the first inserted update.
+     * @param updates a list of updates.
+     * @throws IndexOutOfBoundsException if <code>position</code> is not in <code>[0,size()]</code>.
+     */
+    public void addAll(int position, List<DataStateUpdate> updates) {
+        if ((position < 0) || (position > size)) {
+            throw new IndexOutOfBoundsException(position);
+        }
+        int n = updates.size();
+        if (n == 0) {
+            return;
+        }
+        ensureCapacity(size + n);
+        System.arraycopy(indexes, position, indexes, position + n, size - position);
+        System.arraycopy(values, position, values, position + n, size - position);
+        int i = position;
+        for (DataStateUpdate update : updates) {
+            indexes[i] = update.getIndex();
+            values[i] = update.getValue();
+            i++;
+        }
+        size += n;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > indexes.length) {
+            int newCapacity = Math.max(capacity, 2 * indexes.length);
+            indexes = Arrays.copyOf(indexes, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+    }
+
+    /**
+     * Returns the number of updates in this buffer.
+     *
+     * @return the number of updates in this buffer.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the index updated by the i-th update in this buffer.
+     *
+     * @param i position of the update.
+     * @return the index updated by the i-th update.
+     */
+    public int getIndex(int i) {
+        return indexes[i];
+    }
+
+    /**
+     * Returns the value assigned by the i-th update in this buffer.
+     *
+     * @param i position of the update.
+     * @return the value assigned by the i-th update.
+     */
+    public double getValue(int i) {
+        return values[i];
+    }
+
+    /**
+     * Removes all the updates from this buffer.
+     */
+    public void clear() {
+        this.size = 0;
+    }
+
+    /**
+     * Applies the updates in this buffer, in order, to the given data state, which is modified in place.
+     *
+     * @param state a data state.
+     */
+    public void applyTo(DataState state) {
+        for (int i = 0; i < size; i++) {
+            state.set(indexes[i], values[i]);
+        }
+    }
+
+}
@@ -80,6 +80,24 @@ public sealed interface Feedback permits
         }
     }
 
+    /**
+     * Applies the effect of this feedback, if present, to the given data state, which is not shared
+     * and can be modified in place.
+     *
+     * @param rg random generator
+     * @param state a data state that can be modified
+     * @return <code>state</code> modified by the effect of the feedback, if there is any.
+     * Returns <code>state</code>, otherwise.
+     */
+    default DataState applyInPlace(RandomGenerator rg, DataState state) {
+        Optional<DataStateFunction> effect = effect();
+        if (effect.isPresent()) {
+            return effect.get().applyInPlace(rg, state);
+        } else {
+            return state;
+        }
+    }
+
     /**
      * Generates a system under feedback.
      *
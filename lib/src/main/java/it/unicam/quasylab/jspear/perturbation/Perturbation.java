@@ -81,6 +81,24 @@ public sealed interface Perturbation permits
         }
     }
 
+    /**
+     * Applies the effect of this perturbation, if present, to the given data state, which is not shared
+     * and can be modified in place.
+     *
+     * @param rg random generator
+     * @param state a data state that can be modified
+     * @return <code>state</code> modified by the effect of the perturbation, if there is any.
+     * Returns <code>state</code>, otherwise.
+     */
+    default DataState applyInPlace(RandomGenerator rg, DataState state) {
+        Optional<DataStateFunction> effect = effect();
+        if (effect.isPresent()) {
+            return effect.get().applyInPlace(rg, state);
+        } else {
+            return state;
+        }
+    }
+
     /**
      * Generates a perturbed system affected by this perturbation.
      *
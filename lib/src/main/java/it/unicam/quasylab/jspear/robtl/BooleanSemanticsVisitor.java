@@ -22,8 +22,9 @@
 
 package it.unicam.quasylab.jspear.robtl;
 
-import it.unicam.quasylab.jspear.distance.DistanceExpression;
-import it.unicam.quasylab.jspear.ds.RelationOperator;
+import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.PerturbedSequenceCache;
+import it.unicam.quasylab.jspear.distance.DistanceEvaluationContext;
 import it.unicam.quasylab.jspear.perturbation.Perturbation;
 
 import java.util.stream.IntStream;
@@ -35,10 +36,26 @@ public class BooleanSemanticsVisitor implements RobustnessFormulaVisitor<Boolean
 
     private final boolean parallel;
 
+    /**
+     * Perturbed sequences generated while evaluating formulae with this visitor.
+     */
+    private final PerturbedSequenceCache perturbations = new PerturbedSequenceCache();
+
+    /**
+     * Creates a visitor evaluating the temporal operators either sequentially or speculatively in parallel.
+     * In the latter case, the steps of the interval of a temporal operator are evaluated by a bounded
+     * pool of workers, and the pending evaluations are cancelled as soon as the result is settled.
+     * The sequential evaluation is the reference one.
+     *
+     * @param parallel <code>true</code> if the temporal operators are evaluated in parallel.
+     */
     public BooleanSemanticsVisitor(boolean parallel) {
         this.parallel = parallel;
     }
 
+    /**
+     * Creates a visitor evaluating the temporal operators sequentially.
+     */
     public BooleanSemanticsVisitor() {
         this(false);
     }
@@ -50,29 +67,43 @@ public class BooleanSemanticsVisitor implements RobustnessFormulaVisitor<Boolean
 
     @Override
     public RobustnessFunction<Boolean> evalAlways(AlwaysRobustnessFormula alwaysRobustnessFormula) {
-        RobustnessFunction<Boolean> argumentFunction = alwaysRobustnessFormula.getArgument().eval(this);
+        RobustnessFormula argument = alwaysRobustnessFormula.getArgument();
+        RobustnessFunction<Boolean> argumentFunction = argument.eval(this);
         int from = alwaysRobustnessFormula.getFrom();
         int to = alwaysRobustnessFormula.getTo();
-        if (parallel) {
-            return (sampleSize, step, sequence) ->
-                    IntStream.of(from, to).parallel().allMatch(i -> argumentFunction.eval(sampleSize, step+i, sequence));
-        } else {
-            return (sampleSize, step, sequence) ->
-                    IntStream.of(from, to).sequential().allMatch(i -> argumentFunction.eval(sampleSize, step+i, sequence));
-        }
+        return (sampleSize, step, sequence) -> {
+            try (LockstepEvaluator<Boolean> evaluator = new LockstepEvaluator<>(argument, argumentFunction, this::evalAtomic, perturbations, sampleSize, sequence, from+step, to+step)) {
+                if (parallel) {
+                    return SpeculativeScheduler.DEFAULT.reduce(from+step, to+step, evaluator::eval, true, Boolean::logicalAnd, false);
+                }
+                return IntStream.range(from+step, to+step).allMatch(evaluator::eval);
+            }
+        };
     }
 
     @Override
     public RobustnessFunction<Boolean> evalAtomic(AtomicRobustnessFormula atomicRobustnessFormula) {
         Perturbation perturbation = atomicRobustnessFormula.getPerturbation();
-        DistanceExpression expr = atomicRobustnessFormula.getDistanceExpression();
-        RelationOperator relop = atomicRobustnessFormula.getRelationOperator();
-        double value = atomicRobustnessFormula.getThreshold();
         return (sampleSize, step, sequence)
-                    ->  relop.eval(
-                            expr.compute(step, sequence, sequence.apply(perturbation, step, sampleSize)),
-                            value
-                        );
+                    -> evalAtomic(atomicRobustnessFormula, step, sequence, perturbations.apply(sequence, perturbation, step, sampleSize));
+    }
+
+    /**
+     * Returns the evaluation of the given atomic formula at the given step against the given perturbed sequence.
+     *
+     * @param atomicRobustnessFormula an atomic formula.
+     * @param step the step at which the formula is evaluated.
+     * @param sequence the evaluated sequence.
+     * @param perturbed the sequence obtained by perturbing <code>sequence</code> at <code>step</code>.
+     * @return the evaluation of <code>atomicRobustnessFormula</code> at <code>step</code>.
+     */
+    private boolean evalAtomic(AtomicRobustnessFormula atomicRobustnessFormula, int step, EvolutionSequence sequence, EvolutionSequence perturbed) {
+        return atomicRobustnessFormula.getDistanceExpression().compare(
+                step,
+                new DistanceEvaluationContext(sequence, perturbed),
+                atomicRobustnessFormula.getRelationOperator(),
+                atomicRobustnessFormula.getThreshold()
+        );
     }
 
     @Override
@@ -91,16 +122,18 @@ public class BooleanSemanticsVisitor implements RobustnessFormulaVisitor<Boolean
 
     @Override
     public RobustnessFunction<Boolean> evalEventually(EventuallyRobustnessFormula eventuallyRobustnessFormula) {
-        RobustnessFunction<Boolean> argumentFunction = eventuallyRobustnessFormula.getArgument().eval(this);
+        RobustnessFormula argument = eventuallyRobustnessFormula.getArgument();
+        RobustnessFunction<Boolean> argumentFunction = argument.eval(this);
         int from = eventuallyRobustnessFormula.getFrom();
         int to = eventuallyRobustnessFormula.getTo();
-        if (parallel) {
-            return (sampleSize, step, sequence) ->
-                    IntStream.of(from, to).parallel().anyMatch(i -> argumentFunction.eval(sampleSize, step+i, sequence));
-        } else {
-            return (sampleSize, step, sequence) ->
-                    IntStream.of(from, to).sequential().anyMatch(i -> argumentFunction.eval(sampleSize, step+i, sequence));
-        }
+        return (sampleSize, step, sequence) -> {
+            try (LockstepEvaluator<Boolean> evaluator = new LockstepEvaluator<>(argument, argumentFunction, this::evalAtomic, perturbations, sampleSize, sequence, from+step, to+step)) {
+                if (parallel) {
+                    return SpeculativeScheduler.DEFAULT.reduce(from+step, to+step, evaluator::eval, false, Boolean::logicalOr, true);
+                }
+                return IntStream.range(from+step, to+step).anyMatch(evaluator::eval);
+            }
+        };
     }
 
     @Override
@@ -129,21 +162,38 @@ public class BooleanSemanticsVisitor implements RobustnessFormulaVisitor<Boolean
 
     @Override
     public RobustnessFunction<Boolean> evalUntil(UntilRobustnessFormula untilRobustnessFormula) {
-        RobustnessFunction<Boolean> leftFunction = untilRobustnessFormula.getLeftFormula().eval(this);
-        RobustnessFunction<Boolean> rightFunction = untilRobustnessFormula.getRightFormula().eval(this);
+        RobustnessFormula left = untilRobustnessFormula.getLeftFormula();
+        RobustnessFormula right = untilRobustnessFormula.getRightFormula();
+        RobustnessFunction<Boolean> leftFunction = left.eval(this);
+        RobustnessFunction<Boolean> rightFunction = right.eval(this);
         int from = untilRobustnessFormula.getFrom();
         int to = untilRobustnessFormula.getTo();
-        if (parallel) {
-            return (sampleSize, step, sequence) -> IntStream.range(from+step, to+step).parallel().anyMatch(
-                    i -> rightFunction.eval(sampleSize, i, sequence) &&
-                            IntStream.range(from+step, i).allMatch(j -> leftFunction.eval(sampleSize, j, sequence))
-            );
-        } else {
-            return (sampleSize, step, sequence) -> IntStream.range(from+step, to+step).sequential().anyMatch(
-                    i -> rightFunction.eval(sampleSize, i, sequence) &&
-                            IntStream.range(from+step, i).allMatch(j -> leftFunction.eval(sampleSize, j, sequence))
-            );
-        }
+        return (sampleSize, step, sequence) -> {
+            try (LockstepEvaluator<Boolean> leftEvaluator = new LockstepEvaluator<>(left, leftFunction, this::evalAtomic, perturbations, sampleSize, sequence, from+step, to+step);
+                 LockstepEvaluator<Boolean> rightEvaluator = new LockstepEvaluator<>(right, rightFunction, this::evalAtomic, perturbations, sampleSize, sequence, from+step, to+step)) {
+                if (parallel) {
+                    // Each step settles the formula to TRUE, when the right formula holds, to FALSE, when neither
+                    // the right formula nor the left one hold, or it is UNKNOWN, when the following steps are needed.
+                    boolean[] result = new boolean[1];
+                    SpeculativeScheduler.DEFAULT.forEachOrdered(from+step, to+step,
+                            i -> (rightEvaluator.eval(i) ? TruthValues.TRUE : (leftEvaluator.eval(i) ? TruthValues.UNKNOWN : TruthValues.FALSE)),
+                            value -> {
+                                result[0] = (value == TruthValues.TRUE);
+                                return value != TruthValues.UNKNOWN;
+                            });
+                    return result[0];
+                }
+                for (int i = from+step; i < to+step; i++) {
+                    if (rightEvaluator.eval(i)) {
+                        return true;
+                    }
+                    if (!leftEvaluator.eval(i)) {
+                        return false;
+                    }
+                }
+                return false;
+            }
+        };
     }
 
 }
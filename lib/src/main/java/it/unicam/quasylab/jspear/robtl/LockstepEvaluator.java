@@ -0,0 +1,128 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.robtl;
+
+import it.unicam.quasylab.jspear.BranchSet;
+import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.PerturbedSequenceCache;
+
+import java.util.OptionalInt;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Evaluates a RobTL formula at the consecutive steps of an interval, as required by temporal operators.
+ * When the formula is atomic and its distance expression has a finite time horizon, the sequences perturbed at the
+ * steps of the interval are collected in a {@link BranchSet}, so that they are generated in lockstep, and each of
+ * them is retired as soon as the formula has been evaluated at its step. Branches are obtained from the cache of
+ * perturbed sequences of the visitor, so that they are shared with the other operators of the checked formula.
+ * Otherwise, the formula is evaluated via its robustness function.
+ *
+ * @param <T> formulae interpretation domain.
+ */
+final class LockstepEvaluator<T> implements AutoCloseable {
+
+    /**
+     * Evaluates an atomic formula at a given step against a given perturbation of a sequence.
+     *
+     * @param <T> formulae interpretation domain.
+     */
+    @FunctionalInterface
+    interface AtomicEvaluation<T> {
+
+        T eval(AtomicRobustnessFormula formula, int step, EvolutionSequence sequence, EvolutionSequence perturbed);
+
+    }
+
+    private final RobustnessFunction<T> function;
+    private final AtomicEvaluation<T> atomicEvaluation;
+    private final int sampleSize;
+    private final EvolutionSequence sequence;
+    private final AtomicRobustnessFormula atomic;
+    private final BranchSet branches;
+    private final int horizon;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates the evaluator of the given formula at the steps in the interval <code>[from, to)</code>.
+     *
+     * @param formula the evaluated formula.
+     * @param function the robustness function of <code>formula</code>.
+     * @param atomicEvaluation the evaluation of atomic formulae against a perturbed sequence.
+     * @param perturbations the cache providing the perturbed sequences.
+     * @param sampleSize size of the sample set used to infer statistical values.
+     * @param sequence evolution sequence to evaluate.
+     * @param from first evaluated step.
+     * @param to the step following the last evaluated one.
+     */
+    LockstepEvaluator(RobustnessFormula formula, RobustnessFunction<T> function, AtomicEvaluation<T> atomicEvaluation,
+                      PerturbedSequenceCache perturbations, int sampleSize, EvolutionSequence sequence, int from, int to) {
+        this.function = function;
+        this.atomicEvaluation = atomicEvaluation;
+        this.sampleSize = sampleSize;
+        this.sequence = sequence;
+        OptionalInt h = (formula instanceof AtomicRobustnessFormula a ? a.getDistanceExpression().getTimeHorizon() : OptionalInt.empty());
+        if (h.isPresent() && (to-from > 1)) {
+            this.atomic = (AtomicRobustnessFormula) formula;
+            this.horizon = h.getAsInt();
+            this.branches = new BranchSet(sequence, atomic.getPerturbation(), sampleSize, perturbations);
+            this.branches.open(from, to, horizon);
+        } else {
+            this.atomic = null;
+            this.horizon = 0;
+            this.branches = null;
+        }
+    }
+
+    /**
+     * Returns the evaluation of the formula at the given step.
+     *
+     * @param step the step at which the formula is evaluated.
+     * @return the evaluation of the formula at <code>step</code>.
+     * @throws CancellationException if the branches of this evaluator have been retired.
+     */
+    T eval(int step) {
+        if (branches == null) {
+            return function.eval(sampleSize, step, sequence);
+        }
+        if (closed) {
+            throw new CancellationException("Evaluation cancelled!");
+        }
+        branches.advanceTo(step+horizon);
+        T value = atomicEvaluation.eval(atomic, step, sequence, branches.get(step));
+        branches.retire(step);
+        return value;
+    }
+
+    /**
+     * Retires all the branches that have not been evaluated. Evaluations that are requested afterwards,
+     * like the ones of speculative tasks that have been cancelled, are not performed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (branches != null) {
+            branches.retireAll();
+        }
+    }
+
+}
@@ -86,4 +86,19 @@ public sealed interface RobustnessFormula permits
         return formula.eval(new ThreeValuedSemanticsVisitor(rg, m, z));
     }
 
+    /**
+     * Returns the evaluation of a given formula according to three-valued semantics,
+     * using custom values for the bootstrap method in the evaluation of confidence intervals,
+     * where the samples used to evaluate undecided atomic formulae are escalated up to the given budget.
+     *
+     * @param m number of repetitions for the boostrap method
+     * @param z the quantile of the standard normal distribution corresponding to the desired coverage probability
+     * @param sampleBudget maximal number of samples of the evaluated sequence at each step
+     * @param formula a RobTL formula
+     * @return the three-valued evaluation of <code>formula</code>.
+     */
+    static RobustnessFunction<TruthValues> getThreeValuedEvaluationFunction(RandomGenerator rg, int m, double z, int sampleBudget, RobustnessFormula formula) {
+        return formula.eval(new ThreeValuedSemanticsVisitor(rg, m, z, false, sampleBudget));
+    }
+
 }
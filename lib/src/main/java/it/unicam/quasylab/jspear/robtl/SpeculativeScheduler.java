@@ -0,0 +1,193 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.robtl;
+
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.function.BinaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * A bounded scheduler used to evaluate the argument of a temporal operator at the steps of an interval
+ * speculatively in parallel. Evaluations are executed by a fork-join pool, and at most a given number of them
+ * are pending at any time. As soon as the collected values settle the result, the pending evaluations are
+ * cancelled. Scans started from the tasks of the scheduler, like the ones of nested temporal operators, are
+ * performed sequentially, so that the workers of the pool never wait for each other.
+ */
+final class SpeculativeScheduler {
+
+    /**
+     * The scheduler shared by the visitors evaluating formulae in parallel.
+     */
+    static final SpeculativeScheduler DEFAULT = new SpeculativeScheduler(Runtime.getRuntime().availableProcessors());
+
+    private final ForkJoinPool pool;
+    private final int window;
+
+    /**
+     * Creates a scheduler running at most the given number of evaluations in parallel, and keeping pending
+     * twice as many evaluations.
+     *
+     * @param parallelism number of evaluations running in parallel.
+     * @throws IllegalArgumentException if <code>parallelism</code> is not positive.
+     */
+    SpeculativeScheduler(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("The parallelism of a scheduler must be positive!");
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.window = 2*parallelism;
+    }
+
+    /**
+     * Returns the combination of the values of the given function at the steps in <code>[from, to)</code>.
+     * The combination operator must be associative and commutative, and the result is settled as soon as
+     * one of the values is the absorbing element of the operator.
+     *
+     * @param from first step of the interval.
+     * @param to the step following the last one of the interval.
+     * @param function the evaluated function.
+     * @param identity the identity element of <code>combine</code>.
+     * @param combine the combination operator.
+     * @param absorbing the absorbing element of <code>combine</code>.
+     * @return the combination of the values of <code>function</code> at the steps in <code>[from, to)</code>.
+     * @param <T> type of values.
+     */
+    <T> T reduce(int from, int to, IntFunction<T> function, T identity, BinaryOperator<T> combine, T absorbing) {
+        if (isNested()) {
+            T value = identity;
+            for (int i = from; (i < to) && (!absorbing.equals(value)); i++) {
+                value = combine.apply(value, function.apply(i));
+            }
+            return value;
+        }
+        CompletionService<T> completion = new ExecutorCompletionService<>(pool);
+        Future<?>[] tasks = new Future<?>[Math.max(0, to-from)];
+        int next = from;
+        int pending = 0;
+        T value = identity;
+        try {
+            while ((pending > 0)||(next < to)) {
+                for (; (next < to) && (pending < window); next++, pending++) {
+                    int step = next;
+                    tasks[step-from] = completion.submit(() -> function.apply(step));
+                }
+                value = combine.apply(value, await(completion));
+                pending--;
+                if (absorbing.equals(value)) {
+                    return value;
+                }
+            }
+            return value;
+        } finally {
+            cancel(tasks);
+        }
+    }
+
+    /**
+     * Passes the values of the given function at the steps in <code>[from, to)</code> to the given consumer,
+     * in the order of steps, until the consumer returns <code>true</code>. Values are computed speculatively,
+     * namely the values of the steps following the one passed to the consumer may be computed in advance.
+     *
+     * @param from first step of the interval.
+     * @param to the step following the last one of the interval.
+     * @param function the evaluated function.
+     * @param consumer the consumer of values, that returns <code>true</code> when no more values are needed.
+     * @param <T> type of values.
+     */
+    <T> void forEachOrdered(int from, int to, IntFunction<T> function, Predicate<T> consumer) {
+        if (isNested()) {
+            int i = from;
+            while ((i < to) && (!consumer.test(function.apply(i)))) {
+                i++;
+            }
+            return;
+        }
+        int size = Math.max(0, to-from);
+        Future<?>[] tasks = new Future<?>[size];
+        Object[] values = new Object[size];
+        boolean[] done = new boolean[size];
+        CompletionService<Indexed<T>> completion = new ExecutorCompletionService<>(pool);
+        int next = 0;
+        int consumed = 0;
+        try {
+            while (consumed < size) {
+                for (; (next < size) && (next < consumed + window); next++) {
+                    int index = next;
+                    tasks[index] = completion.submit(() -> new Indexed<>(index, function.apply(from+index)));
+                }
+                Indexed<T> result = await(completion);
+                values[result.index()] = result.value();
+                done[result.index()] = true;
+                for (; (consumed < size) && done[consumed]; consumed++) {
+                    @SuppressWarnings("unchecked")
+                    T value = (T) values[consumed];
+                    values[consumed] = null;
+                    if (consumer.test(value)) {
+                        return;
+                    }
+                }
+            }
+        } finally {
+            cancel(tasks);
+        }
+    }
+
+    private boolean isNested() {
+        return ForkJoinTask.inForkJoinPool() && (ForkJoinTask.getPool() == pool);
+    }
+
+    private static <T> T await(CompletionService<T> completion) {
+        try {
+            return completion.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Evaluation interrupted!", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void cancel(Future<?>[] tasks) {
+        for (Future<?> task : tasks) {
+            if (task != null) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    private record Indexed<T>(int index, T value) {
+    }
+
+}
@@ -23,6 +23,8 @@
 package it.unicam.quasylab.jspear.robtl;
 
 import it.unicam.quasylab.jspear.DefaultRandomGenerator;
+import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.PerturbedSequenceCache;
 import it.unicam.quasylab.jspear.distance.DistanceExpression;
 import it.unicam.quasylab.jspear.ds.RelationOperator;
 import it.unicam.quasylab.jspear.perturbation.Perturbation;
@@ -33,9 +35,20 @@ import org.apache.commons.math3.random.RandomGenerator;
  */
 public class ThreeValuedSemanticsVisitor implements RobustnessFormulaVisitor<TruthValues> {
 
-    private final RandomGenerator rg;
+    /**
+     * Seed of the random streams used by the bootstrap method. The stream used at each step is derived from the seed
+     * and from the step, so that evaluations do not depend on the order in which steps are evaluated.
+     */
+    private final long bootstrapSeed;
     private final int m;
     private final double z;
+    private final boolean parallel;
+    private final int sampleBudget;
+
+    /**
+     * Perturbed sequences generated while evaluating formulae with this visitor.
+     */
+    private final PerturbedSequenceCache perturbations = new PerturbedSequenceCache();
 
     /**
      * As the evaluation of confidence intervals is necessary to determine the three-valued semantics,
@@ -46,9 +59,50 @@ public class ThreeValuedSemanticsVisitor implements RobustnessFormulaVisitor<Tru
      * @param z the quantile of the normal distribution encoding the desired coverage probability.
      */
     public ThreeValuedSemanticsVisitor(RandomGenerator rg, int m, double z) {
-        this.rg = rg;
+        this(rg, m, z, false);
+    }
+
+    /**
+     * Creates a visitor evaluating the temporal operators either sequentially or speculatively in parallel.
+     * In the latter case, the steps of the interval of a temporal operator are evaluated by a bounded
+     * pool of workers, and the pending evaluations are cancelled as soon as the result is settled.
+     * The sequential evaluation is the reference one.
+     *
+     * @param rg random generator
+     * @param m number of repetitions for the bootstrap method
+     * @param z the quantile of the normal distribution encoding the desired coverage probability.
+     * @param parallel <code>true</code> if the temporal operators are evaluated in parallel.
+     */
+    public ThreeValuedSemanticsVisitor(RandomGenerator rg, int m, double z, boolean parallel) {
+        this(rg, m, z, parallel, 0);
+    }
+
+    /**
+     * Creates a visitor that escalates the size of samples used to evaluate atomic formulae whose value is
+     * {@link TruthValues#UNKNOWN}. The samples of the evaluated sequence and of its perturbation are doubled,
+     * by drawing new samples from the initial distribution of the evaluated sequence and appending them to the
+     * existing ones, until either the confidence interval of the distance excludes the threshold or the samples
+     * of the evaluated sequence exceed the given budget. Samples are only escalated for the undecided atomic
+     * formulae, and when the evaluated sequence is extensible.
+     *
+     * @param rg random generator
+     * @param m number of repetitions for the bootstrap method
+     * @param z the quantile of the normal distribution encoding the desired coverage probability.
+     * @param parallel <code>true</code> if the temporal operators are evaluated in parallel.
+     * @param sampleBudget maximal number of samples of the evaluated sequence at each step, or 0 if samples
+     *                     are never escalated.
+     * @throws IllegalArgumentException if <code>sampleBudget</code> is negative.
+     * @see EvolutionSequence#isExtensible()
+     */
+    public ThreeValuedSemanticsVisitor(RandomGenerator rg, int m, double z, boolean parallel, int sampleBudget) {
+        if (sampleBudget < 0) {
+            throw new IllegalArgumentException("The sample budget cannot be negative!");
+        }
+        this.bootstrapSeed = rg.nextLong();
         this.m = m;
         this.z = z;
+        this.parallel = parallel;
+        this.sampleBudget = sampleBudget;
     }
 
     /**
@@ -66,15 +120,21 @@ public class ThreeValuedSemanticsVisitor implements RobustnessFormulaVisitor<Tru
 
     @Override
     public RobustnessFunction<TruthValues> evalAlways(AlwaysRobustnessFormula alwaysRobustnessFormula) {
-        RobustnessFunction<TruthValues> argumentFunction = alwaysRobustnessFormula.getArgument().eval(this);
+        RobustnessFormula argument = alwaysRobustnessFormula.getArgument();
+        RobustnessFunction<TruthValues> argumentFunction = argument.eval(this);
         int from = alwaysRobustnessFormula.getFrom();
         int to = alwaysRobustnessFormula.getTo();
         return ((sampleSize, step, sequence) -> {
             TruthValues value = TruthValues.TRUE;
-            for(int i = from+step; i<to+step; i++){
-                value = TruthValues.and(value, argumentFunction.eval(sampleSize, i, sequence));
-                if (value == TruthValues.FALSE){
-                    i = to+step;
+            try (LockstepEvaluator<TruthValues> evaluator = new LockstepEvaluator<>(argument, argumentFunction, this::evalAtomic, perturbations, sampleSize, sequence, from+step, to+step)) {
+                if (parallel) {
+                    return SpeculativeScheduler.DEFAULT.reduce(from+step, to+step, evaluator::eval, TruthValues.TRUE, TruthValues::and, TruthValues.FALSE);
+                }
+                for(int i = from+step; i<to+step; i++){
+                    value = TruthValues.and(value, evaluator.eval(i));
+                    if (value == TruthValues.FALSE){
+                        i = to+step;
+                    }
                 }
             }
             return value;
@@ -84,15 +144,51 @@ public class ThreeValuedSemanticsVisitor implements RobustnessFormulaVisitor<Tru
     @Override
     public RobustnessFunction<TruthValues> evalAtomic(AtomicRobustnessFormula atomicRobustnessFormula) {
         Perturbation perturbation = atomicRobustnessFormula.getPerturbation();
+        return (sampleSize, step, sequence)
+                -> evalAtomic(atomicRobustnessFormula, step, sequence, perturbations.apply(sequence, perturbation, step, sampleSize));
+    }
+
+    /**
+     * Returns the evaluation of the given atomic formula at the given step against the given perturbed sequence.
+     *
+     * @param atomicRobustnessFormula an atomic formula.
+     * @param step the step at which the formula is evaluated.
+     * @param sequence the evaluated sequence.
+     * @param perturbed the sequence obtained by perturbing <code>sequence</code> at <code>step</code>.
+     * @return the evaluation of <code>atomicRobustnessFormula</code> at <code>step</code>.
+     */
+    private TruthValues evalAtomic(AtomicRobustnessFormula atomicRobustnessFormula, int step, EvolutionSequence sequence, EvolutionSequence perturbed) {
+        TruthValues result = evalCI(atomicRobustnessFormula, step, sequence, perturbed);
+        int size = sequence.get(step).size();
+        int scale = perturbed.get(step).size()/size;
+        while ((result == TruthValues.UNKNOWN)&&(size < sampleBudget)&&(sequence.isExtensible())) {
+            EvolutionSequence samples = sequence.sample(Math.min(size, sampleBudget-size));
+            sequence = sequence.concat(samples);
+            perturbed = perturbed.concat(samples.apply(atomicRobustnessFormula.getPerturbation(), step, scale));
+            size = sequence.get(step).size();
+            result = evalCI(atomicRobustnessFormula, step, sequence, perturbed);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the three-valued evaluation of the given atomic formula at the given step against the given perturbed
+     * sequence, obtained by comparing the confidence interval of the distance with the threshold.
+     *
+     * @param atomicRobustnessFormula an atomic formula.
+     * @param step the step at which the formula is evaluated.
+     * @param sequence the evaluated sequence.
+     * @param perturbed the sequence obtained by perturbing <code>sequence</code> at <code>step</code>.
+     * @return the evaluation of <code>atomicRobustnessFormula</code> at <code>step</code>.
+     */
+    private TruthValues evalCI(AtomicRobustnessFormula atomicRobustnessFormula, int step, EvolutionSequence sequence, EvolutionSequence perturbed) {
         DistanceExpression expr = atomicRobustnessFormula.getDistanceExpression();
         RelationOperator relop = atomicRobustnessFormula.getRelationOperator();
         double value = atomicRobustnessFormula.getThreshold();
-        return (sampleSize, step, sequence) -> {
-            double[] res = expr.evalCI(rg, step, sequence, sequence.apply(perturbation, step, sampleSize), m, z);
-            if(res[1] < value && value < res[2]){return TruthValues.UNKNOWN;}
-            if(relop.eval(res[0],value)){return TruthValues.TRUE;}
-            return TruthValues.FALSE;
-        };
+        double[] res = expr.evalCI(DefaultRandomGenerator.derive(bootstrapSeed, step), step, sequence, perturbed, m, z);
+        if(res[1] < value && value < res[2]){return TruthValues.UNKNOWN;}
+        if(relop.eval(res[0],value)){return TruthValues.TRUE;}
+        return TruthValues.FALSE;
     }
 
     @Override
@@ -113,14 +209,20 @@ public class ThreeValuedSemanticsVisitor implements RobustnessFormulaVisitor<Tru
 
     @Override
     public RobustnessFunction<TruthValues> evalEventually(EventuallyRobustnessFormula eventuallyRobustnessFormula) {
-        RobustnessFunction<TruthValues> argumentFunction = eventuallyRobustnessFormula.getArgument().eval(this);
+        RobustnessFormula argument = eventuallyRobustnessFormula.getArgument();
+        RobustnessFunction<TruthValues> argumentFunction = argument.eval(this);
         int from = eventuallyRobustnessFormula.getFrom();
         int to = eventuallyRobustnessFormula.getTo();
         return ((sampleSize, step, sequence) -> {
             TruthValues value = TruthValues.FALSE;
-            for(int i = from+step; i<to+step; i++){
-                value = TruthValues.or(value, argumentFunction.eval(sampleSize, i, sequence));
-                if(value==TruthValues.TRUE){i=to+step;}
+            try (LockstepEvaluator<TruthValues> evaluator = new LockstepEvaluator<>(argument, argumentFunction, this::evalAtomic, perturbations, sampleSize, sequence, from+step, to+step)) {
+                if (parallel) {
+                    return SpeculativeScheduler.DEFAULT.reduce(from+step, to+step, evaluator::eval, TruthValues.FALSE, TruthValues::or, TruthValues.TRUE);
+                }
+                for(int i = from+step; i<to+step; i++){
+                    value = TruthValues.or(value, evaluator.eval(i));
+                    if(value==TruthValues.TRUE){i=to+step;}
+                }
             }
             return value;
         });
@@ -153,20 +255,43 @@ public class ThreeValuedSemanticsVisitor implements RobustnessFormulaVisitor<Tru
 
     @Override
     public RobustnessFunction<TruthValues> evalUntil(UntilRobustnessFormula untilRobustnessFormula) {
-        RobustnessFunction<TruthValues> leftFunction = untilRobustnessFormula.getLeftFormula().eval(this);
-        RobustnessFunction<TruthValues> rightFunction = untilRobustnessFormula.getRightFormula().eval(this);
+        RobustnessFormula left = untilRobustnessFormula.getLeftFormula();
+        RobustnessFormula right = untilRobustnessFormula.getRightFormula();
+        RobustnessFunction<TruthValues> leftFunction = left.eval(this);
+        RobustnessFunction<TruthValues> rightFunction = right.eval(this);
         int from = untilRobustnessFormula.getFrom();
         int to = untilRobustnessFormula.getTo();
         return ((sampleSize, step, sequence) -> {
             TruthValues value = TruthValues.FALSE;
             TruthValues leftValue = TruthValues.TRUE;
-            for(int i=from+step; (i<to+step)&&(value!=TruthValues.TRUE)&&(leftValue!=TruthValues.FALSE); i++){
-                //double start = System.currentTimeMillis();
-                value = TruthValues.and(leftValue, rightFunction.eval(sampleSize, i, sequence));
-                if (value != TruthValues.TRUE) {
-                    leftValue = TruthValues.and(leftValue, leftFunction.eval(sampleSize, i, sequence));
+            try (LockstepEvaluator<TruthValues> leftEvaluator = new LockstepEvaluator<>(left, leftFunction, this::evalAtomic, perturbations, sampleSize, sequence, from+step, to+step);
+                 LockstepEvaluator<TruthValues> rightEvaluator = new LockstepEvaluator<>(right, rightFunction, this::evalAtomic, perturbations, sampleSize, sequence, from+step, to+step)) {
+                if (parallel) {
+                    // The left formula is speculatively evaluated only when the right one is not TRUE, otherwise
+                    // it is evaluated when the values of the previous steps are known.
+                    TruthValues[] values = {value, leftValue};
+                    SpeculativeScheduler.DEFAULT.forEachOrdered(from+step, to+step,
+                            i -> {
+                                TruthValues rightValue = rightEvaluator.eval(i);
+                                return new UntilStep(i, rightValue, (rightValue == TruthValues.TRUE ? null : leftEvaluator.eval(i)));
+                            },
+                            untilStep -> {
+                                values[0] = TruthValues.and(values[1], untilStep.right());
+                                if (values[0] != TruthValues.TRUE) {
+                                    values[1] = TruthValues.and(values[1], (untilStep.left() == null ? leftEvaluator.eval(untilStep.step()) : untilStep.left()));
+                                }
+                                return (values[0] == TruthValues.TRUE)||(values[1] == TruthValues.FALSE);
+                            });
+                    return values[0];
+                }
+                for(int i=from+step; (i<to+step)&&(value!=TruthValues.TRUE)&&(leftValue!=TruthValues.FALSE); i++){
+                    //double start = System.currentTimeMillis();
+                    value = TruthValues.and(leftValue, rightEvaluator.eval(i));
+                    if (value != TruthValues.TRUE) {
+                        leftValue = TruthValues.and(leftValue, leftEvaluator.eval(i));
+                    }
+                    //System.out.println(i+"> "+(System.currentTimeMillis()-start));
                 }
-                //System.out.println(i+"> "+(System.currentTimeMillis()-start));
             }
             return value;
 //
@@ -182,4 +307,11 @@ public class ThreeValuedSemanticsVisitor implements RobustnessFormulaVisitor<Tru
         });
     }
 
-}
\ No newline at end of file
+    /**
+     * The values of the right and left formulae of an until at a given step. The value of the left formula is
+     * <code>null</code> when it has not been evaluated.
+     */
+    private record UntilStep(int step, TruthValues right, TruthValues left) {
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import it.unicam.quasylab.jspear.ds.ColumnarDataState;
+import it.unicam.quasylab.jspear.ds.DataRange;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateBooleanExpression;
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchSystemTest {
+
+    private static final DataStateExpression X = ds -> ds.get(0);
+    private static final DataStateExpression Y = ds -> ds.get(1);
+    private static final DataStateExpression STEP = DataState::getStep;
+
+    private static final BatchSystem LINEAR_BATCH = BatchSystem.columnar((streams, offset, columns, size) -> {
+        for (int k = 0; k < size; k++) {
+            columns[0][k] = columns[0][k] * 0.9 + streams[offset + k].nextDouble();
+            columns[1][k] = columns[1][k] + 1;
+        }
+    });
+
+    private record LinearSystem(DataState state, boolean batch) implements SystemState {
+
+        @Override
+        public DataState getDataState() {
+            return state;
+        }
+
+        @Override
+        public SystemState sampleNext(RandomGenerator rg) {
+            DataState next = state.copy();
+            next.set(0, state.get(0) * 0.9 + rg.nextDouble());
+            next.set(1, state.get(1) + 1);
+            next.setStep(state.getStep() + 1);
+            return new LinearSystem(next, batch);
+        }
+
+        @Override
+        public SystemState sampleNextCond(RandomGenerator rg, DataStateBooleanExpression cond) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SystemState setDataState(DataState dataState) {
+            return new LinearSystem(dataState, batch);
+        }
+
+        @Override
+        public Optional<BatchSystem> getBatchSystem() {
+            return (batch ? Optional.of(LINEAR_BATCH) : Optional.empty());
+        }
+
+    }
+
+    private static EvolutionSequence getSequence(boolean batch, boolean columnar) {
+        DataRange[] ranges = new DataRange[] { new DataRange(0.0, 5.0), new DataRange() };
+        EvolutionSequence sequence = new EvolutionSequence(new DefaultRandomGenerator(3),
+                rg -> new LinearSystem(new DataState(ranges, i -> (i == 0 ? 4.0 + rg.nextDouble() : 0.0)), batch), 1000);
+        sequence.setColumnar(columnar);
+        return sequence;
+    }
+
+    @Test
+    void columnarBatchesCoincideWithSampleNext() {
+        for (boolean columnar : new boolean[] { false, true }) {
+            EvolutionSequence sequence = getSequence(true, columnar);
+            EvolutionSequence reference = getSequence(false, columnar);
+            for (int i = 0; i <= 10; i++) {
+                assertArrayEquals(reference.evalPenaltyFunction(X, i), sequence.evalPenaltyFunction(X, i));
+                assertArrayEquals(reference.evalPenaltyFunction(Y, i), sequence.evalPenaltyFunction(Y, i));
+                assertArrayEquals(reference.evalPenaltyFunction(STEP, i), sequence.evalPenaltyFunction(STEP, i));
+            }
+            assertTrue(sequence.get(10).stream().allMatch(s -> s.getDataState() instanceof ColumnarDataState));
+            assertTrue(sequence.get(10).stream().anyMatch(s -> s.getDataState().get(0) == 5.0));
+        }
+    }
+
+    @Test
+    void columnarBatchesDoNotModifyPreviousSteps() {
+        EvolutionSequence sequence = getSequence(true, true);
+        double[] first = sequence.evalPenaltyFunction(X, 1);
+        double[] firstColumn = ((ColumnarSampleSet<SystemState>) sequence.get(1)).getColumn(0).clone();
+        sequence.get(5);
+        assertArrayEquals(first, sequence.evalPenaltyFunction(X, 1));
+        assertArrayEquals(firstColumn, ((ColumnarSampleSet<SystemState>) sequence.get(1)).getColumn(0));
+    }
+
+}
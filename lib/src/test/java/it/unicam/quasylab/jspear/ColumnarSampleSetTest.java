@@ -0,0 +1,114 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import it.unicam.quasylab.jspear.ds.ColumnarDataState;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarSampleSetTest {
+
+    private static final DataStateExpression SUM = ds -> ds.get(0) + ds.get(1);
+
+    private static SystemState stateOf(double x, double y) {
+        return new ControlledSystem(null, (rg, ds) -> ds, new DataState(new double[] {x, y}));
+    }
+
+    private static SampleSet<SystemState> sampleSetOf(int size) {
+        List<SystemState> states = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            states.add(stateOf(i, (i * 7) % 5));
+        }
+        return new SampleSet<>(states);
+    }
+
+    @Test
+    void columnarSampleSetsCoincideWithRowBackedOnes() {
+        SampleSet<SystemState> rows = sampleSetOf(10);
+        ColumnarSampleSet<SystemState> columns = ColumnarSampleSet.of(rows);
+        assertEquals(2, columns.getNumberOfVariables());
+        assertArrayEquals(rows.evalPenaltyFunction(SUM), columns.evalPenaltyFunction(SUM));
+        assertArrayEquals(rows.evalPenaltyFunction(ds -> ds.get(1)), columns.evalVariable(1));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, columns.getColumn(0)[i]);
+        }
+        assertTrue(columns.stream().allMatch(s -> s.getDataState() instanceof ColumnarDataState));
+    }
+
+    @Test
+    void updatesOfRowViewsAreWrittenThroughToTheColumns() {
+        ColumnarSampleSet<SystemState> columns = ColumnarSampleSet.of(sampleSetOf(10));
+        double[] before = columns.evalPenaltyFunction(SUM);
+        DataState row = columns.stream().toList().get(3).getDataState();
+        row.set(0, 100.0);
+        assertEquals(100.0, columns.getColumn(0)[3]);
+        assertEquals(100.0, row.get(0));
+        DataState copy = row.copy();
+        copy.set(0, -1.0);
+        assertEquals(100.0, columns.getColumn(0)[3]);
+        assertEquals(-1.0, copy.get(0));
+        assertArrayEquals(before, columns.evalPenaltyFunction(SUM));
+    }
+
+    @Test
+    void addedStatesAreStoredInTheColumns() {
+        SampleSet<SystemState> rows = sampleSetOf(100);
+        ColumnarSampleSet<SystemState> columns = ColumnarSampleSet.of(sampleSetOf(3));
+        ColumnarSampleSet<SystemState> empty = ColumnarSampleSet.of(new SampleSet<>(List.of()));
+        columns.evalPenaltyFunction(SUM);
+        List<SystemState> states = rows.stream().toList();
+        for (int i = 0; i < states.size(); i++) {
+            if (i >= 3) {
+                columns.add(states.get(i));
+            }
+            empty.add(states.get(i));
+        }
+        assertEquals(100, columns.size());
+        assertEquals(100, columns.getColumn(0).length);
+        assertArrayEquals(rows.evalPenaltyFunction(SUM), columns.evalPenaltyFunction(SUM));
+        assertArrayEquals(rows.evalPenaltyFunction(SUM), empty.evalPenaltyFunction(SUM));
+        List<SystemState> columnStates = columns.stream().toList();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, columnStates.get(i).getDataState().get(0));
+            assertEquals(i, columns.getColumn(0)[i]);
+        }
+        columnStates.get(1).getDataState().set(1, 50.0);
+        assertEquals(50.0, columns.getColumn(1)[1]);
+        assertThrows(IllegalArgumentException.class, () -> columns.add(new ControlledSystem(null, (rg, ds) -> ds, new DataState(1))));
+    }
+
+    @Test
+    void concatenationsOfColumnarSampleSetsContainTheStatesOfBoth() {
+        ColumnarSampleSet<SystemState> columns = ColumnarSampleSet.of(sampleSetOf(10));
+        SampleSet<SystemState> concatenation = columns.concat(sampleSetOf(5));
+        assertEquals(15, concatenation.size());
+        assertArrayEquals(sampleSetOf(10).concat(sampleSetOf(5)).evalPenaltyFunction(SUM), concatenation.evalPenaltyFunction(SUM));
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import it.unicam.quasylab.jspear.controller.Controller;
+import it.unicam.quasylab.jspear.controller.ControllerRegistry;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
+import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.ds.DataStateUpdate;
+import it.unicam.quasylab.jspear.ds.MappedDataState;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EvolutionSequenceStoreTest {
+
+    private static final DataStateExpression X = ds -> ds.get(0);
+    private static final DataStateExpression Y = ds -> ds.get(1);
+    private static final DataStateExpression STEP = DataState::getStep;
+
+    private static final Controller CONTROLLER = getController();
+    private static final DataStateFunction ENVIRONMENT = (rg, ds) -> ds.apply(List.of(
+            new DataStateUpdate(0, ds.get(0)*0.9 + rg.nextDouble()*0.1),
+            new DataStateUpdate(1, ds.get(1) + ds.get(0))));
+    private static final Function<DataState, SystemState> RESTORE = ds -> new ControlledSystem(CONTROLLER, ENVIRONMENT, ds);
+
+    private static Controller getController() {
+        ControllerRegistry registry = new ControllerRegistry();
+        registry.set("Ctrl", Controller.doTick(registry.get("Ctrl")));
+        return registry.reference("Ctrl");
+    }
+
+    private static EvolutionSequence getSequence() {
+        return new EvolutionSequence(new DefaultRandomGenerator(1), rg -> new ControlledSystem(CONTROLLER, ENVIRONMENT, new DataState(2, i -> rg.nextDouble())), 10);
+    }
+
+    private static void assertSameStep(SampleSet<SystemState> expected, SampleSet<SystemState> actual) {
+        assertEquals(expected.size(), actual.size());
+        assertArrayEquals(expected.evalPenaltyFunction(X), actual.evalPenaltyFunction(X));
+        assertArrayEquals(expected.evalPenaltyFunction(Y), actual.evalPenaltyFunction(Y));
+        assertArrayEquals(expected.evalPenaltyFunction(STEP), actual.evalPenaltyFunction(STEP));
+    }
+
+    @Test
+    void loadedStepsAreTheAppendedOnes() throws IOException {
+        Path file = Files.createTempFile("sequence", ".stark");
+        try {
+            EvolutionSequence sequence = getSequence();
+            try (EvolutionSequenceStore store = EvolutionSequenceStore.create(file, sequence.get(0))) {
+                for (int i = 0; i <= 5; i++) {
+                    store.append(sequence.get(i));
+                }
+            }
+            try (EvolutionSequenceStore store = EvolutionSequenceStore.open(file)) {
+                assertEquals(6, store.getNumberOfSteps());
+                assertEquals(10, store.getSize());
+                assertEquals(2, store.getNumberOfVariables());
+                for (int i = 0; i <= 5; i++) {
+                    SampleSet<SystemState> loaded = store.load(i, RESTORE);
+                    assertTrue(loaded.stream().allMatch(s -> s.getDataState() instanceof MappedDataState));
+                    assertSameStep(sequence.get(i), loaded);
+                }
+                assertThrows(IndexOutOfBoundsException.class, () -> store.load(6, RESTORE));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void resumedSequencesAppendTheirStepsToTheStore() throws IOException {
+        Path file = Files.createTempFile("sequence", ".stark");
+        try {
+            EvolutionSequence sequence = getSequence();
+            try (EvolutionSequenceStore store = EvolutionSequenceStore.create(file, sequence.get(0))) {
+                sequence.persistTo(store);
+                sequence.get(4);
+                assertEquals(5, store.getNumberOfSteps());
+            }
+            try (EvolutionSequenceStore store = EvolutionSequenceStore.open(file)) {
+                EvolutionSequence resumed = new EvolutionSequence(new DefaultRandomGenerator(2), store, RESTORE);
+                assertEquals(5, resumed.length());
+                for (int i = 0; i <= 4; i++) {
+                    assertSameStep(sequence.get(i), resumed.get(i));
+                }
+                resumed.get(8);
+                assertEquals(9, store.getNumberOfSteps());
+                for (int i = 5; i <= 8; i++) {
+                    assertSameStep(resumed.get(i), store.load(i, RESTORE));
+                    assertArrayEquals(new double[] {i, i, i, i, i, i, i, i, i, i}, resumed.evalPenaltyFunction(STEP, i));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void evictedStepsAreReloadedFromTheStore() throws IOException {
+        Path file = Files.createTempFile("sequence", ".stark");
+        try {
+            EvolutionSequence sequence = getSequence();
+            EvolutionSequence reference = getSequence();
+            try (EvolutionSequenceStore store = EvolutionSequenceStore.create(file, sequence.get(0))) {
+                sequence.persistTo(store, RESTORE);
+                sequence.setRetention(2);
+                sequence.get(10);
+                assertEquals(9, sequence.getFirstRetainedStep());
+                for (int i = 0; i <= 10; i++) {
+                    assertSameStep(reference.get(i), sequence.get(i));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void evictedStepsThatAreNotStoredCannotBeReloaded() throws IOException {
+        Path file = Files.createTempFile("sequence", ".stark");
+        try {
+            EvolutionSequence sequence = getSequence();
+            try (EvolutionSequenceStore store = EvolutionSequenceStore.create(file, sequence.get(0))) {
+                sequence.setRetention(2);
+                sequence.get(10);
+                assertThrows(IllegalStateException.class, () -> sequence.persistTo(store, RESTORE));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void concatenationsDoNotReloadTheStepsOfTheirFirstSequence() throws IOException {
+        Path file = Files.createTempFile("sequence", ".stark");
+        try {
+            EvolutionSequence sequence = getSequence();
+            try (EvolutionSequenceStore store = EvolutionSequenceStore.create(file, sequence.get(0))) {
+                sequence.persistTo(store, RESTORE);
+                sequence.setRetention(2);
+                sequence.get(10);
+                EvolutionSequence concatenation = sequence.concat(sequence.sample(5));
+                assertEquals(15, concatenation.get(10).size());
+                assertEquals(10, sequence.get(3).size());
+                assertThrows(IllegalStateException.class, () -> concatenation.get(3));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import it.unicam.quasylab.jspear.controller.Controller;
+import it.unicam.quasylab.jspear.controller.ControllerRegistry;
+import it.unicam.quasylab.jspear.distance.AtomicDistanceExpressionLeq;
+import it.unicam.quasylab.jspear.distance.MaxIntervalDistanceExpression;
+import it.unicam.quasylab.jspear.ds.ChunkedDataState;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
+import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.ds.DataStateUpdate;
+import it.unicam.quasylab.jspear.perturbation.AtomicPerturbation;
+import it.unicam.quasylab.jspear.perturbation.PersistentPerturbation;
+import it.unicam.quasylab.jspear.perturbation.Perturbation;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EvolutionSequenceTest {
+
+    private static final DataStateExpression X = ds -> ds.get(0);
+
+    private static final DataStateFunction ENVIRONMENT = (rg, ds) -> ds.apply(List.of(new DataStateUpdate(0, ds.get(0)*0.9 + rg.nextDouble()*0.1)));
+
+    private static EvolutionSequence getSequence() {
+        return getSequence(ENVIRONMENT, 10);
+    }
+
+    private static EvolutionSequence getSequence(DataStateFunction environment, int size) {
+        ControllerRegistry registry = new ControllerRegistry();
+        registry.set("Ctrl", Controller.doTick(registry.get("Ctrl")));
+        Controller controller = registry.reference("Ctrl");
+        return new EvolutionSequence(new DefaultRandomGenerator(1), rg -> new ControlledSystem(controller, environment, new DataState(1, i -> rg.nextDouble())), size);
+    }
+
+    private static double[] valuesOf(SampleSet<SystemState> step) {
+        return step.stream().mapToDouble(s -> s.getDataState().get(0)).toArray();
+    }
+
+    @Test
+    void retainedStepsAreTheOnesOfTheWholeSequence() {
+        EvolutionSequence sequence = getSequence();
+        EvolutionSequence reference = getSequence();
+        sequence.setRetention(3);
+        for (int i = 0; i <= 10; i++) {
+            assertArrayEquals(reference.evalPenaltyFunction(X, i), sequence.evalPenaltyFunction(X, i));
+        }
+        assertEquals(3, sequence.getRetention());
+        assertEquals(8, sequence.getFirstRetainedStep());
+    }
+
+    @Test
+    void evictedStepsCannotBeAccessed() {
+        EvolutionSequence sequence = getSequence();
+        sequence.setRetention(3);
+        sequence.get(10);
+        assertThrows(IllegalStateException.class, () -> sequence.get(7));
+        assertThrows(IllegalStateException.class, () -> sequence.select(5, 10));
+        assertEquals(3, sequence.select(8, 10).size());
+    }
+
+    @Test
+    void shrinkingTheRetentionWindowEvictsGeneratedSteps() {
+        EvolutionSequence sequence = getSequence();
+        sequence.get(10);
+        assertEquals(0, sequence.getFirstRetainedStep());
+        sequence.setRetention(2);
+        assertEquals(9, sequence.getFirstRetainedStep());
+        assertThrows(IllegalStateException.class, () -> sequence.get(8));
+    }
+
+    @Test
+    void retentionWindowCoversTheTimeHorizonOfDistanceExpressions() {
+        EvolutionSequence sequence = getSequence();
+        sequence.setRetention(new MaxIntervalDistanceExpression(new AtomicDistanceExpressionLeq(X), 0, 3));
+        assertEquals(4, sequence.getRetention());
+    }
+
+    @Test
+    void retentionWindowMustBePositive() {
+        EvolutionSequence sequence = getSequence();
+        assertThrows(IllegalArgumentException.class, () -> sequence.setRetention(0));
+    }
+
+    @Test
+    void retentionWindowMustCoverTheLookahead() {
+        EvolutionSequence sequence = getSequence();
+        sequence.setLookahead(2);
+        assertThrows(IllegalArgumentException.class, () -> sequence.setRetention(2));
+        sequence.setRetention(3);
+        assertThrows(IllegalArgumentException.class, () -> sequence.setLookahead(3));
+        assertEquals(2, sequence.getLookahead());
+        assertEquals(3, sequence.getRetention());
+    }
+
+    @Test
+    void concatenationsStartFromTheStepsRetainedByBothSequences() {
+        EvolutionSequence first = getSequence();
+        EvolutionSequence second = getSequence();
+        second.setRetention(3);
+        second.get(10);
+        EvolutionSequence concatenation = first.concat(second);
+        assertEquals(8, concatenation.getFirstRetainedStep());
+        assertThrows(IllegalStateException.class, () -> concatenation.get(7));
+        assertArrayEquals(first.get(9).concat(second.get(9)).evalPenaltyFunction(X), concatenation.evalPenaltyFunction(X, 9));
+        assertEquals(20, concatenation.get(10).size());
+    }
+
+    @Test
+    void chunkedSequencesCoincideWithPlainOnes() {
+        EvolutionSequence sequence = getSequence();
+        EvolutionSequence reference = getSequence();
+        sequence.setChunked(true);
+        for (int i = 0; i <= 10; i++) {
+            assertArrayEquals(reference.evalPenaltyFunction(X, i), sequence.evalPenaltyFunction(X, i));
+        }
+        assertTrue(sequence.get(10).stream().allMatch(s -> s.getDataState() instanceof ChunkedDataState));
+        AtomicPerturbation perturbation = new AtomicPerturbation(0, (rg, ds) -> ds.apply(List.of(new DataStateUpdate(0, 1.0))));
+        EvolutionSequence perturbed = sequence.apply(perturbation, 5, 3);
+        EvolutionSequence referencePerturbed = reference.apply(perturbation, 5, 3);
+        for (int i = 5; i <= 10; i++) {
+            assertArrayEquals(referencePerturbed.evalPenaltyFunction(X, i), perturbed.evalPenaltyFunction(X, i));
+        }
+        assertTrue(perturbed.get(5).stream().allMatch(s -> s.getDataState() instanceof ChunkedDataState));
+        assertTrue(sequence.get(5).stream().allMatch(s -> s.getDataState().get(0) < 1.0));
+    }
+
+    @Test
+    void inPlacePerturbationsCoincideWithAllocatingOnes() {
+        Perturbation inPlace = new PersistentPerturbation(new AtomicPerturbation(0, DataStateFunction.inPlace((rg, ds) -> ds.set(0, ds.get(0) + rg.nextDouble()))));
+        Perturbation allocating = new PersistentPerturbation(new AtomicPerturbation(0, (rg, ds) -> ds.apply(List.of(new DataStateUpdate(0, ds.get(0) + rg.nextDouble())))));
+        for (boolean trajectoryMajor : new boolean[] { false, true }) {
+            EvolutionSequence sequence = getSequence();
+            EvolutionSequence reference = getSequence();
+            sequence.setTrajectoryMajor(trajectoryMajor);
+            reference.setTrajectoryMajor(trajectoryMajor);
+            EvolutionSequence perturbed = sequence.apply(inPlace, 3, 2);
+            EvolutionSequence referencePerturbed = reference.apply(allocating, 3, 2);
+            for (int i = 3; i <= 10; i++) {
+                assertArrayEquals(referencePerturbed.evalPenaltyFunction(X, i), perturbed.evalPenaltyFunction(X, i));
+            }
+            for (int i = 0; i <= 10; i++) {
+                assertArrayEquals(reference.evalPenaltyFunction(X, i), sequence.evalPenaltyFunction(X, i));
+            }
+        }
+    }
+
+    @Test
+    void branchesDoNotAffectTheSamplingsOfTheirSequence() {
+        EvolutionSequence sequence = getSequence();
+        EvolutionSequence reference = getSequence();
+        sequence.get(3);
+        EvolutionSequence copy = new EvolutionSequence(sequence, 3);
+        EvolutionSequence perturbed = sequence.apply(new AtomicPerturbation(0, (rg, ds) -> ds.apply(List.of(new DataStateUpdate(0, rg.nextDouble())))), 3, 2);
+        EvolutionSequence sampled = sequence.sample(5);
+        copy.get(10);
+        perturbed.get(10);
+        sampled.get(10);
+        for (int i = 0; i <= 10; i++) {
+            assertArrayEquals(reference.evalPenaltyFunction(X, i), sequence.evalPenaltyFunction(X, i));
+        }
+    }
+
+    @Test
+    void trajectoryMajorSequencesCoincideWithStepMajorOnesOnDeterministicModels() {
+        DataStateFunction environment = (rg, ds) -> ds.apply(List.of(new DataStateUpdate(0, ds.get(0)*0.9 + 0.1)));
+        EvolutionSequence reference = getSequence(environment, 100);
+        EvolutionSequence sequence = getSequence(environment, 100);
+        EvolutionSequence windowed = getSequence(environment, 100);
+        sequence.setTrajectoryMajor(true);
+        windowed.setTrajectoryMajor(true);
+        windowed.setRetention(4);
+        windowed.get(10);
+        for (int i = 0; i <= 10; i++) {
+            assertArrayEquals(valuesOf(reference.get(i)), valuesOf(sequence.get(i)));
+        }
+        for (int i = 7; i <= 10; i++) {
+            assertArrayEquals(valuesOf(reference.get(i)), valuesOf(windowed.get(i)));
+        }
+    }
+
+    @Test
+    void trajectoryMajorSamplesFollowTheirOwnTrajectories() {
+        EvolutionSequence reference = getSequence(ENVIRONMENT, 1000);
+        EvolutionSequence sequence = getSequence(ENVIRONMENT, 1000);
+        sequence.setTrajectoryMajor(true);
+        sequence.get(10);
+        for (int t = 0; t < 10; t++) {
+            double[] current = valuesOf(sequence.get(t));
+            double[] next = valuesOf(sequence.get(t+1));
+            for (int i = 0; i < current.length; i++) {
+                assertTrue((current[i]*0.9 <= next[i]) && (next[i] <= current[i]*0.9 + 0.1));
+            }
+        }
+        assertArrayEquals(valuesOf(reference.get(0)), valuesOf(sequence.get(0)));
+        assertEquals(reference.get(10).mean(s -> s.getDataState().get(0)), sequence.get(10).mean(s -> s.getDataState().get(0)), 0.02);
+    }
+
+    @Test
+    void prefetchedStepsCoincideWithTheOnesGeneratedOnRequest() {
+        EvolutionSequence reference = getSequence();
+        EvolutionSequence sequence = getSequence();
+        sequence.setLookahead(4);
+        sequence.setRetention(6);
+        for (int i = 0; i <= 30; i++) {
+            assertArrayEquals(reference.evalPenaltyFunction(X, i), sequence.evalPenaltyFunction(X, i));
+        }
+        sequence.prefetch(40);
+        assertArrayEquals(reference.evalPenaltyFunction(X, 40), sequence.evalPenaltyFunction(X, 40));
+    }
+
+    @Test
+    void stepsRequestedConcurrentlyWithPrefetchingAreTheOnesGeneratedOnRequest() {
+        EvolutionSequence reference = getSequence();
+        double[][] expected = IntStream.rangeClosed(0, 40).mapToObj(i -> reference.evalPenaltyFunction(X, i)).toArray(double[][]::new);
+        EvolutionSequence sequence = getSequence();
+        sequence.setLookahead(3);
+        sequence.prefetch(20);
+        double[][] values = IntStream.rangeClosed(0, 40).parallel().mapToObj(i -> sequence.evalPenaltyFunction(X, i)).toArray(double[][]::new);
+        assertArrayEquals(expected, values);
+    }
+
+}
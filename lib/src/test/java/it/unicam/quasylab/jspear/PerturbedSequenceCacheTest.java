@@ -0,0 +1,116 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import it.unicam.quasylab.jspear.controller.Controller;
+import it.unicam.quasylab.jspear.controller.ControllerRegistry;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
+import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.ds.DataStateUpdate;
+import it.unicam.quasylab.jspear.perturbation.AtomicPerturbation;
+import it.unicam.quasylab.jspear.perturbation.Perturbation;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerturbedSequenceCacheTest {
+
+    private static final DataStateExpression X = ds -> ds.get(0);
+
+    private static final Perturbation PERTURBATION = new AtomicPerturbation(0, (rg, ds) -> ds.apply(List.of(new DataStateUpdate(0, rg.nextDouble()))));
+
+    private static EvolutionSequence getSequence() {
+        ControllerRegistry registry = new ControllerRegistry();
+        registry.set("Ctrl", Controller.doTick(registry.get("Ctrl")));
+        Controller controller = registry.reference("Ctrl");
+        DataStateFunction environment = (rg, ds) -> ds.apply(List.of(new DataStateUpdate(0, ds.get(0)*0.9 + rg.nextDouble()*0.1)));
+        return new EvolutionSequence(new DefaultRandomGenerator(1), rg -> new ControlledSystem(controller, environment, new DataState(1, i -> rg.nextDouble())), 10);
+    }
+
+    @Test
+    void cachedSequencesCoincideWithTheAppliedOnes() {
+        EvolutionSequence sequence = getSequence();
+        EvolutionSequence reference = getSequence();
+        PerturbedSequenceCache cache = new PerturbedSequenceCache();
+        EvolutionSequence perturbed = cache.apply(sequence, PERTURBATION, 3, 2);
+        EvolutionSequence referencePerturbed = reference.apply(PERTURBATION, 3, 2);
+        assertSame(perturbed, cache.apply(sequence, PERTURBATION, 3, 2));
+        for (int i = 3; i <= 10; i++) {
+            assertArrayEquals(referencePerturbed.evalPenaltyFunction(X, i), perturbed.evalPenaltyFunction(X, i));
+        }
+        assertNotSame(perturbed, cache.apply(sequence, PERTURBATION, 4, 2));
+        assertNotSame(perturbed, cache.apply(sequence, PERTURBATION, 3, 1));
+        assertNotSame(perturbed, cache.apply(reference, PERTURBATION, 3, 2));
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    void leastRecentlyUsedSequencesAreEvicted() {
+        EvolutionSequence sequence = getSequence();
+        PerturbedSequenceCache cache = new PerturbedSequenceCache(2, PerturbedSequenceCache.DEFAULT_STATE_BUDGET);
+        EvolutionSequence first = cache.apply(sequence, PERTURBATION, 1, 2);
+        EvolutionSequence second = cache.apply(sequence, PERTURBATION, 2, 2);
+        assertSame(first, cache.apply(sequence, PERTURBATION, 1, 2));
+        EvolutionSequence third = cache.apply(sequence, PERTURBATION, 3, 2);
+        assertEquals(2, cache.size());
+        assertSame(first, cache.apply(sequence, PERTURBATION, 1, 2));
+        assertNotSame(second, cache.apply(sequence, PERTURBATION, 2, 2));
+        assertNotSame(third, cache.apply(sequence, PERTURBATION, 3, 2));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void sequencesExceedingTheStateBudgetAreEvicted() {
+        EvolutionSequence sequence = getSequence();
+        PerturbedSequenceCache cache = new PerturbedSequenceCache(PerturbedSequenceCache.DEFAULT_CAPACITY, 50);
+        EvolutionSequence first = cache.apply(sequence, PERTURBATION, 1, 2);
+        EvolutionSequence second = cache.apply(sequence, PERTURBATION, 2, 2);
+        assertEquals(2, cache.size());
+        first.get(5);
+        EvolutionSequence third = cache.apply(sequence, PERTURBATION, 3, 2);
+        assertEquals(2, cache.size());
+        assertSame(second, cache.apply(sequence, PERTURBATION, 2, 2));
+        assertSame(third, cache.apply(sequence, PERTURBATION, 3, 2));
+        assertNotSame(first, cache.apply(sequence, PERTURBATION, 1, 2));
+    }
+
+    @Test
+    void concurrentRequestsShareTheSameSequence() {
+        EvolutionSequence sequence = getSequence();
+        PerturbedSequenceCache cache = new PerturbedSequenceCache();
+        List<EvolutionSequence> perturbed = IntStream.range(0, 16).parallel().mapToObj(i -> cache.apply(sequence, PERTURBATION, 5, 2)).toList();
+        assertTrue(perturbed.stream().allMatch(p -> p == perturbed.get(0)));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void capacityAndBudgetMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new PerturbedSequenceCache(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new PerturbedSequenceCache(1, 0));
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
+import it.unicam.quasylab.jspear.ds.RelationOperator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleBinaryOperator;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SampleSetTest {
+
+    private static final double EPSILON = 1E-10;
+
+    private static final DataStateExpression VALUE = ds -> ds.get(0);
+
+    private static SampleSet<SystemState> sampleSetOf(double ... values) {
+        List<SystemState> states = new ArrayList<>();
+        for (double v : values) {
+            states.add(new ControlledSystem(null, (rg, ds) -> ds, new DataState(new double[] {v})));
+        }
+        return new SampleSet<>(states);
+    }
+
+    @Test
+    void distanceBetweenSampleSetsOfUnrelatedSizesIsTheDistanceBetweenTheirReplicas() {
+        SampleSet<SystemState> s1 = sampleSetOf(0.3, 1.0, -2.0);
+        SampleSet<SystemState> s2 = sampleSetOf(0.5, 4.0, 0.0, 1.5, -1.0);
+        SampleSet<SystemState> r1 = s1.replica(5);
+        SampleSet<SystemState> r2 = s2.replica(3);
+        assertEquals(r1.distance(VALUE, r2), s1.distance(VALUE, s2), EPSILON);
+        assertEquals(r1.distanceLeq(VALUE, r2), s1.distanceLeq(VALUE, s2), EPSILON);
+        assertEquals(r1.distanceGeq(VALUE, r2), s1.distanceGeq(VALUE, s2), EPSILON);
+        assertEquals(r2.distance(VALUE, r1), s2.distance(VALUE, s1), EPSILON);
+    }
+
+    @Test
+    void mergeCoincidesWithThePairingOfReplicatedSamples() {
+        double[] thisData = {0.0, 1.0};
+        double[] otherData = {0.5, 1.0, 2.0, 3.0};
+        assertEquals((0.5 + 1.0 + 1.0 + 2.0) / 4, DistanceKernels.merge(DistanceKernels.ABSOLUTE, thisData, otherData), EPSILON);
+        assertEquals(DistanceKernels.wasserstein(DistanceKernels.ABSOLUTE, thisData, otherData),
+                DistanceKernels.merge(DistanceKernels.ABSOLUTE, thisData, otherData), EPSILON);
+    }
+
+    @Test
+    void weightedDistanceUsesNormalisedWeights() {
+        double[] thisData = {0.0, 1.0};
+        double[] otherData = {0.0, 1.0, 2.0};
+        assertEquals(DistanceKernels.merge(DistanceKernels.ABSOLUTE, new double[] {0.0, 0.0, 1.0}, otherData),
+                Util.wasserstein(DistanceKernels.ABSOLUTE, thisData, new double[] {2.0, 1.0}, otherData, new double[] {1.0, 1.0, 1.0}),
+                EPSILON);
+    }
+
+    @Test
+    void bootstrapIntervalsOnlyDependOnTheRandomGenerator() {
+        SampleSet<SystemState> s1 = sampleSetOf(0.1, 0.2, 0.4, 0.3, 0.25, 0.15);
+        SampleSet<SystemState> s2 = sampleSetOf(0.3, 0.5, 0.45, 0.6, 0.35, 0.4);
+        double[] ci = s1.bootstrapDistance(new DefaultRandomGenerator(7), VALUE, s2, 100, 1.96);
+        assertArrayEquals(ci, s1.bootstrapDistance(new DefaultRandomGenerator(7), VALUE, s2, 100, 1.96));
+        double[] percentile = s1.bootstrapPercentileDistance(new DefaultRandomGenerator(7), VALUE, s2, 100, 0.05);
+        assertTrue(percentile[0] <= percentile[1]);
+        double distance = s1.distance(VALUE, s2);
+        assertTrue(ci[0] <= distance && distance <= ci[1]);
+        assertTrue(percentile[0] <= distance && distance <= percentile[1]);
+    }
+
+    @Test
+    void progressiveComparisonStopsWhenTheThresholdIsOutsideTheBounds() {
+        double[] low = new double[1000];
+        double[] high = new double[1000];
+        for (int i = 0; i < low.length; i++) {
+            low[i] = 0.1 * i / low.length;
+            high[i] = 0.9 + 0.1 * i / high.length;
+        }
+        SampleSet.setProgressiveComparison(true);
+        try {
+            ThresholdComparison comparison = sampleSetOf(low).compareDistance(VALUE, sampleSetOf(high), RelationOperator.LESS_THAN, 0.1);
+            assertFalse(comparison.value());
+            assertTrue(comparison.evaluatedSamples() < low.length + high.length);
+            assertTrue(comparison.lowerBound() > 0.1);
+        } finally {
+            SampleSet.setProgressiveComparison(false);
+        }
+        ThresholdComparison exact = sampleSetOf(low).compareDistance(VALUE, sampleSetOf(high), RelationOperator.LESS_THAN, 0.1);
+        assertTrue(exact.isExact());
+        assertFalse(exact.value());
+    }
+
+    @Test
+    void ecdfIndexComputesDistancesFromShiftedSampleSets() {
+        SampleSet<SystemState> s = sampleSetOf(0.1, 0.7, 0.4, 0.9, 0.2, 0.5);
+        PenaltyShift shift = new PenaltyShift(0.25, 0.3, 0.8);
+        SampleSet<SystemState> shifted = sampleSetOf(shift.apply(0.1), shift.apply(0.7), shift.apply(0.4),
+                shift.apply(0.9), shift.apply(0.2), shift.apply(0.5));
+        EcdfIndex index = s.getEcdfIndex(VALUE);
+        assertEquals(s.distanceLeq(VALUE, shifted), index.distanceLeq(shift), EPSILON);
+        assertEquals(s.distanceGeq(VALUE, shifted), index.distanceGeq(shift), EPSILON);
+        assertEquals(0.5, index.cdf(0.4), EPSILON);
+        assertEquals(0.0, index.cdf(0.0), EPSILON);
+    }
+
+    @Test
+    void cachedSketchesFollowTheApproximationError() {
+        SampleSet<SystemState> s = sampleSetOf(0.3, 1.0, -2.0, 0.5, 4.0);
+        try {
+            SampleSet.setApproximationError(0.1);
+            assertEquals(QuantileSketch.accuracyFor(0.1), s.getSketch(VALUE).getAccuracy());
+            SampleSet.setApproximationError(0.01);
+            QuantileSketch sketch = s.getSketch(VALUE);
+            assertEquals(QuantileSketch.accuracyFor(0.01), sketch.getAccuracy());
+            assertTrue(sketch == s.getSketch(VALUE));
+        } finally {
+            SampleSet.setApproximationError(0.0);
+        }
+    }
+
+    private static DataStateExpression counting(AtomicInteger evaluations, DataStateExpression f) {
+        return ds -> {
+            evaluations.incrementAndGet();
+            return f.eval(ds);
+        };
+    }
+
+    private static double[] sortedValuesOf(SampleSet<SystemState> s, DataStateExpression f) {
+        return s.stream().mapToDouble(state -> f.eval(state.getDataState())).sorted().toArray();
+    }
+
+    @Test
+    void leastRecentlyUsedPenaltyEvaluationsAreEvicted() {
+        SampleSet<SystemState> s = sampleSetOf(0.3, 1.0, -2.0, 0.5, 4.0);
+        AtomicInteger evaluations = new AtomicInteger();
+        DataStateExpression f1 = counting(evaluations, VALUE);
+        DataStateExpression f2 = counting(evaluations, ds -> -ds.get(0));
+        DataStateExpression f3 = counting(evaluations, ds -> ds.get(0) * ds.get(0));
+        int capacity = SampleSet.getPenaltyCacheCapacity();
+        try {
+            SampleSet.setPenaltyCacheCapacity(2);
+            assertArrayEquals(sortedValuesOf(s, VALUE), s.evalPenaltyFunction(f1));
+            assertArrayEquals(sortedValuesOf(s, ds -> -ds.get(0)), s.evalPenaltyFunction(f2));
+            assertEquals(10, evaluations.get());
+            s.evalPenaltyFunction(f1);
+            assertEquals(10, evaluations.get());
+            assertArrayEquals(sortedValuesOf(s, ds -> ds.get(0) * ds.get(0)), s.evalPenaltyFunction(f3));
+            assertEquals(15, evaluations.get());
+            s.evalPenaltyFunction(f1);
+            assertEquals(15, evaluations.get());
+            assertArrayEquals(sortedValuesOf(s, ds -> -ds.get(0)), s.evalPenaltyFunction(f2));
+            assertEquals(20, evaluations.get());
+            SampleSet.setPenaltyCacheCapacity(0);
+            SampleSet<SystemState> uncached = sampleSetOf(0.3, 1.0, -2.0, 0.5, 4.0);
+            uncached.evalPenaltyFunction(f1);
+            assertArrayEquals(sortedValuesOf(s, VALUE), uncached.evalPenaltyFunction(f1));
+            assertEquals(30, evaluations.get());
+        } finally {
+            SampleSet.setPenaltyCacheCapacity(capacity);
+        }
+    }
+
+    @Test
+    void addingStatesInvalidatesCachedPenaltyEvaluations() {
+        SampleSet<SystemState> s = sampleSetOf(0.3, 1.0, -2.0);
+        assertArrayEquals(new double[] {-2.0, 0.3, 1.0}, s.evalPenaltyFunction(VALUE));
+        s.add(new ControlledSystem(null, (rg, ds) -> ds, new DataState(new double[] {0.5})));
+        assertArrayEquals(sortedValuesOf(s, VALUE), s.evalPenaltyFunction(VALUE));
+        assertEquals(4, s.evalPenaltyFunction(VALUE).length);
+    }
+
+    private static double[] sortedRandomValues(DefaultRandomGenerator rg, int size) {
+        return IntStream.range(0, size).mapToDouble(i -> rg.nextDouble() * 10 - 5).sorted().toArray();
+    }
+
+    @Test
+    void wassersteinKernelsCoincideWithTheSumsOfTheGroundDistances() {
+        DefaultRandomGenerator rg = new DefaultRandomGenerator(1);
+        DoubleBinaryOperator squared = (v1, v2) -> (v2 - v1) * (v2 - v1);
+        for (int[] sizes : new int[][] { {50, 3}, {2000, 20} }) {
+            double[] thisData = sortedRandomValues(rg, sizes[0]);
+            double[] otherData = sortedRandomValues(rg, sizes[0] * sizes[1]);
+            int k = sizes[1];
+            for (DoubleBinaryOperator distance : List.of(DistanceKernels.ABSOLUTE, DistanceKernels.LEQ, DistanceKernels.GEQ, squared)) {
+                double expected = IntStream.range(0, thisData.length)
+                        .mapToDouble(i -> IntStream.range(0, k).mapToDouble(j -> distance.applyAsDouble(thisData[i], otherData[i * k + j])).sum())
+                        .sum() / otherData.length;
+                assertEquals(expected, DistanceKernels.wasserstein(distance, thisData, otherData), EPSILON);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UtilTest {
+
+    @Test
+    void slidingMaxReturnsTheMaximumOfEachWindow() {
+        double[] values = {1.0, 3.0, -1.0, -3.0, 5.0, 3.0, 6.0, 7.0};
+        assertArrayEquals(new double[] {3.0, 3.0, 5.0, 5.0, 6.0, 7.0}, Util.slidingMax(values, 3));
+        assertArrayEquals(values, Util.slidingMax(values, 1));
+    }
+
+    @Test
+    void slidingMinReturnsTheMinimumOfEachWindow() {
+        double[] values = {1.0, 3.0, -1.0, -3.0, 5.0, 3.0, 6.0, 7.0};
+        assertArrayEquals(new double[] {-1.0, -3.0, -3.0, -3.0, 3.0, 3.0}, Util.slidingMin(values, 3));
+        assertArrayEquals(new double[] {-3.0}, Util.slidingMin(values, values.length));
+    }
+
+    @Test
+    void slidingWindowsCannotBeLargerThanTheValues() {
+        assertThrows(IllegalArgumentException.class, () -> Util.slidingMax(new double[] {1.0, 2.0}, 3));
+        assertThrows(IllegalArgumentException.class, () -> Util.slidingMin(new double[] {1.0, 2.0}, 0));
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.distance;
+
+import it.unicam.quasylab.jspear.ControlledSystem;
+import it.unicam.quasylab.jspear.DefaultRandomGenerator;
+import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.controller.Controller;
+import it.unicam.quasylab.jspear.controller.ControllerRegistry;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
+import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.ds.DataStateUpdate;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DistanceEvaluationContextTest {
+
+    private static final DataStateExpression X = ds -> ds.get(0);
+
+    private static EvolutionSequence getSequence(int seed) {
+        ControllerRegistry registry = new ControllerRegistry();
+        registry.set("Ctrl", Controller.doTick(registry.get("Ctrl")));
+        Controller controller = registry.reference("Ctrl");
+        DataStateFunction environment = (rg, ds) -> ds.apply(List.of(new DataStateUpdate(0, ds.get(0)*0.9 + rg.nextDouble()*0.1)));
+        return new EvolutionSequence(new DefaultRandomGenerator(seed), rg -> new ControlledSystem(controller, environment, new DataState(1, i -> rg.nextDouble())), 50);
+    }
+
+    private static DistanceEvaluationContext getContext() {
+        return new DistanceEvaluationContext(new DefaultRandomGenerator(5), getSequence(1), getSequence(2), 50, 1.96);
+    }
+
+    @Test
+    void siblingSubexpressionsUseIndependentStreams() {
+        DistanceExpression first = new AtomicDistanceExpressionLeq(X);
+        DistanceExpression second = new AtomicDistanceExpressionLeq(X);
+        DistanceEvaluationContext context = getContext();
+        context.evalCI(new MaxDistanceExpression(first, second), 3);
+        assertNotEquals(context.getRandomGenerator(first, 3).nextLong(), context.getRandomGenerator(second, 3).nextLong());
+        double[] firstInterval = context.evalCI(first, 3);
+        double[] secondInterval = context.evalCI(second, 3);
+        assertEquals(firstInterval[0], secondInterval[0]);
+        assertFalse((firstInterval[1] == secondInterval[1]) && (firstInterval[2] == secondInterval[2]));
+    }
+
+    @Test
+    void streamsOnlyDependOnTheStructureOfTheEvaluatedExpression() {
+        DistanceExpression first = new MaxDistanceExpression(new AtomicDistanceExpressionLeq(X), new AtomicDistanceExpressionLeq(X));
+        DistanceExpression second = new MaxDistanceExpression(new AtomicDistanceExpressionLeq(X), new AtomicDistanceExpressionLeq(X));
+        assertArrayEquals(getContext().evalCI(first, 3), getContext().evalCI(second, 3));
+    }
+
+}
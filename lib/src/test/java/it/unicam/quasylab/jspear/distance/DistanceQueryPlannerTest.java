@@ -0,0 +1,62 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.distance;
+
+import it.unicam.quasylab.jspear.ControlledSystem;
+import it.unicam.quasylab.jspear.DefaultRandomGenerator;
+import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.controller.Controller;
+import it.unicam.quasylab.jspear.controller.ControllerRegistry;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.ds.DataStateUpdate;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class DistanceQueryPlannerTest {
+
+    private static EvolutionSequence getSequence() {
+        ControllerRegistry registry = new ControllerRegistry();
+        registry.set("Ctrl", Controller.doTick(registry.get("Ctrl")));
+        Controller controller = registry.reference("Ctrl");
+        DataStateFunction environment = (rg, ds) -> ds.apply(List.of(new DataStateUpdate(0, ds.get(0)*0.9 + rg.nextDouble()*0.1)));
+        return new EvolutionSequence(new DefaultRandomGenerator(1), rg -> new ControlledSystem(controller, environment, new DataState(1, i -> rg.nextDouble())), 20);
+    }
+
+    @Test
+    void rangeQueriesRespectTheRetentionWindow() {
+        DistanceExpression expression = new MaxIntervalDistanceExpression(new AtomicDistanceExpressionLeq(ds -> ds.get(0)), 0, 3);
+        EvolutionSequence sequence = getSequence();
+        EvolutionSequence reference = getSequence();
+        sequence.setRetention(expression);
+        double[] expected = new double[21];
+        for (int i = 0; i <= 20; i++) {
+            expected[i] = expression.compute(i, reference, reference);
+        }
+        assertArrayEquals(expected, expression.compute(0, 20, sequence, sequence));
+    }
+
+}
@@ -26,6 +26,7 @@ import it.unicam.quasylab.jspear.*;
 import it.unicam.quasylab.jspear.controller.Controller;
 import it.unicam.quasylab.jspear.controller.ControllerRegistry;
 import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
 import it.unicam.quasylab.jspear.ds.DataStateFunction;
 import it.unicam.quasylab.jspear.ds.DataStateUpdate;
 import nl.tue.Monitoring.PerceivedSystemState;
@@ -124,4 +125,70 @@ public class DoubleSemanticsVisitorTest {
         double parEvaluation = parallelSemanticsEvaluator.eval(phi).eval(SAMPLE_SIZE, semanticsEvalTimestep, sequence);
         assertEquals( -0.09090909090909091, parEvaluation);
     }
+
+    @Test
+    void untilEvaluatesAsItsDefinitionAtManySteps() {
+        EvolutionSequence sequence = getTestES1();
+        DataStateFunction mu = (rg, ds) -> ds.apply(
+                List.of(new DataStateUpdate(t, 0),
+                        new DataStateUpdate(x, 0.0)
+                ));
+        DisTLFormula left = new NegationDisTLFormula(new TargetDisTLFormula(mu, ds -> ds.get(x), 0.3));
+        DisTLFormula right = new TargetDisTLFormula(mu, ds -> ds.get(x), 0.1);
+        int from = 1;
+        int to = 6;
+        DisTLFormula phi = new UntilDisTLFormula(left, from, to, right);
+
+        DoubleSemanticsVisitor semanticsEvaluator = new DoubleSemanticsVisitor();
+        DisTLFunction<Double> phiFunction = semanticsEvaluator.eval(phi);
+        DisTLFunction<Double> leftFunction = semanticsEvaluator.eval(left);
+        DisTLFunction<Double> rightFunction = semanticsEvaluator.eval(right);
+        for (int step = 0; step < 6; step++) {
+            double expected = Double.NEGATIVE_INFINITY;
+            for (int i = step+from; i <= step+to; i++) {
+                double value = rightFunction.eval(SAMPLE_SIZE, i, sequence);
+                for (int j = step+from; j < i; j++) {
+                    value = Math.min(value, leftFunction.eval(SAMPLE_SIZE, j, sequence));
+                }
+                expected = Math.max(expected, value);
+            }
+            double evaluation = phiFunction.eval(SAMPLE_SIZE, step, sequence);
+            assertEquals(expected, evaluation);
+        }
+    }
+
+    // One variable, initially uniform in [0,1], that is halved or moved toward 1 at each step.
+    EvolutionSequence getTestES2() {
+        ControllerRegistry registry = new ControllerRegistry();
+        registry.set("Ctrl",
+                Controller.doTick(registry.get("Ctrl"))
+        );
+        Controller controller = registry.reference("Ctrl");
+        DataStateFunction environment = (rg, ds) -> ds.apply(List.of(
+                new DataStateUpdate(0, (rg.nextBoolean() ? ds.get(0) / 2 : (ds.get(0) + 1) / 2))));
+        return new EvolutionSequence(new DefaultRandomGenerator(1),
+                rg -> new ControlledSystem(controller, environment, new DataState(1, i -> rg.nextDouble())), 50);
+    }
+
+    @Test
+    void penaltyShiftsEvaluateAsTheSampledDistributions() {
+        EvolutionSequence sequence = getTestES2();
+        DataStateExpression rho = ds -> ds.get(0);
+        DataStateFunction shift = (rg, ds) -> ds.apply(List.of(new DataStateUpdate(0, ds.get(0) + 0.2)));
+        DataStateFunction clamp = (rg, ds) -> ds.apply(List.of(new DataStateUpdate(0, Math.min(Math.max(ds.get(0), 0.2), 0.6))));
+        DisTLFormula[][] formulas = new DisTLFormula[][] {
+                { new TargetDisTLFormula(shift, PenaltyShift.shift(0.2), rho, 0.1), new TargetDisTLFormula(shift, rho, 0.1) },
+                { new BrinkDisTLFormula(shift, PenaltyShift.shift(0.2), rho, 0.1), new BrinkDisTLFormula(shift, rho, 0.1) },
+                { new TargetDisTLFormula(clamp, PenaltyShift.clamp(0.2, 0.6), rho, 0.1), new TargetDisTLFormula(clamp, rho, 0.1) },
+                { new BrinkDisTLFormula(clamp, PenaltyShift.clamp(0.2, 0.6), rho, 0.1), new BrinkDisTLFormula(clamp, rho, 0.1) }
+        };
+        DoubleSemanticsVisitor semanticsEvaluator = new DoubleSemanticsVisitor();
+        for (DisTLFormula[] pair : formulas) {
+            DisTLFunction<Double> shortcut = semanticsEvaluator.eval(pair[0]);
+            DisTLFunction<Double> sampled = semanticsEvaluator.eval(pair[1]);
+            for (int step = 0; step < 5; step++) {
+                assertEquals(sampled.eval(SAMPLE_SIZE, step, sequence), shortcut.eval(SAMPLE_SIZE, step, sequence), 1E-10);
+            }
+        }
+    }
 }
@@ -0,0 +1,109 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.ds;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedDataStateTest {
+
+    private static final int SIZE = 3 * ChunkedDataState.CHUNK_SIZE + 5;
+
+    private static ChunkedDataState getState() {
+        return ChunkedDataState.of(new DataState(SIZE, i -> i));
+    }
+
+    @Test
+    void updatesOfACopyDoNotAffectTheSource() {
+        ChunkedDataState source = getState();
+        ChunkedDataState copy = source.copy();
+        copy.set(1, -1.0);
+        copy.set(SIZE - 1, -1.0);
+        assertArrayEquals(new DataState(SIZE, i -> i).toArray(), source.toArray());
+        assertEquals(-1.0, copy.get(1));
+        assertEquals(-1.0, copy.get(SIZE - 1));
+        assertEquals(2.0, copy.get(2));
+    }
+
+    @Test
+    void updatesOfTheSourceDoNotAffectItsCopies() {
+        ChunkedDataState source = getState();
+        ChunkedDataState first = source.copy();
+        source.set(1, -1.0);
+        ChunkedDataState second = source.copy();
+        source.set(1, -2.0);
+        assertEquals(1.0, first.get(1));
+        assertEquals(-1.0, second.get(1));
+        assertEquals(-2.0, source.get(1));
+    }
+
+    @Test
+    void copiesOfCopiesAreIsolated() {
+        ChunkedDataState source = getState();
+        ChunkedDataState copy = source.copy();
+        copy.set(1, -1.0);
+        ChunkedDataState copyOfCopy = copy.copy();
+        copy.set(1, -2.0);
+        copyOfCopy.set(2, -3.0);
+        assertEquals(1.0, source.get(1));
+        assertEquals(2.0, source.get(2));
+        assertEquals(-2.0, copy.get(1));
+        assertEquals(2.0, copy.get(2));
+        assertEquals(-1.0, copyOfCopy.get(1));
+        assertEquals(-3.0, copyOfCopy.get(2));
+    }
+
+    @Test
+    void concurrentCopiesOfASharedStateAreIsolated() {
+        ChunkedDataState source = getState();
+        List<ChunkedDataState> copies = IntStream.range(0, 1000).parallel().mapToObj(k -> {
+            ChunkedDataState copy = source.copy();
+            for (int i = 0; i < SIZE; i += 7) {
+                copy.set(i, -k);
+            }
+            return copy;
+        }).toList();
+        assertArrayEquals(new DataState(SIZE, i -> i).toArray(), source.toArray());
+        for (int k = 0; k < copies.size(); k++) {
+            for (int i = 0; i < SIZE; i++) {
+                assertEquals((i % 7 == 0 ? -k : i), copies.get(k).get(i));
+            }
+        }
+    }
+
+    @Test
+    void updatesAreClampedInTheDataRanges() {
+        DataRange[] ranges = DataRange.getDefaultRangeArray(SIZE);
+        ranges[1] = new DataRange(0.0, 10.0);
+        ChunkedDataState state = new ChunkedDataState(DataStateSchema.of(ranges), new DataState(SIZE, i -> i).toArray());
+        ChunkedDataState copy = state.copy();
+        copy.set(1, 20.0);
+        assertEquals(10.0, copy.get(1));
+        assertEquals(1.0, state.get(1));
+    }
+
+}
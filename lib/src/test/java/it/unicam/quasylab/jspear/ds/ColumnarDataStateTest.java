@@ -0,0 +1,75 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.ds;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarDataStateTest {
+
+    private static double[][] getColumns() {
+        return new double[][] { {0.0, 1.0, 2.0}, {10.0, 11.0, 12.0} };
+    }
+
+    @Test
+    void updatesAreWrittenThroughAndClampedInTheDataRanges() {
+        double[][] columns = getColumns();
+        ColumnarDataState state = new ColumnarDataState(new DataRange[] { new DataRange(0.0, 5.0), new DataRange() }, columns, 1);
+        state.set(0, 4.0);
+        state.set(1, -3.0);
+        assertEquals(4.0, columns[0][1]);
+        assertEquals(-3.0, columns[1][1]);
+        state.set(0, 9.0);
+        assertEquals(5.0, columns[0][1]);
+        assertEquals(0.0, columns[0][0]);
+        assertEquals(2.0, columns[0][2]);
+        assertArrayEquals(new double[] {5.0, -3.0}, state.toArray());
+    }
+
+    @Test
+    void copiesAreDetachedFromTheColumns() {
+        double[][] columns = getColumns();
+        ColumnarDataState state = new ColumnarDataState(DataStateSchema.unbounded(2), columns, 2);
+        state.setStep(3);
+        DataState copy = state.copy();
+        copy.set(0, -1.0);
+        assertEquals(2.0, columns[0][2]);
+        assertEquals(-1.0, copy.get(0));
+        assertEquals(3, copy.getStep());
+    }
+
+    @Test
+    void cursorsScanTheRowsOfTheColumns() {
+        double[][] columns = getColumns();
+        ColumnarDataState cursor = new ColumnarDataState(DataStateSchema.unbounded(2), columns, 0);
+        double sum = 0.0;
+        for (int r = 0; r < 3; r++) {
+            sum += cursor.moveTo(r).get(1);
+        }
+        assertEquals(33.0, sum);
+        assertTrue(cursor.moveTo(0).precedes(new ColumnarDataState(DataStateSchema.unbounded(2), columns, 2), 2));
+        assertFalse(cursor.precedes(new ColumnarDataState(DataStateSchema.unbounded(2), getColumns(), 2), 2));
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.robtl;
+
+import it.unicam.quasylab.jspear.ControlledSystem;
+import it.unicam.quasylab.jspear.DefaultRandomGenerator;
+import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.controller.Controller;
+import it.unicam.quasylab.jspear.controller.ControllerRegistry;
+import it.unicam.quasylab.jspear.distance.AtomicDistanceExpressionLeq;
+import it.unicam.quasylab.jspear.distance.MaxIntervalDistanceExpression;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.ds.DataStateUpdate;
+import it.unicam.quasylab.jspear.ds.RelationOperator;
+import it.unicam.quasylab.jspear.perturbation.AtomicPerturbation;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class ThreeValuedSemanticsVisitorTest {
+
+    /**
+     * Returns a noisy sequence, whose perturbations have random effects, generated with a fixed seed.
+     */
+    private static EvolutionSequence getNoisySequence() {
+        ControllerRegistry registry = new ControllerRegistry();
+        registry.set("Ctrl", Controller.doTick(registry.get("Ctrl")));
+        Controller controller = registry.reference("Ctrl");
+        DataStateFunction environment = (rg, ds) -> ds.apply(List.of(new DataStateUpdate(0, ds.get(0)*0.8 + rg.nextDouble()*0.2)));
+        return new EvolutionSequence(new DefaultRandomGenerator(7), rg -> new ControlledSystem(controller, environment, new DataState(1, i -> rg.nextDouble())), 20);
+    }
+
+    /**
+     * Returns a formula whose temporal operators have both atomic and composite arguments.
+     */
+    private static RobustnessFormula getNoisyFormula(double threshold) {
+        RobustnessFormula a = getNoisyAtomicFormula(0, 2, threshold);
+        RobustnessFormula b = getNoisyAtomicFormula(1, 3, threshold);
+        return new DisjunctionRobustnessFormula(
+                new AlwaysRobustnessFormula(new ConjunctionRobustnessFormula(a, new EventuallyRobustnessFormula(b, 0, 3)), 0, 4),
+                new UntilRobustnessFormula(a, 0, 5, new NegationRobustnessFormula(b)));
+    }
+
+    private static RobustnessFormula getNoisyAtomicFormula(int from, int to, double threshold) {
+        return new AtomicRobustnessFormula(
+                new AtomicPerturbation(0, (rg, ds) -> ds.apply(List.of(new DataStateUpdate(0, Math.min(1.0, ds.get(0) + 0.2*rg.nextDouble()))))),
+                new MaxIntervalDistanceExpression(new AtomicDistanceExpressionLeq(ds -> ds.get(0)), from, to),
+                RelationOperator.LESS_THAN,
+                threshold);
+    }
+
+    /**
+     * Evaluates the formula by escalating the samples of the undecided atomic formulae.
+     */
+    private static TruthValues[] evalNoisyFormula(boolean parallel) {
+        ThreeValuedSemanticsVisitor visitor = new ThreeValuedSemanticsVisitor(new DefaultRandomGenerator(3), 30, 1.96, parallel, 80);
+        RobustnessFunction<TruthValues> function = visitor.eval(getNoisyFormula(0.06));
+        EvolutionSequence sequence = getNoisySequence();
+        TruthValues[] result = new TruthValues[15];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = function.eval(1, i, sequence);
+        }
+        return result;
+    }
+
+    @Test
+    void sequentialAndParallelEvaluationsCoincide() {
+        TruthValues[] expected = evalNoisyFormula(false);
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(expected, evalNoisyFormula(true));
+        }
+    }
+
+}
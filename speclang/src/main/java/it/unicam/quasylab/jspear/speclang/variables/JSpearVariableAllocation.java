@@ -24,6 +24,7 @@ package it.unicam.quasylab.jspear.speclang.variables;
 
 import it.unicam.quasylab.jspear.ds.DataRange;
 import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateSchema;
 import it.unicam.quasylab.jspear.ds.DataStateUpdate;
 import it.unicam.quasylab.jspear.speclang.types.JSpearType;
 import it.unicam.quasylab.jspear.speclang.values.JSpearValue;
@@ -79,13 +80,26 @@ public class JSpearVariableAllocation {
     }
 
     public DataState getDataState(Map<JSpearVariable, JSpearValue> initialValues) {
-        DataRange[] range = new DataRange[this.allocationData.size()];
         double[] values = new double[this.allocationData.size()];
         for (JSpearVariableAllocationData v: this.allocationData.values()) {
-            range[v.index] = v.range;
             values[v.index] = initialValues.get(v.variable).toDouble();
         }
-        return new DataState(range, values);
+        return new DataState(getSchema(), values);
+    }
+
+    /**
+     * Returns the schema of the data states where variables are allocated by this object.
+     *
+     * @return the schema of the data states where variables are allocated by this object.
+     */
+    public DataStateSchema getSchema() {
+        String[] names = new String[this.allocationData.size()];
+        DataRange[] range = new DataRange[this.allocationData.size()];
+        for (JSpearVariableAllocationData v: this.allocationData.values()) {
+            names[v.index] = v.variable.name();
+            range[v.index] = v.range;
+        }
+        return DataStateSchema.of(names, range);
     }
 
     private static class JSpearVariableAllocationData {